@@ -0,0 +1,63 @@
+package com.andreatreccani.mindtrack.bench;
+
+import com.andreatreccani.mindtrack.core.AppContext;
+import com.andreatreccani.mindtrack.io.SnapshotStorage;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full startup: AppContext.loadAll, including availability normalization.
+ * Runs on a private copy because normalization rewrites objectives.csv on the first load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AppContextBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    // csv: parse the CSV files every time; snapshot: warm start from snapshot.bin
+    @Param({ "csv", "snapshot" })
+    public String source;
+
+    private AppContext ctx;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Path dir = SyntheticData.copyOf(SyntheticData.dataDir(rows));
+        ctx = new AppContext(new ConsoleIO(), SyntheticData.storage(dir));
+        if (source.equals("snapshot")) {
+            ctx.useSnapshot(new SnapshotStorage(dir.resolve("snapshot.bin")));
+        }
+        // first load normalizes objectives.csv (and writes the snapshot)
+        ctx.loadAll();
+        if (source.equals("snapshot") && !Files.exists(dir.resolve("snapshot.bin"))) {
+            throw new IllegalStateException("snapshot was not written");
+        }
+    }
+
+    @Benchmark
+    public AppContext loadAll() throws Exception {
+        ctx.loadAll();
+        return ctx;
+    }
+}
@@ -0,0 +1,81 @@
+package com.andreatreccani.mindtrack.bench;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput of CsvStorage, sequential or with chunks encoded in parallel.
+ * Run with -prof gc to see the allocation per write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvWriteBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int rows;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    private CsvStorage target;
+
+    private List<User> users;
+    private List<Objective> objectives;
+    private List<Booking> bookings;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Path dir = SyntheticData.dataDir(rows);
+        CsvStorage source = SyntheticData.storage(dir);
+        users = source.readUsers();
+        objectives = source.readObjectives();
+        bookings = source.readBookings();
+
+        Path out = SyntheticData.copyOf(dir);
+        target = SyntheticData.storage(out);
+        target.setExportDir(out.resolve("exports"));
+        target.setParallelWrite(parallel);
+    }
+
+    @Benchmark
+    public void writeUsers() throws Exception {
+        target.writeUsers(users);
+    }
+
+    @Benchmark
+    public void writeObjectives() throws Exception {
+        target.writeObjectives(objectives);
+    }
+
+    @Benchmark
+    public void writeBookings() throws Exception {
+        target.writeBookings(bookings);
+    }
+
+    @Benchmark
+    public Path exportAvailableObjectives() throws Exception {
+        return target.exportAvailableObjectives(objectives);
+    }
+}
@@ -0,0 +1,90 @@
+package com.andreatreccani.mindtrack.bench;
+
+import com.andreatreccani.mindtrack.core.AppContext;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** The lookups the menu runs on every booking, with random keys (hits and misses). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final int KEYS = 1024; // power of two
+
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    private AppContext ctx;
+
+    private final int[] userIds = new int[KEYS];
+    private final int[] objectiveIds = new int[KEYS];
+    private final int[] bookingIds = new int[KEYS];
+    private final String[] emails = new String[KEYS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ctx = new AppContext(new ConsoleIO(), SyntheticData.storage(SyntheticData.copyOf(SyntheticData.dataDir(rows))));
+        ctx.loadAll();
+
+        // ~10% of the keys miss
+        SplittableRandom rnd = new SplittableRandom(7);
+        for (int i = 0; i < KEYS; i++) {
+            userIds[i] = 1 + rnd.nextInt(SyntheticData.users(rows) * 11 / 10);
+            objectiveIds[i] = 1 + rnd.nextInt(SyntheticData.objectives(rows) * 11 / 10);
+            bookingIds[i] = 1 + rnd.nextInt(SyntheticData.bookings(rows) * 11 / 10);
+            emails[i] = "USER" + userIds[i] + "@example.com";
+        }
+    }
+
+    private int key() {
+        return next++ & (KEYS - 1);
+    }
+
+    @Benchmark
+    public User findUserById() {
+        return ctx.findUserById(userIds[key()]);
+    }
+
+    @Benchmark
+    public Objective findObjectiveById() {
+        return ctx.findObjectiveById(objectiveIds[key()]);
+    }
+
+    @Benchmark
+    public Booking findBookingById() {
+        return ctx.findBookingById(bookingIds[key()]);
+    }
+
+    @Benchmark
+    public boolean emailExists() {
+        return ctx.emailExists(emails[key()]);
+    }
+
+    @Benchmark
+    public boolean bookingExistsForUserAndObjective() {
+        int k = key();
+        return ctx.bookingExistsForUserAndObjective(userIds[k], objectiveIds[k]);
+    }
+}
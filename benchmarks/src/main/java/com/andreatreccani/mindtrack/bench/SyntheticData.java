@@ -0,0 +1,84 @@
+package com.andreatreccani.mindtrack.bench;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Generates users.csv, objectives.csv and bookings.csv in the MindTrack format.
+ * Sizes are derived from one row count (10K .. 10M): as many bookings as rows,
+ * one user every 4 rows and one objective every 2 rows, so about half of the objectives end up booked.
+ * Data sets are cached under target/bench-data/<rows> and reused by later runs.
+ */
+public final class SyntheticData {
+
+    private static final String[] PERIODS = { "daily", "weekly", "monthly" };
+    private static final String[] WORDS = { "meditation", "reading", "running", "journaling", "stretching", "breathing" };
+    private static final long SEED = 42;
+
+    private SyntheticData() {}
+
+    public static int users(int rows) { return Math.max(1, rows / 4); }
+    public static int objectives(int rows) { return Math.max(1, rows / 2); }
+    public static int bookings(int rows) { return rows; }
+
+    public static Path dataDir(int rows) throws IOException {
+        Path dir = Path.of("target", "bench-data", String.valueOf(rows));
+        if (Files.exists(dir.resolve("bookings.csv"))) return dir;
+
+        Files.createDirectories(dir);
+        SplittableRandom rnd = new SplittableRandom(SEED);
+
+        try (BufferedWriter bw = Files.newBufferedWriter(dir.resolve("users.csv"))) {
+            bw.write("id;first_name;last_name;email");
+            bw.newLine();
+            for (int i = 1; i <= users(rows); i++) {
+                bw.write(i + ";First" + i + ";Last" + i + ";user" + i + "@example.com");
+                bw.newLine();
+            }
+        }
+
+        try (BufferedWriter bw = Files.newBufferedWriter(dir.resolve("objectives.csv"))) {
+            bw.write("id;title;period;coins;available");
+            bw.newLine();
+            for (int i = 1; i <= objectives(rows); i++) {
+                String title = WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)] + " " + i;
+                // every objective starts available: loadAll has to normalize the booked ones
+                bw.write(i + ";" + title + ";" + PERIODS[rnd.nextInt(PERIODS.length)] + ";" + (5 + rnd.nextInt(50)) + ";YES");
+                bw.newLine();
+            }
+        }
+
+        LocalDate base = LocalDate.now().plusDays(1);
+        try (BufferedWriter bw = Files.newBufferedWriter(dir.resolve("bookings.csv"))) {
+            bw.write("id;user_id;objective_id;date");
+            bw.newLine();
+            for (int i = 1; i <= bookings(rows); i++) {
+                int user = 1 + rnd.nextInt(users(rows));
+                int objective = 1 + rnd.nextInt(objectives(rows));
+                bw.write(i + ";" + user + ";" + objective + ";" + base.plusDays(rnd.nextInt(365)));
+                bw.newLine();
+            }
+        }
+
+        return dir;
+    }
+
+    public static CsvStorage storage(Path dir) {
+        return new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv"));
+    }
+
+    /** Fresh copy of a data set, for benchmarks that write. */
+    public static Path copyOf(Path dir) throws IOException {
+        Path copy = Files.createTempDirectory("mindtrack-bench");
+        for (String f : new String[] { "users.csv", "objectives.csv", "bookings.csv" }) {
+            Files.copy(dir.resolve(f), copy.resolve(f));
+        }
+        return copy;
+    }
+}
@@ -1,14 +1,30 @@
 package com.andreatreccani.mindtrack;
 
+import com.andreatreccani.mindtrack.api.ApiServer;
 import com.andreatreccani.mindtrack.core.AppContext;
+import com.andreatreccani.mindtrack.core.BatchRunner;
+import com.andreatreccani.mindtrack.core.BulkImporter;
+import com.andreatreccani.mindtrack.core.IntegrityReport;
 import com.andreatreccani.mindtrack.core.MenuController;
+import com.andreatreccani.mindtrack.core.Persister;
 import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.io.Journal;
+import com.andreatreccani.mindtrack.io.SnapshotStorage;
 import com.andreatreccani.mindtrack.ui.ConsoleIO;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Locale;
 
 public class App {
 
+    private static final long JOURNAL_COMPACT_BYTES = 1024 * 1024;
+    private static final long JOURNAL_FSYNC_INTERVAL_MS = 1000;
+    private static final int PERSIST_MAX_PENDING = 1000;
+
     public static void main(String[] args) {
 
         ConsoleIO io = new ConsoleIO();
@@ -21,11 +37,150 @@ public class App {
         CsvStorage storage = new CsvStorage(usersCsv, objectivesCsv, bookingsCsv);
         AppContext context = new AppContext(io, storage);
 
+        int exitCode = 0;
         try {
+            // --csv-reader bytes|lines (default: bytes)
+            storage.setReadMode(CsvStorage.ReadMode.valueOf(
+                    option(args, "--csv-reader", "bytes").toUpperCase(Locale.ROOT)));
+
+            // --export-gzip writes available_objectives_<date>.csv.gz; --export-delta also writes the changes
+            // since the previous export to available_objectives_<date>.delta.csv
+            storage.setExportGzip(flag(args, "--export-gzip"));
+            storage.setExportDelta(flag(args, "--export-delta"));
+
+            // --booking-shards stores bookings as one file per month under data/bookings (migrating bookings.csv once);
+            // kept on by itself afterwards. --lazy-shards reads the months before the current one in the background
+            Path shardDir = dataDir.resolve("bookings");
+            if (flag(args, "--booking-shards") || Files.exists(shardDir.resolve("manifest.csv"))) {
+                if (storage.useBookingShards(shardDir)) io.println("Bookings migrated to monthly files in " + shardDir);
+            }
+            context.useLazyOldShards(flag(args, "--lazy-shards"));
+
+            // --fsync always|periodic|never (default: always)
+            Journal.FsyncPolicy fsync = Journal.FsyncPolicy.valueOf(
+                    option(args, "--fsync", "always").toUpperCase(Locale.ROOT));
+            context.useJournal(
+                    new Journal(dataDir.resolve("journal.log"), fsync, JOURNAL_FSYNC_INTERVAL_MS),
+                    JOURNAL_COMPACT_BYTES
+            );
+            // every change goes to the journal first: the CSV files are only rewritten when it is compacted.
+            // --compaction sync|async|group-commit (default: sync) picks who runs that rewrite (see Persister),
+            // --compaction-interval <ms> how often for group-commit (default 200)
+            Persister.Mode compaction = Persister.Mode.valueOf(
+                    option(args, "--compaction", "sync").toUpperCase(Locale.ROOT).replace('-', '_'));
+            long compactionInterval = millisOption(args, "--compaction-interval", "200");
+            context.usePersister(compaction, compactionInterval, PERSIST_MAX_PENDING);
+            context.useSnapshot(new SnapshotStorage(dataDir.resolve("snapshot.bin")));
+            // other processes may use the same data folder: ids come from shared counters
+            context.useSharedIds(dataDir.resolve("ids.lock"));
+
+            context.metrics().registerMBeans();
             context.loadAll();
-            new MenuController(context).run();
+
+            // --stats-dump <file> rewrites the statistics report every --stats-interval seconds (default 60)
+            String statsDump = option(args, "--stats-dump", null);
+            if (statsDump != null) {
+                long interval = secondsOption(args, "--stats-interval", "60");
+                context.metrics().startPeriodicDump(Path.of(statsDump), interval);
+            }
+
+            // --expire-interval <seconds> cancels past bookings (freeing their objectives) at startup and then periodically
+            String expireInterval = option(args, "--expire-interval", null);
+            if (expireInterval != null) context.startExpirySweeper(secondsOption(args, "--expire-interval", expireInterval));
+
+            // --watch applies changes made to the CSV files by other programs while running
+            if (flag(args, "--watch")) context.startWatcher();
+
+            // --import-users <file> / --import-objectives <file> import the file and exit
+            String importUsers = option(args, "--import-users", null);
+            String importObjectives = option(args, "--import-objectives", null);
+            // --check prints the integrity report and exits (1 if issues are left); --repair also fixes them
+            boolean check = flag(args, "--check");
+
+            // --batch <file>|- runs commands without the menu (- = stdin)
+            // --serve <port> exposes the operations over HTTP on 127.0.0.1 until the process is stopped
+            String batch = option(args, "--batch", null);
+            String serve = option(args, "--serve", null);
+            if (check) {
+                IntegrityReport report = context.checkIntegrity(flag(args, "--repair"));
+                for (String line : report.lines()) io.println(line);
+                if (!report.ok() && report.repaired() == 0) exitCode = 1;
+            } else if (importUsers != null || importObjectives != null) {
+                if (importUsers != null) runImport(context, BulkImporter.Kind.USERS, importUsers);
+                if (importObjectives != null) runImport(context, BulkImporter.Kind.OBJECTIVES, importObjectives);
+            } else if (serve != null) {
+                ApiServer server = new ApiServer(context, Integer.parseInt(serve));
+                Thread mainThread = Thread.currentThread();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.stop();
+                    // let main close the data files before the JVM goes away
+                    try {
+                        mainThread.join(5000);
+                    } catch (InterruptedException ignored) {}
+                }));
+                server.start();
+                io.println("MindTrack API listening on http://127.0.0.1:" + server.port());
+                server.awaitStop();
+            } else if (batch != null) {
+                try (BufferedReader in = batch.equals("-")
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                        : Files.newBufferedReader(Path.of(batch))) {
+                    int failed = new BatchRunner(context).run(in);
+                    if (failed > 0) exitCode = 1;
+                }
+            } else {
+                new MenuController(context).run();
+            }
         } catch (Exception e) {
             io.println("FATAL ERROR: " + e.getMessage());
+            exitCode = 2;
+        } finally {
+            try {
+                context.close();
+            } catch (Exception e) {
+                io.println("ERROR: could not close data files (" + e.getMessage() + ")");
+            }
+        }
+
+        if (exitCode != 0) System.exit(exitCode);
+    }
+
+    private static void runImport(AppContext context, BulkImporter.Kind kind, String file) throws Exception {
+        BulkImporter.Result r = context.importFile(kind, Path.of(file));
+        context.io().println(file + ": imported " + r.imported() + ", rejected " + r.rejected()
+                + (r.rejectsFile() != null ? " (see " + r.rejectsFile() + ")" : ""));
+    }
+
+    private static boolean flag(String[] args, String name) {
+        for (String a : args) {
+            if (a.equals(name)) return true;
         }
+        return false;
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) return args[i + 1];
+        }
+        return defaultValue;
+    }
+
+    // an interval for a periodic task: a whole number of seconds, at least 1
+    private static long secondsOption(String[] args, String name, String defaultValue) {
+        return intervalOption(args, name, defaultValue, "seconds");
+    }
+
+    // same, in milliseconds
+    private static long millisOption(String[] args, String name, String defaultValue) {
+        return intervalOption(args, name, defaultValue, "milliseconds");
+    }
+
+    private static long intervalOption(String[] args, String name, String defaultValue, String unit) {
+        String value = option(args, name, defaultValue);
+        try {
+            long interval = Long.parseLong(value.trim());
+            if (interval >= 1) return interval;
+        } catch (NumberFormatException ignored) {}
+        throw new IllegalArgumentException(name + " must be a whole number of " + unit + ", at least 1 (got '" + value + "')");
     }
 }
\ No newline at end of file
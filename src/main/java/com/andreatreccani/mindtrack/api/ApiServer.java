@@ -0,0 +1,334 @@
+package com.andreatreccani.mindtrack.api;
+
+import com.andreatreccani.mindtrack.core.AppContext;
+import com.andreatreccani.mindtrack.core.BookingService;
+import com.andreatreccani.mindtrack.core.ObjectiveQuery;
+import com.andreatreccani.mindtrack.core.UserDashboard;
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loopback HTTP API over the shared AppContext (JDK HttpServer only).
+ *
+ * GET    /objectives[?available=true]                     id;title;period;coins;YES|NO;remaining slots per line
+ *        optional: period, min_coins, max_coins, q (title words), sort=id|coins|-coins, limit
+ * GET    /bookings   from, to (dates, inclusive)            id;user_id;objective_id;date per line, by date
+ * POST   /bookings   user_id, objective_id, date            201 + booking id
+ * DELETE /bookings/{id}
+ * POST   /users      first_name, last_name, email           201 + user id
+ * GET    /users/{id}/dashboard                             bookings;n, coins;n, period;name;n, booking;id lines
+ * POST   /export                                           path of the export file (and of the delta, if enabled)
+ *
+ * Parameters are read from the query string or an application/x-www-form-urlencoded body.
+ * Any other path is 404; an {id} that is not a number is 400.
+ * Each request runs on its own virtual thread when the runtime has them (JDK 21+),
+ * otherwise on a cached thread pool.
+ */
+public class ApiServer {
+
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    private final AppContext ctx;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public ApiServer(AppContext ctx, int port) throws IOException {
+        this.ctx = ctx;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newRequestExecutor();
+
+        server.setExecutor(executor);
+        server.createContext("/objectives", guarded(this::objectives));
+        server.createContext("/bookings", guarded(this::bookings));
+        server.createContext("/users", guarded(this::users));
+        server.createContext("/export", guarded(this::export));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        stopped.countDown();
+    }
+
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    // -------------------------
+    // HANDLERS
+    // -------------------------
+
+    private void objectives(HttpExchange ex) throws IOException {
+        if (!exactPath(ex, "/objectives") || !method(ex, "GET")) return;
+
+        Map<String, String> p = params(ex);
+        ObjectiveQuery query = new ObjectiveQuery(
+                p.get("period"),
+                p.containsKey("min_coins") ? intParam(p, "min_coins") : null,
+                p.containsKey("max_coins") ? intParam(p, "max_coins") : null,
+                "true".equalsIgnoreCase(p.get("available")),
+                p.get("q"),
+                sortParam(p.get("sort")),
+                p.containsKey("limit") ? intParam(p, "limit") : 0
+        );
+
+        StringBuilder sb = new StringBuilder();
+        for (Objective o : ctx.findObjectives(query)) {
+            sb.append(o.id()).append(';').append(o.title()).append(';').append(o.period()).append(';')
+                    .append(o.coins()).append(';').append(o.isAvailable() ? "YES" : "NO").append(';')
+                    .append(o.remaining()).append('\n');
+        }
+        send(ex, 200, sb.toString());
+    }
+
+    private void bookings(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+
+        if (path.equals("/bookings") && ex.getRequestMethod().equalsIgnoreCase("GET")) {
+            Map<String, String> p = params(ex);
+            StringBuilder sb = new StringBuilder();
+            for (Booking b : ctx.bookingsBetween(LocalDate.parse(required(p, "from")), LocalDate.parse(required(p, "to")))) {
+                sb.append(b.id()).append(';').append(b.userId()).append(';').append(b.objectiveId()).append(';')
+                        .append(b.date()).append('\n');
+            }
+            send(ex, 200, sb.toString());
+            return;
+        }
+
+        if (path.equals("/bookings")) {
+            if (!method(ex, "POST")) return;
+            Map<String, String> p = params(ex);
+            BookingService.Result r = ctx.bookingService().book(
+                    intParam(p, "user_id"), intParam(p, "objective_id"), LocalDate.parse(required(p, "date")));
+            switch (r.outcome()) {
+                case BOOKED -> send(ex, 201, "booking " + r.booking().id() + "\n");
+                case USER_NOT_FOUND -> send(ex, 404, "user not found\n");
+                case OBJECTIVE_NOT_AVAILABLE -> send(ex, 409, "objective not available\n");
+                case DUPLICATE_BOOKING -> send(ex, 409, "a booking for this user and objective already exists\n");
+                case DATE_IN_PAST -> send(ex, 400, "booking date cannot be in the past\n");
+                default -> send(ex, 500, "could not save booking (" + r.error() + ")\n");
+            }
+            return;
+        }
+
+        // /bookings/{id}
+        Integer id = pathId(path, "/bookings/", "");
+        if (id == null) {
+            send(ex, 404, "not found\n");
+            return;
+        }
+        if (!method(ex, "DELETE")) return;
+        BookingService.Result r = ctx.bookingService().cancel(id);
+        switch (r.outcome()) {
+            case CANCELLED -> send(ex, 200, "cancelled " + id + "\n");
+            case BOOKING_NOT_FOUND -> send(ex, 404, "booking not found\n");
+            default -> send(ex, 500, "could not save cancellation (" + r.error() + ")\n");
+        }
+    }
+
+    private void users(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+        if (!path.equals("/users")) {
+            Integer id = pathId(path, "/users/", "/dashboard");
+            if (id == null) send(ex, 404, "not found\n");
+            else dashboard(ex, id);
+            return;
+        }
+        if (!method(ex, "POST")) return;
+
+        Map<String, String> p = params(ex);
+        String first = required(p, "first_name").trim();
+        String last = required(p, "last_name").trim();
+        String email = required(p, "email").trim();
+        if (first.isEmpty() || last.isEmpty() || !email.contains("@") || !email.contains(".")) {
+            send(ex, 400, "invalid user data\n");
+            return;
+        }
+
+        User user;
+        try {
+            user = ctx.registerUser(first, last, email);
+        } catch (Exception e) {
+            send(ex, 500, "could not save user (" + e.getMessage() + ")\n");
+            return;
+        }
+        if (user == null) {
+            send(ex, 409, "a user with this email already exists\n");
+            return;
+        }
+        send(ex, 201, "user " + user.id() + "\n");
+    }
+
+    // /users/{id}/dashboard
+    private void dashboard(HttpExchange ex, int id) throws IOException {
+        if (!method(ex, "GET")) return;
+
+        UserDashboard d = ctx.dashboard(id);
+        if (d == null) {
+            send(ex, 404, "user not found\n");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("bookings;").append(d.bookingCount()).append('\n');
+        sb.append("coins;").append(d.totalCoins()).append('\n');
+        d.bookingsPerPeriod().forEach((period, n) -> sb.append("period;").append(period).append(';').append(n).append('\n'));
+        for (int bookingId : d.bookingIds()) sb.append("booking;").append(bookingId).append('\n');
+        send(ex, 200, sb.toString());
+    }
+
+    private void export(HttpExchange ex) throws IOException {
+        if (!exactPath(ex, "/export") || !method(ex, "POST")) return;
+
+        CsvStorage.Export export = ctx.exportAvailable();
+        String body = export.file().toAbsolutePath() + "\n";
+        if (export.delta() != null) body += export.delta().toAbsolutePath() + "\n";
+        send(ex, 200, body);
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private interface Handler {
+        void handle(HttpExchange ex) throws IOException;
+    }
+
+    // maps bad input to 400 and anything unexpected to 500, and always closes the exchange
+    private HttpHandler guarded(Handler handler) {
+        return ex -> {
+            try (ex) {
+                try {
+                    handler.handle(ex);
+                } catch (NumberFormatException | DateTimeParseException | BadRequestException e) {
+                    send(ex, 400, "bad request (" + e.getMessage() + ")\n");
+                } catch (Exception e) {
+                    send(ex, 500, "error (" + e.getMessage() + ")\n");
+                }
+            }
+        };
+    }
+
+    // a context also receives every path below it: only its own is served
+    private boolean exactPath(HttpExchange ex, String expected) throws IOException {
+        if (ex.getRequestURI().getPath().equals(expected)) return true;
+        send(ex, 404, "not found\n");
+        return false;
+    }
+
+    // the id in prefix{id}suffix, null if the path has another shape; an id that is not a number is a bad request
+    private static Integer pathId(String path, String prefix, String suffix) {
+        if (!path.startsWith(prefix) || !path.endsWith(suffix) || path.length() <= prefix.length() + suffix.length()) {
+            return null;
+        }
+        String id = path.substring(prefix.length(), path.length() - suffix.length());
+        if (id.indexOf('/') >= 0) return null;
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("invalid id '" + id + "'");
+        }
+    }
+
+    private boolean method(HttpExchange ex, String expected) throws IOException {
+        if (ex.getRequestMethod().equalsIgnoreCase(expected)) return true;
+        ex.getResponseHeaders().set("Allow", expected);
+        send(ex, 405, "method not allowed\n");
+        return false;
+    }
+
+    private Map<String, String> params(HttpExchange ex) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(ex.getRequestURI().getRawQuery(), params);
+        try (InputStream in = ex.getRequestBody()) {
+            parseForm(new String(in.readAllBytes(), StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+
+    private static void parseForm(String raw, Map<String, String> into) {
+        if (raw == null || raw.isBlank()) return;
+        for (String pair : raw.trim().split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            into.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String required(Map<String, String> p, String name) {
+        String v = p.get(name);
+        if (v == null) throw new BadRequestException("missing parameter '" + name + "'");
+        return v;
+    }
+
+    private static int intParam(Map<String, String> p, String name) {
+        return Integer.parseInt(required(p, name).trim());
+    }
+
+    private static ObjectiveQuery.Sort sortParam(String sort) {
+        if (sort == null) return ObjectiveQuery.Sort.ID;
+        return switch (sort.trim().toLowerCase(Locale.ROOT)) {
+            case "id" -> ObjectiveQuery.Sort.ID;
+            case "coins" -> ObjectiveQuery.Sort.COINS_ASC;
+            case "-coins" -> ObjectiveQuery.Sort.COINS_DESC;
+            default -> throw new BadRequestException("sort must be id, coins or -coins");
+        };
+    }
+
+    private static void send(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", TEXT);
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ExecutorService newRequestExecutor() {
+        // compiled for Java 17: look the virtual thread executor up at runtime
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static class BadRequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,74 +1,375 @@
 package com.andreatreccani.mindtrack.core;
 
 import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.io.Journal;
+import com.andreatreccani.mindtrack.io.LockFile;
+import com.andreatreccani.mindtrack.io.SnapshotStorage;
+import com.andreatreccani.mindtrack.io.StaleFileException;
+import com.andreatreccani.mindtrack.metrics.Metrics;
 import com.andreatreccani.mindtrack.model.Booking;
 import com.andreatreccani.mindtrack.model.Objective;
 import com.andreatreccani.mindtrack.model.User;
 import com.andreatreccani.mindtrack.ui.ConsoleIO;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public class AppContext {
 
+    private static final int MERGE_ATTEMPTS = 5;
+
     private final ConsoleIO io;
     private final CsvStorage storage;
 
-    private final List<User> users = new ArrayList<>();
-    private final List<Objective> objectives = new ArrayList<>();
-    private final List<Booking> bookings = new ArrayList<>();
+    private final Metrics metrics = new Metrics();
+    private final Repository repo = new Repository();
+    private final BookingService bookingService = new BookingService(this, repo);
+    private final ReentrantLock compactLock = new ReentrantLock();
+    private final ExpirySweeper sweeper = new ExpirySweeper(this, repo);
+    private final BulkImporter importer = new BulkImporter(this, repo);
+    private final IntegrityChecker integrity = new IntegrityChecker(this, repo);
+    private final DataWatcher watcher;
+
+    private Journal journal;
+    private IdBlocks sharedIds;
+    private long compactThresholdBytes;
+    private SnapshotStorage snapshot;
+
+    private Persister persister;
+    private volatile boolean grouping;
+
+    // sharded bookings: months changed since their shard was written, and whether older months load in background
+    private final Set<YearMonth> dirtyMonths = ConcurrentHashMap.newKeySet();
+    private boolean lazyOldShards;
 
     public AppContext(ConsoleIO io, CsvStorage storage) {
         this.io = io;
         this.storage = storage;
+        this.persister = newPersister(Persister.Mode.SYNC, 0, 0);
+        this.watcher = new DataWatcher(this, repo);
+        storage.setMetrics(metrics);
+    }
+
+    // With a journal, single-row changes are appended to it instead of rewriting the CSV files;
+    // the CSVs are rewritten (and the journal emptied) once it grows past the threshold.
+    public void useJournal(Journal journal, long compactThresholdBytes) {
+        this.journal = journal;
+        this.compactThresholdBytes = compactThresholdBytes;
+    }
+
+    // Binary copy of the data, used at startup instead of the CSV files when it is newer than all of them.
+    public void useSnapshot(SnapshotStorage snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    // With sharded bookings, only the current and later months are read at startup; older shards are read by a
+    // background task, and anything needing all bookings (lookups, duplicate checks, dashboards) waits for it.
+    public void useLazyOldShards(boolean lazy) {
+        this.lazyOldShards = lazy;
+    }
+
+    // When the CSV files are rewritten after a change, or with a journal when it is compacted (see Persister).
+    // Default: SYNC.
+    public void usePersister(Persister.Mode mode, long intervalMs, int maxPending) throws Exception {
+        persister.close();
+        persister = newPersister(mode, intervalMs, maxPending);
+    }
+
+    // Cancels past bookings in the background every intervalSeconds (see ExpirySweeper). Off by default.
+    public void startExpirySweeper(long intervalSeconds) {
+        sweeper.start(intervalSeconds);
+    }
+
+    // Applies edits made to the CSV files by other tools while running (see DataWatcher). Off by default.
+    public void startWatcher() throws IOException {
+        watcher.start();
+    }
+
+    // For processes sharing the data folder: new ids are taken in blocks from the counters in this file (see IdBlocks).
+    public void useSharedIds(Path counterFile) throws IOException {
+        sharedIds = new IdBlocks(counterFile);
+        repo.useSharedIds(sharedIds);
+    }
+
+    // events still in the journal are newer than the CSV files
+    void replayJournal(Journal.Listener listener) throws IOException {
+        if (journal != null) journal.replay(listener);
+    }
+
+    private Persister newPersister(Persister.Mode mode, long intervalMs, int maxPending) {
+        return new Persister(mode, intervalMs, maxPending, this::persist, metrics);
     }
 
     public ConsoleIO io() { return io; }
     public CsvStorage storage() { return storage; }
+    public BookingService bookingService() { return bookingService; }
+    public Metrics metrics() { return metrics; }
+    public Persister persister() { return persister; }
+
+    public Collection<User> users() { return repo.users(); }
+    public Collection<Objective> objectives() { return repo.objectives(); }
+    public Collection<Booking> bookings() { return repo.bookings(); }
+    public Collection<Objective> availableObjectives() { return repo.availableObjectives(); }
+
+    public List<Objective> findObjectives(ObjectiveQuery query) { return repo.findObjectives(query); }
+    public List<Booking> bookingsBetween(LocalDate from, LocalDate to) { return repo.bookingsBetween(from, to); }
 
-    public List<User> users() { return users; }
-    public List<Objective> objectives() { return objectives; }
-    public List<Booking> bookings() { return bookings; }
+    /** The model at the latest committed version, for reads that must be consistent; close it when done. */
+    public ModelSnapshot snapshot() { return repo.snapshot(); }
 
     public void loadAll() throws Exception {
-        users.clear();
-        objectives.clear();
-        bookings.clear();
+        repo.clear();
+
+        SnapshotStorage.Snapshot data = readFreshSnapshot();
+        boolean fromSnapshot = data != null;
+        boolean lazy = !fromSnapshot && lazyOldShards && storage.sharded();
+        YearMonth currentMonth = YearMonth.now();
+        if (!fromSnapshot) data = readCsvFiles(lazy ? currentMonth : null);
+
+        // one version: a snapshot sees the data before or after the load, never part of it
+        SnapshotStorage.Snapshot read = data;
+        SnapshotStorage.Snapshot duplicates = new SnapshotStorage.Snapshot(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        repo.atomically(() -> {
+            for (User u : read.users()) {
+                if (!repo.addUser(u)) duplicates.users().add(u);
+            }
+            for (Objective o : read.objectives()) {
+                if (!repo.addObjective(o)) duplicates.objectives().add(o);
+            }
+            // the booking store appends in id order: sort first if the file is not (it normally is)
+            for (Booking b : sortedById(read.bookings())) {
+                if (!repo.addBooking(b)) duplicates.bookings().add(b);
+            }
+            return null;
+        });
+        boolean setAside = keepDuplicates(duplicates);
+        if (lazy) {
+            CompletableFuture<Boolean> old = CompletableFuture.supplyAsync(() -> loadOldShards(currentMonth));
+            repo.loadBookingsLater(old);
+            // the snapshot must hold every booking: written once the old shards are in
+            old.thenAccept(loaded -> {
+                if (loaded) writeSnapshotQuietly();
+            });
+        }
 
-        users.addAll(storage.readUsers());
-        objectives.addAll(storage.readObjectives());
-        bookings.addAll(storage.readBookings());
+        if (journal != null) {
+            // from now on also applies the events other processes append to the same journal
+            journal.start(new JournalReplay());
+            // another process compacted while we were reading: merge the files it rewrote
+            if (!storage.isUpToDate()) watcher.resync();
+        }
 
-        // Normalize: if there is ANY booking for an objective => objective must be unavailable
-        boolean changed = normalizeAvailabilityFromBookings();
+        // Normalize: slots taken follow the bookings, both ways (only upwards while older bookings are still
+        // loading). Other inconsistencies are only reported: see checkIntegrity
+        IntegrityReport report = integrity.check(repo.loadedBookings(), !lazy);
+        boolean changed = !integrity.fixSlots(report).isEmpty();
+        int invalid = report.invalidBookings().size();
+        if (invalid > 0) {
+            io.println("WARNING: " + invalid + " booking(s) with a missing user or objective, or repeated (see --check)");
+        }
+        if (!report.overCapacity().isEmpty()) {
+            io.println("WARNING: " + report.overCapacity().size() + " objective(s) with more bookings than capacity (see --check)");
+        }
 
         // Save only if normalization changed something
         if (changed) {
             saveObjectives();
         }
+        // rows set aside leave their files now: a restart must not set them aside again
+        if (setAside) {
+            if (!duplicates.users().isEmpty()) saveUsers();
+            if (!duplicates.objectives().isEmpty() && !changed) saveObjectives();
+            if (!duplicates.bookings().isEmpty()) {
+                for (Booking b : duplicates.bookings()) dirtyMonths.add(YearMonth.from(b.date()));
+                saveBookings();
+            }
+        }
+
+        // compaction refreshes the snapshot itself
+        if (!compactIfNeeded() && (!fromSnapshot || changed) && !lazy) {
+            writeSnapshotQuietly();
+        }
     }
 
-    private boolean normalizeAvailabilityFromBookings() {
-        boolean changed = false;
+    // Rows whose id was taken by an earlier row: the first one is kept, the others are set aside in files (see
+    // CsvStorage.saveDuplicates). False if there were none, or they could not be set aside.
+    private boolean keepDuplicates(SnapshotStorage.Snapshot duplicates) {
+        int rows = duplicates.users().size() + duplicates.objectives().size() + duplicates.bookings().size();
+        if (rows == 0) return false;
+        try {
+            List<Path> files = storage.saveDuplicates(duplicates.users(), duplicates.objectives(), duplicates.bookings());
+            io.println("WARNING: " + rows + " row(s) with an id already used by an earlier row, moved to " + files);
+            return true;
+        } catch (IOException e) {
+            io.println("WARNING: " + rows + " row(s) with an id already used by an earlier row ignored, "
+                    + "and could not be set aside (" + e.getMessage() + ")");
+            return false;
+        }
+    }
 
-        for (Booking b : bookings) {
-            Objective o = findObjectiveById(b.objectiveId());
-            if (o == null) {
-                io.println("WARNING: booking " + b.id() + " references missing objective id " + b.objectiveId());
-                continue;
-            }
-            if (o.isAvailable()) {
-                o.setAvailable(false);
-                changed = true;
+    private SnapshotStorage.Snapshot readFreshSnapshot() {
+        if (snapshot == null) return null;
+        try {
+            storage.noteVersions();
+            if (!snapshot.isNewerThan(storage.files())) return null;
+            return snapshot.read();
+        } catch (Exception e) {
+            io.println("WARNING: snapshot not usable (" + e.getMessage() + "), loading CSV files");
+            return null;
+        }
+    }
+
+    // background part of a lazy load: bookings of the months before the given one
+    private boolean loadOldShards(YearMonth before) {
+        try {
+            long start = System.nanoTime();
+            List<Booking> old = storage.readBookingsBefore(before);
+            repo.addBookings(sortedById(old));
+            // written with the next save, like any other change
+            if (countSlots(old)) persister.defer(false, true, false, false);
+            metrics.recordSince("load.old_shards", start);
+            return true;
+        } catch (Exception e) {
+            System.err.println("[WARN] could not load old booking shards: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // from: only the booking shards from this month on (null = all bookings)
+    private SnapshotStorage.Snapshot readCsvFiles(YearMonth from) throws Exception {
+        // the three files are independent: read them concurrently (large files are also split internally)
+        ExecutorService loader = Executors.newFixedThreadPool(3);
+        try {
+            Future<List<User>> u = loader.submit(storage::readUsers);
+            Future<List<Objective>> o = loader.submit(storage::readObjectives);
+            Future<List<Booking>> b = loader.submit(() -> from == null ? storage.readBookings() : storage.readBookingsFrom(from));
+            return new SnapshotStorage.Snapshot(await(u), await(o), await(b));
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    // Only while no other process has rewritten a data file we have not merged (the snapshot would miss its rows),
+    // and under the compaction lock: skipped if another process is compacting, it writes the snapshot itself.
+    private void writeSnapshotQuietly() {
+        if (snapshot == null) return;
+        try (LockFile.Held compacting = journal != null ? journal.tryLockCompaction() : null) {
+            if (journal != null && compacting == null) return;
+            if (!storage.isUpToDate()) return;
+            snapshot.write(repo.users(), repo.objectives(), repo.bookings());
+            if (!storage.isUpToDate()) snapshot.delete();
+        } catch (Exception e) {
+            System.err.println("[WARN] could not write snapshot: " + e.getMessage());
+        }
+    }
+
+    private static List<Booking> sortedById(List<Booking> bookings) {
+        for (int i = 1; i < bookings.size(); i++) {
+            if (bookings.get(i - 1).id() > bookings.get(i).id()) {
+                List<Booking> sorted = new ArrayList<>(bookings);
+                sorted.sort(Comparator.comparingInt(Booking::id));
+                return sorted;
             }
         }
+        return bookings;
+    }
+
+    private static <T> T await(Future<T> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ex ? ex : e;
+        }
+    }
+
+    // Now that every booking is in: the objectives of these bookings take as many slots as they have bookings
+    // (under their stripe, bookings are going on). Runs inside the background load, so it counts what is loaded
+    // instead of waiting for itself. True if the availability of any changed.
+    private boolean countSlots(Collection<Booking> bookings) {
+        Set<Integer> ids = new TreeSet<>();
+        for (Booking b : bookings) {
+            if (findObjectiveById(b.objectiveId()) != null) ids.add(b.objectiveId());
+            else io.println("WARNING: booking " + b.id() + " references missing objective id " + b.objectiveId());
+        }
+
+        boolean[] changed = { false };
+        for (int id : ids) {
+            bookingService.withObjectiveLock(id, () -> {
+                Objective o = findObjectiveById(id);
+                if (o == null) return false;
+                boolean wasAvailable = o.isAvailable();
+                repo.compareAndSetTaken(o, o.taken(), repo.loadedBookingCountForObjective(id));
+                if (o.isAvailable() != wasAvailable) changed[0] = true;
+                return true;
+            });
+        }
+        return changed[0];
+    }
+
+    // one writer per file at a time; the lists are concurrent, so a rewrite sees a consistent-enough view
+    public synchronized void saveUsers() throws Exception { writeMerging(() -> storage.writeUsers(repo.users())); }
+    public synchronized void saveObjectives() throws Exception { writeMerging(() -> storage.writeObjectives(repo.objectives())); }
+
+    // sharded: only the months touched since the last write
+    public synchronized void saveBookings() throws Exception {
+        if (!storage.sharded()) {
+            writeMerging(() -> storage.writeBookings(repo.bookings()));
+            return;
+        }
 
-        return changed;
+        writeMerging(() -> {
+            List<YearMonth> months = new ArrayList<>(dirtyMonths);
+            if (months.isEmpty()) return;
+            dirtyMonths.removeAll(months);
+            try {
+                storage.writeBookingShards(months, m -> repo.bookingsBetween(m.atDay(1), m.atEndOfMonth()));
+            } catch (Exception e) {
+                dirtyMonths.addAll(months);
+                throw e;
+            }
+        });
     }
 
-    public void saveUsers() throws Exception { storage.writeUsers(users); }
-    public void saveObjectives() throws Exception { storage.writeObjectives(objectives); }
-    public void saveBookings() throws Exception { storage.writeBookings(bookings); }
+    private interface Write {
+        void run() throws Exception;
+    }
+
+    // Optimistic: if another process rewrote a file since we read it, its rows are merged into memory
+    // (rows with newer changes here win, see DataWatcher) and the write is tried again, up to MERGE_ATTEMPTS
+    // times per file (a sharded write may meet several).
+    private void writeMerging(Write write) throws Exception {
+        Map<Path, Integer> merges = new HashMap<>();
+        while (true) {
+            try {
+                write.run();
+                return;
+            } catch (StaleFileException e) {
+                if (merges.merge(e.file(), 1, Integer::sum) > MERGE_ATTEMPTS) throw e;
+                metrics.increment("save.merges");
+                watcher.merge(e.file());
+            }
+        }
+    }
 
     public void saveAll() throws Exception {
         saveUsers();
@@ -76,33 +377,336 @@ public class AppContext {
         saveBookings();
     }
 
-    public User findUserById(int id) {
-        return users.stream().filter(u -> u.id() == id).findFirst().orElse(null);
+    // -------------------------
+    // COMMIT
+    // -------------------------
+
+    /**
+     * Books in memory through take (which returns the booking, or null if it refused) and commits the booking;
+     * if it cannot be saved, undo reverses take (false if the booking was gone already) and the error is
+     * rethrown. With a journal, take runs under the
+     * journal lock once the events of the other processes are applied, and the booking is appended before the
+     * lock is released: take's checks (a free slot, no booking of the objective by the same user) see the
+     * bookings of every process. Returns false, without calling take, if what another process compacted must be
+     * merged first (resyncIfLagged, which takes the BookingService stripes: call it with none held).
+     */
+    boolean commitBookingCreated(Objective o, Supplier<Booking> take, Predicate<Booking> undo) throws Exception {
+        Booking[] booked = new Booking[1];
+        boolean applied = commit(false, true, true, new Journal.Change() {
+            @Override
+            public String[] apply() {
+                booked[0] = take.get();
+                if (booked[0] == null) return null;
+                dirtyMonths.add(YearMonth.from(booked[0].date()));
+                return new String[] { Journal.bookingCreated(booked[0]), Journal.availabilityChanged(o) };
+            }
+
+            @Override
+            public String[] undo() {
+                if (!undo.test(booked[0])) return null;
+                return new String[] { Journal.bookingCancelled(booked[0]), Journal.availabilityChanged(o) };
+            }
+        });
+        if (booked[0] != null) watcher.bookingCommitted(booked[0].id(), o.id());
+        return applied;
+    }
+
+    /**
+     * Same for a cancellation: remove returns false if the booking is already gone, restore false if the booking
+     * could not come back (see BookingService). o may be missing (null).
+     */
+    boolean commitBookingCancelled(Booking b, Objective o, BooleanSupplier remove, BooleanSupplier restore) throws Exception {
+        boolean applied = commit(false, o != null, true, new Journal.Change() {
+            @Override
+            public String[] apply() {
+                if (!remove.getAsBoolean()) return null;
+                dirtyMonths.add(YearMonth.from(b.date()));
+                return o != null
+                        ? new String[] { Journal.bookingCancelled(b), Journal.availabilityChanged(o) }
+                        : new String[] { Journal.bookingCancelled(b) };
+            }
+
+            @Override
+            public String[] undo() {
+                if (!restore.getAsBoolean()) return null;
+                return o != null
+                        ? new String[] { Journal.bookingCreated(b), Journal.availabilityChanged(o) }
+                        : new String[] { Journal.bookingCreated(b) };
+            }
+        });
+        watcher.bookingCommitted(b.id(), b.objectiveId());
+        return applied;
     }
 
-    public Objective findObjectiveById(int id) {
-        return objectives.stream().filter(o -> o.id() == id).findFirst().orElse(null);
+    // availability fixed up after a reload (see DataWatcher)
+    void commitAvailability(List<Objective> changed) throws Exception {
+        String[] events = new String[changed.size()];
+        for (int i = 0; i < events.length; i++) events[i] = Journal.availabilityChanged(changed.get(i));
+        commit(false, true, false, events);
     }
 
-    public Booking findBookingById(int id) {
-        return bookings.stream().filter(b -> b.id() == id).findFirst().orElse(null);
+    // bookings removed and availability fixed by IntegrityChecker.repair, as one journal write
+    void commitRepairs(List<Booking> removed, List<Objective> changed) throws Exception {
+        List<String> events = new ArrayList<>();
+        for (Booking b : removed) {
+            dirtyMonths.add(YearMonth.from(b.date()));
+            events.add(Journal.bookingCancelled(b));
+        }
+        for (Objective o : changed) events.add(Journal.availabilityChanged(o));
+        commit(false, !changed.isEmpty(), !removed.isEmpty(), events.toArray(new String[0]));
+        for (Booking b : removed) watcher.bookingCommitted(b.id(), b.objectiveId());
     }
 
-    public boolean emailExists(String email) {
-        if (email == null) return false;
-        return users.stream().anyMatch(u -> u.email().equalsIgnoreCase(email.trim()));
+    // Group commit: between begin and end, commits only log (or mark files dirty);
+    // the fsync / file rewrites happen once in endGroupCommit.
+    public void beginGroupCommit() {
+        grouping = true;
     }
 
-    public boolean bookingExistsForUserAndObjective(int userId, int objectiveId) {
-        return bookings.stream().anyMatch(b -> b.userId() == userId && b.objectiveId() == objectiveId);
+    public void endGroupCommit() throws Exception {
+        grouping = false;
+
+        if (journal != null) {
+            journal.sync();
+            if (journal.size() >= compactThresholdBytes) persister.defer(false, false, false, true);
+        }
+        persister.flush();
     }
 
-    public int nextBookingId() {
-        return bookings.stream().mapToInt(Booking::id).max().orElse(0) + 1;
+    private void commit(boolean users, boolean objectives, boolean bookings, String... events) throws Exception {
+        if (journal == null) {
+            saveChanged(users, objectives, bookings);
+            return;
+        }
+
+        if (grouping) {
+            journal.appendDeferred(events);
+            resyncIfLagged();
+            return;
+        }
+        journal.append(events);
+        resyncIfLagged();
+        compactIfLarge();
     }
 
-    public int nextUserId() {
-        return users.stream().mapToInt(User::id).max().orElse(0) + 1;
+    // Change made under the journal lock (see Journal.append(Change, boolean)); without a journal, made and then
+    // saved, undone if the save fails. False if it was not made: merge what another process compacted first.
+    private boolean commit(boolean users, boolean objectives, boolean bookings, Journal.Change change) throws Exception {
+        if (journal == null) {
+            if (change.apply() == null) return true;
+            try {
+                saveChanged(users, objectives, bookings);
+            } catch (Exception e) {
+                change.undo();
+                throw e;
+            }
+            return true;
+        }
+
+        Journal.Appended appended = journal.append(change, grouping);
+        if (appended == Journal.Appended.LAGGED) return false;
+        if (appended == Journal.Appended.WRITTEN && !grouping) compactIfLarge();
+        return true;
     }
-}
 
+    private void saveChanged(boolean users, boolean objectives, boolean bookings) throws Exception {
+        if (grouping) persister.defer(users, objectives, bookings, false);
+        else persister.changed(users, objectives, bookings, false);
+    }
+
+    private void compactIfLarge() throws IOException {
+        if (journal.size() < compactThresholdBytes) return;
+        // the change is already safe in the journal, a failed compaction must not roll it back
+        try {
+            persister.changed(false, false, false, true);
+        } catch (Exception e) {
+            metrics.increment("save.failures");
+            io.println("WARNING: journal compaction failed (" + e.getMessage() + ")");
+        }
+    }
+
+    // Imports bypass the journal: the whole file is rewritten once, whatever the persist mode.
+    // Until then the new rows are pinned: a merge with another process's version of the file keeps them.
+    void saveImported(Collection<User> users, Collection<Objective> objectives) throws Exception {
+        watcher.pin(users, objectives);
+        try {
+            persister.defer(!users.isEmpty(), !objectives.isEmpty(), false, false);
+            persister.flush();
+        } finally {
+            watcher.unpin(users, objectives);
+        }
+    }
+
+    // another process compacted journal events before we read them: they are only in the CSV files now
+    void resyncIfLagged() {
+        if (!journal.takeLagged()) return;
+        try {
+            metrics.increment("journal.resyncs");
+            watcher.resync();
+        } catch (Exception e) {
+            io.println("WARNING: could not merge the data files changed by another process (" + e.getMessage() + ")");
+        }
+    }
+
+    // Persister.Sink: runs in the caller (SYNC) or in the background writer
+    private void persist(boolean users, boolean objectives, boolean bookings, boolean compact) throws Exception {
+        if (users) saveUsers();
+        if (bookings) saveBookings();
+        if (objectives) saveObjectives();
+        if (compact) compactIfNeeded();
+    }
+
+    // -------------------------
+    // EXPORT
+    // -------------------------
+
+    /**
+     * Exports the objectives available at one version, while bookings go on; the file is not rewritten if
+     * availability has not changed since the last export.
+     */
+    public CsvStorage.Export exportAvailable() throws IOException {
+        try (ModelSnapshot snap = repo.snapshot()) {
+            return storage.exportAvailableObjectives(snap.availableObjectives(), snap.availabilityMark());
+        }
+    }
+
+    /** Streams users or objectives from an external CSV into the data (see BulkImporter). */
+    public BulkImporter.Result importFile(BulkImporter.Kind kind, Path file) throws Exception {
+        return importer.run(kind, file);
+    }
+
+    /**
+     * Checks users, objectives and bookings against each other (see IntegrityReport); with repair, also removes
+     * the invalid bookings and fixes availability, in one journaled batch.
+     */
+    public IntegrityReport checkIntegrity(boolean repair) throws Exception {
+        IntegrityReport report = integrity.check(repo.bookings(), true);
+        return repair && !report.ok() ? integrity.repair(report) : report;
+    }
+
+    /** Cancels the bookings dated before today now; returns how many were cancelled. */
+    public int expirePastBookings() throws Exception {
+        return sweeper.sweep(LocalDate.now());
+    }
+
+    public void close() throws Exception {
+        metrics.stop();
+        try {
+            watcher.stop();
+            sweeper.stop();
+            persister.close();
+        } finally {
+            try {
+                if (sharedIds != null) sharedIds.close();
+            } finally {
+                if (journal != null) journal.close();
+            }
+        }
+    }
+
+    private boolean compactIfNeeded() throws Exception {
+        if (journal == null || journal.size() < compactThresholdBytes) return false;
+        // another session is already compacting (or this one, through a merge committing availability)
+        if (compactLock.isHeldByCurrentThread() || !compactLock.tryLock()) return false;
+        try (LockFile.Held shared = journal.tryLockCompaction()) {
+            // another process is compacting
+            if (shared == null) return false;
+
+            // every event before this offset, ours or another process's, was applied in memory before the CSVs
+            // are rewritten below; later ones stay in the journal. CSVs first: if we crash before the discard,
+            // replay is harmless.
+            long upTo = journal.catchUp();
+            resyncIfLagged();
+            saveAll();
+            journal.discardUpTo(upTo);
+            writeSnapshotQuietly();
+            return true;
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    // Replay is idempotent: events already contained in the CSV base are skipped.
+    private class JournalReplay implements Journal.Listener {
+        @Override
+        public void bookingCreated(Booking b) {
+            if (!repo.addBooking(b)) return;
+            dirtyMonths.add(YearMonth.from(b.date()));
+            // Checked against every process's bookings when it was appended, so a slot is free; unless the data
+            // predates those checks, or slots are not counted yet (startup: see IntegrityChecker.fixSlots)
+            Objective o = repo.findObjectiveById(b.objectiveId());
+            if (o != null) repo.takeSlot(o);
+        }
+
+        @Override
+        public void bookingCancelled(int bookingId) {
+            Booking b = repo.findBookingById(bookingId);
+            if (b == null || !repo.removeBooking(b)) return;
+            dirtyMonths.add(YearMonth.from(b.date()));
+            Objective o = repo.findObjectiveById(b.objectiveId());
+            if (o != null) repo.releaseSlot(o);
+        }
+
+        @Override
+        public void userAdded(User u) {
+            repo.addUser(u);
+        }
+
+        @Override
+        public void userRemoved(int userId) {
+            User u = repo.findUserById(userId);
+            if (u != null) repo.removeUser(u);
+        }
+
+        @Override
+        public void availabilityChanged(int objectiveId, boolean available, int taken) {
+            Objective o = repo.findObjectiveById(objectiveId);
+            if (o == null) return;
+            // the count as the appending process left it; older lines only have the flag
+            if (taken >= 0) repo.setTaken(o, taken);
+            else repo.setAvailable(o, available);
+        }
+    }
+
+    /**
+     * Creates and persists a user. Returns null if the email is already taken; with a journal the user is
+     * created under its lock, after the users other processes added. If saving fails the user is removed again
+     * (journaled as such if its event was already written) and the error rethrown.
+     */
+    public User registerUser(String firstName, String lastName, String email) throws Exception {
+        User[] created = new User[1];
+        Journal.Change change = new Journal.Change() {
+            @Override
+            public String[] apply() {
+                created[0] = repo.createUser(firstName, lastName, email);
+                return created[0] == null ? null : new String[] { Journal.userAdded(created[0]) };
+            }
+
+            @Override
+            public String[] undo() {
+                return repo.removeUser(created[0]) ? new String[] { Journal.userRemoved(created[0]) } : null;
+            }
+        };
+
+        try {
+            while (!commit(true, false, false, change)) resyncIfLagged();
+        } catch (Exception e) {
+            metrics.increment("save.failures");
+            metrics.increment("save.rollbacks");
+            throw e;
+        }
+        if (created[0] != null) watcher.userCommitted(created[0].id());
+        return created[0];
+    }
+
+    public User findUserById(int id) { return repo.findUserById(id); }
+    public UserDashboard dashboard(int userId) { return repo.dashboard(userId); }
+    public Objective findObjectiveById(int id) { return repo.findObjectiveById(id); }
+    public Booking findBookingById(int id) { return repo.findBookingById(id); }
+
+    public boolean emailExists(String email) { return repo.emailExists(email); }
+
+    public boolean bookingExistsForUserAndObjective(int userId, int objectiveId) {
+        return repo.bookingExistsForUserAndObjective(userId, objectiveId);
+    }
+}
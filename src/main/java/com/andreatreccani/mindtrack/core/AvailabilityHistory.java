@@ -0,0 +1,96 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Objective;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Earlier slot counts (Objective.taken, which availability follows) since the horizon (see VersionClock): per
+ * objective, a chain of (count, version it was replaced at), newest first. An objective changed before the
+ * horizon has no chain.
+ *
+ * A change records the old count before setting the new one, under the objective's monitor, which also orders
+ * one objective's versions (see Repository); a reader reads the count first, then the chain, so it either sees
+ * the old count or finds it in the chain.
+ */
+final class AvailabilityHistory {
+
+    private record Prior(int taken, long until, Prior older) {}
+
+    // keyed by instance: a reloaded objective is a new object under the same id
+    private final Map<Objective, Prior> priors = new ConcurrentHashMap<>();
+    // versions that changed the available set (flips, objectives added or removed) since the horizon
+    private final NavigableSet<Long> changes = new ConcurrentSkipListSet<>();
+    private volatile long base; // latest such version before them
+
+    void clear() {
+        priors.clear();
+        changes.clear();
+    }
+
+    /** flips: the change makes the objective available or full. */
+    void changing(Objective o, int takenBefore, long version, boolean flips) {
+        priors.compute(o, (k, p) -> new Prior(takenBefore, version, p));
+        if (flips) changes.add(version);
+    }
+
+    void changed(long version) {
+        changes.add(version);
+    }
+
+    int takenAt(Objective o, long version) {
+        int now = o.taken();
+        Prior p = priors.get(o);
+        if (p == null || p.until() <= version) return now;
+        while (p.older() != null && p.older().until() > version) p = p.older();
+        return p.taken();
+    }
+
+    boolean availableAt(Objective o, long version) {
+        return takenAt(o, version) < o.capacity();
+    }
+
+    /** Objectives whose slot count changed after version. */
+    List<Objective> changedAfter(long version) {
+        List<Objective> changed = new ArrayList<>();
+        for (Map.Entry<Objective, Prior> e : priors.entrySet()) {
+            if (e.getValue().until() > version) changed.add(e.getKey());
+        }
+        return changed;
+    }
+
+    /** Same value for two versions = same available set at both. */
+    long markAt(long version) {
+        Long v = changes.floor(version);
+        return v != null ? v : base;
+    }
+
+    void prune(long horizon) {
+        for (Objective o : priors.keySet()) priors.computeIfPresent(o, (k, p) -> cut(p, horizon));
+
+        Long last = changes.floor(horizon);
+        if (last != null) {
+            // base first: a reader looking between the two steps still finds one of them
+            base = Math.max(base, last);
+            changes.headSet(last, true).clear();
+        }
+    }
+
+    // the chain without the entries replaced at or before horizon; null if none is left
+    private static Prior cut(Prior p, long horizon) {
+        List<Prior> kept = new ArrayList<>();
+        for (Prior q = p; q != null && q.until() > horizon; q = q.older()) kept.add(q);
+        if (kept.isEmpty()) return null;
+        Prior last = kept.get(kept.size() - 1);
+        if (last.older() == null) return p; // nothing to cut
+
+        Prior chain = null;
+        for (int i = kept.size() - 1; i >= 0; i--) chain = new Prior(kept.get(i).taken(), kept.get(i).until(), chain);
+        return chain;
+    }
+}
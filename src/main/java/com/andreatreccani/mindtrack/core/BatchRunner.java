@@ -0,0 +1,125 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.User;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Non-interactive mode: one command per line, ";" separated like the CSV files.
+ *
+ * book;user_id;objective_id;YYYY-MM-DD
+ * cancel;booking_id
+ * add-user;first_name;last_name;email
+ *
+ * Blank lines and lines starting with # are ignored. Every command prints one result line:
+ * line;OK;detail or line;ERROR;reason
+ * Changes are persisted as one group at the end instead of once per command.
+ */
+public class BatchRunner {
+
+    private final AppContext ctx;
+
+    public BatchRunner(AppContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /** Returns the number of failed commands. */
+    public int run(BufferedReader in) throws IOException {
+        int failed = 0;
+        int row = 0;
+
+        ctx.beginGroupCommit();
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                row++;
+                String cmd = line.trim();
+                if (cmd.isEmpty() || cmd.startsWith("#")) continue;
+
+                String result;
+                try {
+                    result = execute(cmd.split(";", -1));
+                } catch (NumberFormatException e) {
+                    result = error("invalid number (" + e.getMessage() + ")");
+                } catch (DateTimeParseException e) {
+                    result = error("invalid date format (expected YYYY-MM-DD)");
+                }
+
+                if (result.startsWith("ERROR")) failed++;
+                ctx.io().println(row + ";" + result);
+            }
+        } finally {
+            try {
+                ctx.endGroupCommit();
+            } catch (Exception e) {
+                ctx.io().println("ERROR: could not save batch (" + e.getMessage() + ")");
+                failed++;
+            }
+        }
+
+        return failed;
+    }
+
+    private String execute(String[] p) {
+        switch (p[0].trim().toLowerCase(Locale.ROOT)) {
+            case "book" -> {
+                if (p.length < 4) return error("usage: book;user_id;objective_id;YYYY-MM-DD");
+                return book(Integer.parseInt(p[1].trim()), Integer.parseInt(p[2].trim()), LocalDate.parse(p[3].trim()));
+            }
+            case "cancel" -> {
+                if (p.length < 2) return error("usage: cancel;booking_id");
+                return cancel(Integer.parseInt(p[1].trim()));
+            }
+            case "add-user" -> {
+                if (p.length < 4) return error("usage: add-user;first_name;last_name;email");
+                return addUser(p[1].trim(), p[2].trim(), p[3].trim());
+            }
+            default -> {
+                return error("unknown command '" + p[0].trim() + "'");
+            }
+        }
+    }
+
+    private String book(int userId, int objectiveId, LocalDate date) {
+        BookingService.Result r = ctx.bookingService().book(userId, objectiveId, date);
+        return switch (r.outcome()) {
+            case BOOKED -> "OK;booking " + r.booking().id();
+            case USER_NOT_FOUND -> error("user not found");
+            case OBJECTIVE_NOT_AVAILABLE -> error("objective not available");
+            case DUPLICATE_BOOKING -> error("a booking for this user and objective already exists");
+            case DATE_IN_PAST -> error("booking date cannot be in the past");
+            default -> error("could not save booking (" + r.error() + ")");
+        };
+    }
+
+    private String cancel(int bookingId) {
+        BookingService.Result r = ctx.bookingService().cancel(bookingId);
+        return switch (r.outcome()) {
+            case CANCELLED -> "OK;cancelled " + bookingId;
+            case BOOKING_NOT_FOUND -> error("booking not found");
+            default -> error("could not save cancellation (" + r.error() + ")");
+        };
+    }
+
+    private String addUser(String firstName, String lastName, String email) {
+        // same rules as the interactive prompts
+        if (firstName.isEmpty() || lastName.isEmpty()) return error("first and last name are required");
+        if (!email.contains("@") || !email.contains(".")) return error("invalid email");
+
+        try {
+            User user = ctx.registerUser(firstName, lastName, email);
+            if (user == null) return error("a user with this email already exists");
+            return "OK;user " + user.id();
+        } catch (Exception e) {
+            return error("could not save user (" + e.getMessage() + ")");
+        }
+    }
+
+    private static String error(String reason) {
+        return "ERROR;" + reason;
+    }
+}
@@ -0,0 +1,185 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Booking and cancellation, safe to call from many sessions and processes at once.
+ * The check-then-act on an objective (duplicate check, taking a slot, adding the booking) runs under the
+ * objective's monitor (Repository.atomically(Objective, ...)) and only for that in-memory step. With a journal
+ * the step also runs under the journal lock, after the other processes' events are applied, and the booking is
+ * appended before the lock is released (see AppContext.commitBookingCreated): bookings queue there for the
+ * step and one write, the fsync happens in parallel. Slot and booking row change together as one version, so a
+ * snapshot never sees one without the other.
+ *
+ * Each objective also maps to a read/write lock stripe: book and cancel hold it shared until they are persisted,
+ * changes made outside them (reload, repair) hold it exclusively (withObjectiveLock), so they never see a
+ * booking half done. Readers (listings, export) never take these locks.
+ */
+public class BookingService {
+
+    public enum Outcome {
+        BOOKED,
+        CANCELLED,
+        USER_NOT_FOUND,
+        OBJECTIVE_NOT_AVAILABLE,
+        DUPLICATE_BOOKING,
+        DATE_IN_PAST,
+        BOOKING_NOT_FOUND,
+        SAVE_FAILED
+    }
+
+    public record Result(Outcome outcome, Booking booking, String error) {
+        public boolean ok() { return outcome == Outcome.BOOKED || outcome == Outcome.CANCELLED; }
+
+        static Result of(Outcome outcome) { return new Result(outcome, null, null); }
+    }
+
+    private static final int STRIPES = 64; // power of two
+
+    private final AppContext ctx;
+    private final Repository repo;
+    private final ReadWriteLock[] stripes = new ReadWriteLock[STRIPES];
+
+    BookingService(AppContext ctx, Repository repo) {
+        this.ctx = ctx;
+        this.repo = repo;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantReadWriteLock();
+    }
+
+    public Result book(int userId, int objectiveId, LocalDate date) {
+        if (repo.findUserById(userId) == null) return Result.of(Outcome.USER_NOT_FOUND);
+
+        Objective objective = repo.findObjectiveById(objectiveId);
+        if (objective == null || !objective.isAvailable()) return Result.of(Outcome.OBJECTIVE_NOT_AVAILABLE);
+
+        if (date.isBefore(LocalDate.now())) return Result.of(Outcome.DATE_IN_PAST);
+        // checked again in take; this one waits, outside the locks, for bookings still loading in the background
+        if (repo.bookingExistsForUserAndObjective(userId, objectiveId)) return Result.of(Outcome.DUPLICATE_BOOKING);
+
+        while (true) {
+            Result[] taken = new Result[1];
+            Lock lock = stripeFor(objectiveId).readLock();
+            lock.lock();
+            try {
+                // a reload may have replaced (or removed) the objective meanwhile
+                Objective target = repo.findObjectiveById(objectiveId);
+                if (target == null) return Result.of(Outcome.OBJECTIVE_NOT_AVAILABLE);
+
+                boolean applied = ctx.commitBookingCreated(target, () -> {
+                    taken[0] = repo.atomically(target, () -> take(target, userId, date));
+                    return taken[0].booking();
+                }, booking -> repo.atomically(target, () -> release(booking, target)));
+                if (applied) return taken[0];
+            } catch (Exception e) {
+                // rolled back by the commit; no booking if the id counter shared with other processes failed
+                recordRollback();
+                return new Result(Outcome.SAVE_FAILED, taken[0] != null ? taken[0].booking() : null, e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+            ctx.resyncIfLagged();
+        }
+    }
+
+    public Result cancel(int bookingId) {
+        Booking booking = repo.findBookingById(bookingId);
+        if (booking == null) return Result.of(Outcome.BOOKING_NOT_FOUND);
+
+        while (true) {
+            boolean[] removed = new boolean[1];
+            boolean[] restored = { true };
+            Lock lock = stripeFor(booking.objectiveId()).readLock();
+            lock.lock();
+            try {
+                Objective obj = repo.findObjectiveById(booking.objectiveId());
+                // someone else (another process too) may have cancelled it meanwhile
+                boolean applied = ctx.commitBookingCancelled(booking, obj, () -> {
+                    removed[0] = obj != null ? repo.atomically(obj, () -> release(booking, obj)) : repo.removeBooking(booking);
+                    return removed[0];
+                }, () -> restored[0] = restore(booking, obj));
+                if (applied) return removed[0] ? new Result(Outcome.CANCELLED, booking, null) : Result.of(Outcome.BOOKING_NOT_FOUND);
+            } catch (Exception e) {
+                if (!restored[0]) {
+                    // kept: its months stay dirty, so the next save writes it
+                    ctx.metrics().increment("save.failures");
+                    return new Result(Outcome.CANCELLED, booking, e.getMessage());
+                }
+                recordRollback();
+                return new Result(Outcome.SAVE_FAILED, booking, e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+            ctx.resyncIfLagged();
+        }
+    }
+
+    /**
+     * Runs action holding the objective's stripe exclusively, as one version: for changes to bookings / slots
+     * made outside book and cancel.
+     */
+    boolean withObjectiveLock(int objectiveId, BooleanSupplier action) {
+        Lock lock = stripeFor(objectiveId).writeLock();
+        lock.lock();
+        try {
+            return repo.atomically(action::getAsBoolean);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Under the objective's monitor: other bookings of it wait only for this in-memory step, not for the commit.
+    // BOOKED here means taken, not yet committed.
+    private Result take(Objective objective, int userId, LocalDate date) {
+        // extra guard: avoid duplicate booking for same user & objective
+        if (repo.bookingExistsForUserAndObjective(userId, objective.id())) return Result.of(Outcome.DUPLICATE_BOOKING);
+        if (!repo.takeSlot(objective)) return Result.of(Outcome.OBJECTIVE_NOT_AVAILABLE);
+        try {
+            Booking booking = new Booking(repo.reserveBookingId(), userId, objective.id(), date);
+            repo.addBooking(booking);
+            return new Result(Outcome.BOOKED, booking, null);
+        } catch (UncheckedIOException e) {
+            repo.releaseSlot(objective);
+            throw e;
+        }
+    }
+
+    // removes the booking and gives its slot back; false if the booking was already gone
+    private boolean release(Booking booking, Objective objective) {
+        if (!repo.removeBooking(booking)) return false;
+        repo.releaseSlot(objective);
+        return true;
+    }
+
+    // A cancellation that could not be saved: the booking comes back with its slot. If the slot is gone (without
+    // a journal another booking can take it before the save fails) the cancellation is kept instead of
+    // overfilling the objective; false then.
+    private boolean restore(Booking booking, Objective objective) {
+        if (objective == null) {
+            repo.addBooking(booking);
+            return true;
+        }
+        return repo.atomically(objective, () -> {
+            if (!repo.takeSlot(objective)) return false;
+            repo.addBooking(booking);
+            return true;
+        });
+    }
+
+    private void recordRollback() {
+        ctx.metrics().increment("save.failures");
+        ctx.metrics().increment("save.rollbacks");
+    }
+
+    private ReadWriteLock stripeFor(int objectiveId) {
+        int h = objectiveId * 0x9E3779B9; // spread consecutive ids
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+}
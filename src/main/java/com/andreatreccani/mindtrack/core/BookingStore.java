@@ -0,0 +1,503 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+
+import java.time.LocalDate;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bookings stored column by column: parallel int arrays for id, user id, objective id and date (epoch day),
+ * plus the versions that added and removed each slot (see VersionClock): about 32 bytes per booking plus the
+ * (user, objective) index, instead of a record + LocalDate + map nodes.
+ *
+ * Slots are kept sorted by id, so lookups are a binary search and iteration is in id order.
+ * A cancellation only stamps the slot's removal version; the arrays are compacted once removed slots are the
+ * majority, keeping those a pinned snapshot can still see (compaction is retried when it lets go, see reclaim).
+ * A booking added again while its removed slot is still visible gets a second slot with the same id, after it.
+ * A per-day index (epoch day -> ids) serves date range queries and the expiry sweep; like the lookups it
+ * reflects the current bookings only.
+ * Booking objects are created on request (find, iteration) and are not retained.
+ *
+ * Writers take the write lock; lookups and iteration batches take the read lock, so readers run in parallel.
+ */
+final class BookingStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int ITERATOR_BATCH = 256;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final VersionClock clock;
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] userIds = new int[INITIAL_CAPACITY];
+    private int[] objectiveIds = new int[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];
+    private long[] added = new long[INITIAL_CAPACITY];
+    private long[] removed = new long[INITIAL_CAPACITY]; // 0 = live
+    private int slots; // used slots, removed ones included
+    private int live;
+    private boolean compactionDeferred; // the last compaction had to keep slots a snapshot could see
+
+    // (userId, objectiveId) -> number of live bookings (the CSV may already contain duplicates)
+    private final LongCountMap pairs = new LongCountMap();
+    // objectiveId -> number of live bookings
+    private final LongCountMap perObjective = new LongCountMap();
+
+    // epoch day -> ids of the live bookings on that day
+    private final TreeMap<Integer, DayBucket> byDay = new TreeMap<>();
+
+    private final View view = new View(Long.MAX_VALUE);
+
+    BookingStore(VersionClock clock) {
+        this.clock = clock;
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            ids = new int[INITIAL_CAPACITY];
+            userIds = new int[INITIAL_CAPACITY];
+            objectiveIds = new int[INITIAL_CAPACITY];
+            days = new int[INITIAL_CAPACITY];
+            added = new long[INITIAL_CAPACITY];
+            removed = new long[INITIAL_CAPACITY];
+            slots = 0;
+            live = 0;
+            compactionDeferred = false;
+            pairs.clear();
+            perObjective.clear();
+            byDay.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Live bookings in id order; weakly consistent like the concurrent collections it replaces. */
+    Collection<Booking> view() {
+        return view;
+    }
+
+    /** Bookings as of version (added at or before it, not removed by then), in id order. */
+    Collection<Booking> viewAt(long version) {
+        return new View(version);
+    }
+
+    // -------------------------
+    // READ
+    // -------------------------
+
+    Booking find(int id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot >= 0 && removed[slot] == 0 ? bookingAt(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean existsForUserAndObjective(int userId, int objectiveId) {
+        lock.readLock().lock();
+        try {
+            return pairs.contains(pairKey(userId, objectiveId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int countForObjective(int objectiveId) {
+        lock.readLock().lock();
+        try {
+            return perObjective.get(objectiveId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Bookings dated from..to (epoch days, inclusive), by date then id; only the buckets in range are read. */
+    List<Booking> between(int fromDay, int toDay) {
+        List<Booking> result = new ArrayList<>();
+        if (fromDay > toDay) return result;
+
+        lock.readLock().lock();
+        try {
+            for (DayBucket bucket : byDay.subMap(fromDay, true, toDay, true).values()) {
+                int[] dayIds = Arrays.copyOf(bucket.ids, bucket.size);
+                Arrays.sort(dayIds);
+                for (int id : dayIds) result.add(bookingAt(slotOf(id)));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Up to max ids of bookings dated strictly before the given epoch day, oldest days first. */
+    int[] idsBefore(int day, int max) {
+        lock.readLock().lock();
+        try {
+            int[] found = new int[max];
+            int n = 0;
+            for (DayBucket bucket : byDay.headMap(day, false).values()) {
+                int take = Math.min(bucket.size, max - n);
+                System.arraycopy(bucket.ids, 0, found, n, take);
+                n += take;
+                if (n == max) break;
+            }
+            return Arrays.copyOf(found, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // -------------------------
+    // WRITE
+    // -------------------------
+
+    /** False if a live booking with the same id exists. version: of the change adding it. */
+    boolean add(Booking b, long version) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(b.id());
+            if (slot >= 0 && removed[slot] == 0) return false;
+
+            if (slot >= 0 && removed[slot] <= clock.horizon()) {
+                // same id cancelled earlier (e.g. a rolled back cancellation), no snapshot sees it: reuse its slot
+                write(slot, b, version);
+            } else if ((slot >= 0 ? slot + 1 : -(slot + 1)) == slots) {
+                // ids are handed out in increasing order: the common case is an append
+                if (slots == ids.length) grow();
+                write(slots++, b, version);
+            } else {
+                rebuild(b, version, ids.length);
+            }
+
+            live++;
+            pairs.increment(pairKey(b.userId(), b.objectiveId()));
+            perObjective.increment(b.objectiveId());
+            byDay.computeIfAbsent(epochDay(b), k -> new DayBucket()).add(b.id());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges bookings sorted by id in one pass (one array copy instead of one per out-of-order add).
+     * Ids already live are skipped. Returns the bookings actually added.
+     */
+    List<Booking> addAll(List<Booking> sortedById, long version) {
+        lock.writeLock().lock();
+        try {
+            long horizon = clock.horizon();
+            Columns c = new Columns(Math.max(INITIAL_CAPACITY, kept(horizon) + sortedById.size()));
+            List<Booking> fresh = new ArrayList<>();
+
+            long lastLive = Long.MIN_VALUE; // id of the last live slot copied
+            int i = 0;
+            for (Booking b : sortedById) {
+                // copy the slots with smaller ids first
+                for (; i < slots && ids[i] <= b.id(); i++) {
+                    if (c.copy(i, horizon) && removed[i] == 0) lastLive = ids[i];
+                }
+                if (lastLive == b.id()) continue; // already there (or repeated in the list)
+
+                c.append(b, version);
+                lastLive = b.id();
+                fresh.add(b);
+            }
+            for (; i < slots; i++) c.copy(i, horizon);
+            c.install();
+
+            for (Booking b : fresh) {
+                live++;
+                pairs.increment(pairKey(b.userId(), b.objectiveId()));
+                perObjective.increment(b.objectiveId());
+                byDay.computeIfAbsent(epochDay(b), k -> new DayBucket()).add(b.id());
+            }
+            return fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Returns the removed booking, or null if there was no live booking with this id. */
+    Booking remove(int id, long version) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id);
+            if (slot < 0 || removed[slot] != 0) return null;
+
+            Booking b = bookingAt(slot);
+            removed[slot] = version;
+            live--;
+            pairs.decrement(pairKey(b.userId(), b.objectiveId()));
+            perObjective.decrement(b.objectiveId());
+            DayBucket bucket = byDay.get(days[slot]);
+            if (bucket != null && bucket.remove(id) && bucket.size == 0) byDay.remove(days[slot]);
+
+            if (!compactionDeferred && slots > INITIAL_CAPACITY && live < slots / 2) compact();
+            return b;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** The horizon moved (see VersionClock): retries a compaction that had to keep removed slots. */
+    void reclaim(long horizon) {
+        lock.writeLock().lock();
+        try {
+            if (compactionDeferred) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    // binary search over the used slots, the last slot of the id (the current one) if it has several;
+    // -(insertion point + 1) if absent
+    private int slotOf(int id) {
+        int slot = Arrays.binarySearch(ids, 0, slots, id);
+        if (slot >= 0) {
+            while (slot + 1 < slots && ids[slot + 1] == id) slot++;
+        }
+        return slot;
+    }
+
+    // slots a rebuild keeps: live, or removed after the horizon
+    private int kept(long horizon) {
+        int n = 0;
+        for (int i = 0; i < slots; i++) {
+            if (removed[i] == 0 || removed[i] > horizon) n++;
+        }
+        return n;
+    }
+
+    private boolean visibleAt(int slot, long version) {
+        return added[slot] <= version && (removed[slot] == 0 || removed[slot] > version);
+    }
+
+    private Booking bookingAt(int slot) {
+        return new Booking(ids[slot], userIds[slot], objectiveIds[slot], LocalDate.ofEpochDay(days[slot]));
+    }
+
+    private void write(int slot, Booking b, long version) {
+        ids[slot] = b.id();
+        userIds[slot] = b.userId();
+        objectiveIds[slot] = b.objectiveId();
+        days[slot] = epochDay(b);
+        added[slot] = version;
+        removed[slot] = 0;
+    }
+
+    private static int epochDay(Booking b) {
+        return Math.toIntExact(b.date().toEpochDay());
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1);
+        ids = Arrays.copyOf(ids, capacity);
+        userIds = Arrays.copyOf(userIds, capacity);
+        objectiveIds = Arrays.copyOf(objectiveIds, capacity);
+        days = Arrays.copyOf(days, capacity);
+        added = Arrays.copyOf(added, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+    }
+
+    private void compact() {
+        rebuild(null, 0, Math.max(INITIAL_CAPACITY, live * 2));
+        compactionDeferred = slots > INITIAL_CAPACITY && live < slots / 2;
+    }
+
+    // Copies the slots into new arrays, dropping those removed before the horizon and inserting extra (if any)
+    // in id order, after the slots of the same id.
+    private void rebuild(Booking extra, long version, int capacity) {
+        long horizon = clock.horizon();
+        Columns c = new Columns(Math.max(capacity, kept(horizon) + 1));
+        boolean pending = extra != null;
+        for (int i = 0; i < slots; i++) {
+            if (pending && extra.id() < ids[i]) {
+                c.append(extra, version);
+                pending = false;
+            }
+            c.copy(i, horizon);
+        }
+        if (pending) c.append(extra, version);
+        c.install();
+    }
+
+    private static long pairKey(int userId, int objectiveId) {
+        return ((long) userId << 32) | (objectiveId & 0xFFFFFFFFL);
+    }
+
+    // New arrays being filled in id order by rebuild / addAll, then installed in place of the current ones.
+    private final class Columns {
+        final int[] ids;
+        final int[] userIds;
+        final int[] objectiveIds;
+        final int[] days;
+        final long[] added;
+        final long[] removed;
+        int n;
+
+        Columns(int capacity) {
+            ids = new int[capacity];
+            userIds = new int[capacity];
+            objectiveIds = new int[capacity];
+            days = new int[capacity];
+            added = new long[capacity];
+            removed = new long[capacity];
+        }
+
+        // copies slot i unless it was removed before the horizon (no snapshot can see it); false if dropped
+        boolean copy(int i, long horizon) {
+            long r = BookingStore.this.removed[i];
+            if (r != 0 && r <= horizon) return false;
+            ids[n] = BookingStore.this.ids[i];
+            userIds[n] = BookingStore.this.userIds[i];
+            objectiveIds[n] = BookingStore.this.objectiveIds[i];
+            days[n] = BookingStore.this.days[i];
+            added[n] = BookingStore.this.added[i];
+            removed[n] = r;
+            n++;
+            return true;
+        }
+
+        void append(Booking b, long version) {
+            ids[n] = b.id();
+            userIds[n] = b.userId();
+            objectiveIds[n] = b.objectiveId();
+            days[n] = epochDay(b);
+            added[n] = version;
+            n++;
+        }
+
+        void install() {
+            BookingStore.this.ids = ids;
+            BookingStore.this.userIds = userIds;
+            BookingStore.this.objectiveIds = objectiveIds;
+            BookingStore.this.days = days;
+            BookingStore.this.added = added;
+            BookingStore.this.removed = removed;
+            slots = n;
+        }
+    }
+
+    // Ids of one day in insertion order; a day holds few bookings, so removal is a linear scan.
+    private static final class DayBucket {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        boolean remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Iterates by id rather than by slot: after each batch it looks up the next id again,
+    // so compactions and inserts between batches are harmless (compactions keep what a pinned version sees).
+    // version: Long.MAX_VALUE for the current bookings.
+    private final class View extends AbstractCollection<Booking> {
+
+        private final long version;
+
+        View(long version) {
+            this.version = version;
+        }
+
+        @Override
+        public int size() {
+            if (version == Long.MAX_VALUE) return BookingStore.this.size();
+            lock.readLock().lock();
+            try {
+                int n = 0;
+                for (int slot = 0; slot < slots; slot++) {
+                    if (visibleAt(slot, version)) n++;
+                }
+                return n;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public Iterator<Booking> iterator() {
+            return new Iterator<>() {
+                private final Booking[] batch = new Booking[ITERATOR_BATCH];
+                private int count;
+                private int next;
+                private long lastId = Long.MIN_VALUE;
+                private boolean exhausted;
+
+                @Override
+                public boolean hasNext() {
+                    if (next < count) return true;
+                    if (exhausted) return false;
+                    fill();
+                    return next < count;
+                }
+
+                @Override
+                public Booking next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return batch[next++];
+                }
+
+                private void fill() {
+                    count = 0;
+                    next = 0;
+                    lock.readLock().lock();
+                    try {
+                        int slot = 0;
+                        if (lastId != Long.MIN_VALUE) {
+                            int found = slotOf((int) lastId);
+                            slot = found >= 0 ? found + 1 : -(found + 1);
+                        }
+                        for (; slot < slots && count < ITERATOR_BATCH; slot++) {
+                            if (visibleAt(slot, version)) batch[count++] = bookingAt(slot);
+                        }
+                        if (slot >= slots) exhausted = true;
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    if (count > 0) lastId = batch[count - 1].id();
+                }
+            };
+        }
+    }
+}
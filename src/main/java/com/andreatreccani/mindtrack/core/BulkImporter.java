@@ -0,0 +1,210 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Imports users or objectives from an external file in the users.csv / objectives.csv format.
+ *
+ * The file is streamed; valid rows are added in chunks of CHUNK (one email check + one id block per chunk),
+ * and the CSV file is rewritten once at the end. The id column of the file is ignored: new ids are assigned.
+ * Rejected rows go to <file>.rejects.csv (line;reason;row). If the final save fails, the imported rows are
+ * removed again and the error rethrown, like a single registerUser.
+ */
+public class BulkImporter {
+
+    public enum Kind { USERS, OBJECTIVES }
+
+    /** rejectsFile is null when every row was imported. */
+    public record Result(int imported, int rejected, Path rejectsFile) {}
+
+    static final int CHUNK = 4096;
+    private static final String REJECTS_HEADER = "line;reason;row";
+
+    private final AppContext ctx;
+    private final Repository repo;
+
+    BulkImporter(AppContext ctx, Repository repo) {
+        this.ctx = ctx;
+        this.repo = repo;
+    }
+
+    Result run(Kind kind, Path file) throws Exception {
+        long start = System.nanoTime();
+        Path rejectsFile = file.resolveSibling(file.getFileName() + ".rejects.csv");
+        Files.deleteIfExists(rejectsFile);
+
+        try (Rejects rejects = new Rejects(rejectsFile)) {
+            Result result = kind == Kind.USERS ? importUsers(file, rejects) : importObjectives(file, rejects);
+            ctx.metrics().add("import.rows_imported", result.imported());
+            ctx.metrics().add("import.rows_rejected", result.rejected());
+            return result;
+        } finally {
+            ctx.metrics().recordSince("import." + kind.name().toLowerCase(Locale.ROOT), start);
+        }
+    }
+
+    // -------------------------
+    // USERS
+    // -------------------------
+
+    private Result importUsers(Path file, Rejects rejects) throws Exception {
+        List<User> created = new ArrayList<>();
+        List<User> drafts = new ArrayList<>(CHUNK);
+        List<String> rows = new ArrayList<>(CHUNK);
+        int[] lines = new int[CHUNK];
+
+        ctx.storage().streamRows(file, 4, new CsvStorage.RowHandler() {
+            @Override
+            public void row(int line, String raw, String[] cols) throws IOException {
+                String first = cols[1].trim();
+                String last = cols[2].trim();
+                String email = cols[3].trim();
+                if (first.isEmpty() || last.isEmpty()) {
+                    rejects.add(line, "Missing name", raw);
+                    return;
+                }
+                if (!email.contains("@") || !email.contains(".")) {
+                    rejects.add(line, "Invalid email", raw);
+                    return;
+                }
+
+                lines[drafts.size()] = line;
+                drafts.add(new User(0, first, last, email));
+                rows.add(raw);
+                if (drafts.size() == CHUNK) addUsers(drafts, rows, lines, created, rejects);
+            }
+
+            @Override
+            public void malformed(int line, String raw, String reason) throws IOException {
+                rejects.add(line, reason, raw);
+            }
+        });
+        addUsers(drafts, rows, lines, created, rejects);
+
+        try {
+            ctx.saveImported(created, List.of());
+        } catch (Exception e) {
+            for (User u : created) repo.removeUser(u);
+            throw e;
+        }
+        return new Result(created.size(), rejects.count, rejects.file());
+    }
+
+    private void addUsers(List<User> drafts, List<String> rows, int[] lines, List<User> created, Rejects rejects)
+            throws IOException {
+        List<Integer> duplicates = new ArrayList<>();
+        created.addAll(repo.createUsers(drafts, duplicates::add));
+        for (int i : duplicates) rejects.add(lines[i], "Email already exists", rows.get(i));
+        drafts.clear();
+        rows.clear();
+    }
+
+    // -------------------------
+    // OBJECTIVES
+    // -------------------------
+
+    private Result importObjectives(Path file, Rejects rejects) throws Exception {
+        List<Objective> created = new ArrayList<>();
+        List<Objective> drafts = new ArrayList<>(CHUNK);
+
+        ctx.storage().streamRows(file, 5, new CsvStorage.RowHandler() {
+            @Override
+            public void row(int line, String raw, String[] cols) throws IOException {
+                String title = cols[1].trim();
+                String period = cols[2].trim();
+                if (title.isEmpty() || period.isEmpty()) {
+                    rejects.add(line, "Missing title or period", raw);
+                    return;
+                }
+                int coins;
+                try {
+                    coins = Integer.parseInt(cols[3].trim());
+                } catch (NumberFormatException e) {
+                    rejects.add(line, "Invalid coins", raw);
+                    return;
+                }
+                if (coins < 0) {
+                    rejects.add(line, "Negative coins", raw);
+                    return;
+                }
+
+                int capacity;
+                try {
+                    capacity = CsvStorage.parseCapacity(cols.length > 5 ? cols[5] : null);
+                } catch (NumberFormatException e) {
+                    rejects.add(line, "Invalid capacity", raw);
+                    return;
+                }
+                if (capacity < 1) {
+                    rejects.add(line, "Capacity must be at least 1", raw);
+                    return;
+                }
+
+                drafts.add(new Objective(0, title, period, coins, capacity, CsvStorage.parseAvailable(cols[4])));
+                if (drafts.size() == CHUNK) {
+                    created.addAll(repo.createObjectives(drafts));
+                    drafts.clear();
+                }
+            }
+
+            @Override
+            public void malformed(int line, String raw, String reason) throws IOException {
+                rejects.add(line, reason, raw);
+            }
+        });
+        created.addAll(repo.createObjectives(drafts));
+
+        try {
+            ctx.saveImported(List.of(), created);
+        } catch (Exception e) {
+            for (Objective o : created) repo.removeObjective(o);
+            throw e;
+        }
+        return new Result(created.size(), rejects.count, rejects.file());
+    }
+
+    // -------------------------
+    // REJECTS REPORT
+    // -------------------------
+
+    // the report file is only created on the first reject
+    private static final class Rejects implements AutoCloseable {
+        private final Path file;
+        private BufferedWriter out;
+        int count;
+
+        Rejects(Path file) {
+            this.file = file;
+        }
+
+        void add(int line, String reason, String raw) throws IOException {
+            if (out == null) {
+                out = Files.newBufferedWriter(file);
+                out.write(REJECTS_HEADER);
+                out.newLine();
+            }
+            out.write(line + ";" + reason + ";" + raw);
+            out.newLine();
+            count++;
+        }
+
+        Path file() {
+            return count > 0 ? file : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) out.close();
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.io.Journal;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Picks up edits made to the data files by other tools while the application runs.
+ *
+ * A changed file is parsed again and compared with memory by id; only the differing rows are applied, each under
+ * the BookingService stripe of its objective, so bookings keep running meanwhile. Our own writes are recognised
+ * by CsvStorage.isOwnVersion and skipped. Rows touched by journal events are left alone: the journal is newer
+ * than the file (for an objective, only its slots are: a changed definition is applied, keeping them).
+ * Availability is then normalized for the objectives involved only.
+ *
+ * The same diff merges a file another process rewrote before AppContext writes it again (merge), and every file
+ * after journal events were compacted by another process before this one read them (resync).
+ */
+final class DataWatcher {
+
+    // writers usually produce several events per file (truncate, write, rename): wait for them to settle
+    private static final long SETTLE_MS = 50;
+
+    private final AppContext ctx;
+    private final Repository repo;
+    private final CsvStorage storage;
+    private WatchService watch;
+    private Thread thread;
+
+    private final Set<Integer> committedUsers = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> committedObjectives = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> committedBookings = ConcurrentHashMap.newKeySet();
+    // rows written to the files without a journal event (imports): newer than the file too while pinned
+    private final Set<Integer> pinnedUsers = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> pinnedObjectives = ConcurrentHashMap.newKeySet();
+
+    // one diff at a time (they share the committed sets); commits are only tracked while one runs
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private final AtomicInteger reloading = new AtomicInteger();
+
+    DataWatcher(AppContext ctx, Repository repo) {
+        this.ctx = ctx;
+        this.repo = repo;
+        this.storage = ctx.storage();
+    }
+
+    synchronized void start() throws IOException {
+        if (thread != null) return;
+        watch = FileSystems.getDefault().newWatchService();
+
+        Set<Path> dirs = new LinkedHashSet<>();
+        dirs.add(dirOf(storage.usersFile()));
+        dirs.add(dirOf(storage.objectivesFile()));
+        dirs.add(storage.sharded() ? storage.shardDir().toAbsolutePath() : dirOf(storage.bookingsFile()));
+        for (Path dir : dirs) {
+            dir.register(watch, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        }
+
+        thread = new Thread(this::run, "data-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() throws IOException, InterruptedException {
+        if (thread == null) return;
+        watch.close();
+        thread.join();
+        thread = null;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(watch.take(), changed);
+                WatchKey more;
+                while ((more = watch.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null) collect(more, changed);
+
+                for (Path file : changed) reloadQuietly(file);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost: check every file
+                changed.add(storage.usersFile());
+                changed.add(storage.objectivesFile());
+                if (!storage.sharded()) changed.add(storage.bookingsFile());
+                continue;
+            }
+            Path file = dataFile(dir.resolve((Path) event.context()));
+            if (file != null) changed.add(file);
+        }
+        key.reset();
+    }
+
+    // the storage's own path for a watched file (stamps are kept under it), or null if it is not a data file
+    private Path dataFile(Path absolute) {
+        if (absolute.equals(storage.usersFile().toAbsolutePath())) return storage.usersFile();
+        if (absolute.equals(storage.objectivesFile().toAbsolutePath())) return storage.objectivesFile();
+        if (!storage.sharded()) return absolute.equals(storage.bookingsFile().toAbsolutePath()) ? storage.bookingsFile() : null;
+
+        boolean inShardDir = dirOf(absolute).equals(storage.shardDir().toAbsolutePath());
+        return inShardDir && CsvStorage.shardMonth(absolute) != null ? storage.shardDir().resolve(absolute.getFileName()) : null;
+    }
+
+    private void reloadQuietly(Path file) {
+        try {
+            if (storage.isOwnVersion(file)) return;
+            reload(file);
+        } catch (Exception e) {
+            ctx.metrics().increment("reload.failures");
+            System.err.println("[WARN] could not reload " + file + ": " + e.getMessage());
+        }
+    }
+
+    /** Applies the rows of a file rewritten by another process (see class comment). */
+    void merge(Path file) throws Exception {
+        reload(file);
+    }
+
+    /** Merges every data file. */
+    void resync() throws Exception {
+        reload(storage.usersFile());
+        reload(storage.objectivesFile());
+        if (!storage.sharded()) {
+            reload(storage.bookingsFile());
+            return;
+        }
+        for (Path shard : storage.shardFiles()) reload(shard);
+    }
+
+    private void reload(Path file) throws Exception {
+        long start = System.nanoTime();
+        Set<Integer> affected = new HashSet<>();
+        int changes;
+        reloading.incrementAndGet();
+        reloadLock.lock();
+        try {
+            Newer newer = newer();
+            if (file.equals(storage.usersFile())) {
+                changes = reloadUsers(storage.readUsers(), newer);
+            } else if (file.equals(storage.objectivesFile())) {
+                changes = reloadObjectives(storage.readObjectives(), newer, affected);
+            } else if (storage.sharded()) {
+                YearMonth month = CsvStorage.shardMonth(file);
+                List<Booking> inMemory = new ArrayList<>(repo.bookingsBetween(month.atDay(1), month.atEndOfMonth()));
+                inMemory.sort(Comparator.comparingInt(Booking::id));
+                changes = reloadBookings(storage.readBookingShard(month), inMemory, newer, affected);
+            } else {
+                changes = reloadBookings(storage.readBookings(), repo.bookings(), newer, affected);
+            }
+        } finally {
+            reloadLock.unlock();
+            reloading.decrementAndGet();
+        }
+
+        // journaled outside the lock: the commit may compact, which may merge again
+        normalize(affected, !file.equals(storage.objectivesFile()));
+        ctx.metrics().recordSince("reload." + file.getFileName(), start);
+        ctx.metrics().add("reload.rows_changed", changes);
+    }
+
+    // while an import is written without journal events
+    void pin(Collection<User> users, Collection<Objective> objectives) {
+        for (User u : users) pinnedUsers.add(u.id());
+        for (Objective o : objectives) pinnedObjectives.add(o.id());
+    }
+
+    void unpin(Collection<User> users, Collection<Objective> objectives) {
+        for (User u : users) pinnedUsers.remove(u.id());
+        for (Objective o : objectives) pinnedObjectives.remove(o.id());
+    }
+
+    // called by AppContext after each commit (journal append included)
+    void userCommitted(int id) {
+        if (reloading.get() > 0) committedUsers.add(id);
+    }
+
+    void bookingCommitted(int bookingId, int objectiveId) {
+        if (reloading.get() == 0) return;
+        committedBookings.add(bookingId);
+        committedObjectives.add(objectiveId);
+    }
+
+    // -------------------------
+    // DIFF
+    // -------------------------
+
+    private int reloadUsers(List<User> fromFile, Newer newer) {
+        Map<Integer, User> file = new LinkedHashMap<>();
+        for (User u : fromFile) file.putIfAbsent(u.id(), u);
+
+        int changes = 0;
+        for (User u : repo.users()) {
+            if (!file.containsKey(u.id()) && !newer.user(u.id()) && repo.removeUser(u)) changes++;
+        }
+        for (User u : file.values()) {
+            if (newer.user(u.id())) continue;
+            User current = repo.findUserById(u.id());
+            if (u.equals(current)) continue;
+            if (current != null) repo.removeUser(current);
+            repo.addUser(u);
+            changes++;
+        }
+        return changes;
+    }
+
+    private int reloadObjectives(List<Objective> fromFile, Newer newer, Set<Integer> affected) {
+        Map<Integer, Objective> file = new LinkedHashMap<>();
+        for (Objective o : fromFile) file.putIfAbsent(o.id(), o);
+
+        int changes = 0;
+        for (Objective o : repo.objectives()) {
+            if (file.containsKey(o.id())) continue;
+            if (locked(o.id(), () -> !newer.objective(o.id()) && repo.removeObjective(o))) changes++;
+        }
+        for (Objective o : file.values()) {
+            boolean changed = locked(o.id(), () -> {
+                if (newer.definition(o.id())) return false;
+                Objective current = repo.findObjectiveById(o.id());
+                if (current == null) return !newer.objective(o.id()) && repo.addObjective(o);
+                // redefined: keeps the slots its bookings hold, whatever the file's available flag says. The
+                // journal only has newer slots, never a newer definition: applied even if it has events for it
+                if (!sameDefinition(current, o)) return repo.replaceObjective(current, o);
+                if (newer.objective(o.id()) || current.isAvailable() == o.isAvailable()) return false;
+                repo.setAvailable(current, o.isAvailable());
+                return true;
+            });
+            if (changed) {
+                affected.add(o.id());
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    // inMemory in id order
+    private int reloadBookings(List<Booking> fromFile, Iterable<Booking> inMemory, Newer newer, Set<Integer> affected) {
+        List<Booking> file = new ArrayList<>(fromFile);
+        file.sort(Comparator.comparingInt(Booking::id));
+
+        int changes = 0;
+        int i = 0;
+        for (Booking m : inMemory) {
+            // file rows before m: not in memory
+            for (; i < file.size() && file.get(i).id() < m.id(); i++) {
+                if (!isRepeated(file, i)) changes += add(file.get(i), newer, affected);
+            }
+            if (i < file.size() && file.get(i).id() == m.id()) {
+                Booking f = file.get(i++);
+                if (f.equals(m)) continue;
+                changes += remove(m, newer, affected);
+                changes += add(f, newer, affected);
+            } else {
+                changes += remove(m, newer, affected);
+            }
+        }
+        for (; i < file.size(); i++) {
+            if (!isRepeated(file, i)) changes += add(file.get(i), newer, affected);
+        }
+        return changes;
+    }
+
+    // a duplicate id in the file: the first row wins, as at startup (which also sets the others aside)
+    private static boolean isRepeated(List<Booking> sorted, int i) {
+        return i > 0 && sorted.get(i - 1).id() == sorted.get(i).id();
+    }
+
+    // checked under the stripe: a booking committed meanwhile is newer than the file
+    private int add(Booking b, Newer newer, Set<Integer> affected) {
+        if (!locked(b.objectiveId(), () -> !newer.booking(b.id()) && repo.addBooking(b))) return 0;
+        affected.add(b.objectiveId());
+        return 1;
+    }
+
+    private int remove(Booking b, Newer newer, Set<Integer> affected) {
+        if (!locked(b.objectiveId(), () -> !newer.booking(b.id()) && repo.removeBooking(b))) return 0;
+        affected.add(b.objectiveId());
+        return 1;
+    }
+
+    private static boolean sameDefinition(Objective a, Objective b) {
+        return a.title().equals(b.title()) && a.period().equals(b.period()) && a.coins() == b.coins()
+                && a.capacity() == b.capacity();
+    }
+
+    // -------------------------
+    // AVAILABILITY
+    // -------------------------
+
+    // Same rule as at startup (at least as many slots taken as bookings). After a bookings change, slots left
+    // without a booking are freed too, as a cancellation would. Only availability changes are committed.
+    private void normalize(Set<Integer> objectiveIds, boolean freeUnbooked) throws Exception {
+        List<Objective> changed = new ArrayList<>();
+        for (int id : objectiveIds) {
+            locked(id, () -> {
+                Objective o = repo.findObjectiveById(id);
+                if (o == null) return false;
+                int taken = o.taken();
+                int slots = Math.min(repo.bookingCountForObjective(id), o.capacity());
+                if (slots > taken || (slots < taken && freeUnbooked)) {
+                    boolean wasAvailable = o.isAvailable();
+                    repo.compareAndSetTaken(o, taken, slots);
+                    if (o.isAvailable() != wasAvailable) changed.add(o);
+                }
+                return true;
+            });
+        }
+        if (!changed.isEmpty()) ctx.commitAvailability(changed);
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private boolean locked(int objectiveId, BooleanSupplier action) {
+        return ctx.bookingService().withObjectiveLock(objectiveId, action);
+    }
+
+    /**
+     * Ids for which memory is newer than the files: events still in the journal, plus commits made since this
+     * reload started (cleared first, then the journal is read, so nothing committed in between is missed),
+     * plus pinned rows.
+     */
+    private final class Newer {
+        final Set<Integer> users = new HashSet<>();
+        final Set<Integer> objectives = new HashSet<>();
+        final Set<Integer> bookings = new HashSet<>();
+
+        boolean user(int id) { return users.contains(id) || committedUsers.contains(id) || pinnedUsers.contains(id); }
+        boolean objective(int id) {
+            return objectives.contains(id) || committedObjectives.contains(id) || pinnedObjectives.contains(id);
+        }
+        // title, period, coins, capacity: only an import writes them without the file
+        boolean definition(int id) { return pinnedObjectives.contains(id); }
+        boolean booking(int id) { return bookings.contains(id) || committedBookings.contains(id); }
+    }
+
+    private Newer newer() throws IOException {
+        committedUsers.clear();
+        committedObjectives.clear();
+        committedBookings.clear();
+
+        Newer n = new Newer();
+        ctx.replayJournal(new Journal.Listener() {
+            @Override
+            public void bookingCreated(Booking b) {
+                n.bookings.add(b.id());
+            }
+
+            @Override
+            public void bookingCancelled(int bookingId) {
+                n.bookings.add(bookingId);
+            }
+
+            @Override
+            public void userAdded(User u) {
+                n.users.add(u.id());
+            }
+
+            @Override
+            public void userRemoved(int userId) {
+                n.users.add(userId);
+            }
+
+            @Override
+            public void availabilityChanged(int objectiveId, boolean available, int taken) {
+                n.objectives.add(objectiveId);
+            }
+        });
+        return n;
+    }
+
+    private static Path dirOf(Path file) {
+        return file.toAbsolutePath().getParent();
+    }
+}
@@ -0,0 +1,88 @@
+package com.andreatreccani.mindtrack.core;
+
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels bookings whose date has passed, so their objectives become available again. Like any cancellation
+ * this deletes the booking: it is no longer in the bookings file (or in dashboards) afterwards.
+ *
+ * Each round reads only the date index buckets before today and cancels them through BookingService
+ * (same locking, journal events and rollback as a cancellation from the menu), BATCH_SIZE at a time
+ * inside a group commit. Runs in the background: a failed round is counted and reported on stderr, not on the
+ * console the menu is using.
+ */
+final class ExpirySweeper {
+
+    static final int BATCH_SIZE = 500;
+
+    private final AppContext ctx;
+    private final Repository repo;
+    private ScheduledExecutorService scheduler;
+
+    ExpirySweeper(AppContext ctx, Repository repo) {
+        this.ctx = ctx;
+        this.repo = repo;
+    }
+
+    /** First round right away, then every intervalSeconds. */
+    synchronized void start(long intervalSeconds) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "expiry-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runQuietly, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /** Waits for a running round to finish, so the data files are not closed under it. */
+    synchronized void stop() throws InterruptedException {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        scheduler = null;
+    }
+
+    private void runQuietly() {
+        try {
+            sweep(LocalDate.now());
+        } catch (Exception e) {
+            ctx.metrics().increment("sweeper.failures");
+            System.err.println("[WARN] expiry sweep failed: " + e.getMessage());
+        }
+    }
+
+    /** Cancels every booking dated before today; returns how many were cancelled. */
+    int sweep(LocalDate today) throws Exception {
+        long start = System.nanoTime();
+        int expired = 0;
+
+        while (true) {
+            int[] ids = repo.bookingIdsBefore(today, BATCH_SIZE);
+            if (ids.length == 0) break;
+
+            int cancelled = 0;
+            ctx.beginGroupCommit();
+            try {
+                for (int id : ids) {
+                    BookingService.Result r = ctx.bookingService().cancel(id);
+                    if (r.ok()) cancelled++;
+                    else if (r.outcome() == BookingService.Outcome.SAVE_FAILED) ctx.metrics().increment("sweeper.failures");
+                }
+            } finally {
+                ctx.endGroupCommit();
+            }
+
+            expired += cancelled;
+            // nothing could be cancelled (saves failing): retry on the next round instead of spinning
+            if (cancelled == 0) break;
+        }
+
+        ctx.metrics().add("sweeper.expired", expired);
+        ctx.metrics().recordSince("sweeper.run", start);
+        return expired;
+    }
+}
@@ -0,0 +1,58 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.LockFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * New ids when several processes share the data folder: counters kept in a LockFile hand out blocks of BLOCK
+ * ids, so two processes never assign the same id and the lock is taken once per block, not per id.
+ * On close the unused rest of a block is handed back, unless another process took ids after it: those ids
+ * (and the rest of the block of a process that crashed) are never used.
+ */
+final class IdBlocks {
+
+    enum Kind { USER, OBJECTIVE, BOOKING } // ordinal = counter slot
+
+    static final int BLOCK = 64;
+
+    private final LockFile file;
+    private final int[] next = new int[Kind.values().length];
+    private final int[] end = new int[Kind.values().length];
+
+    IdBlocks(Path file) throws IOException {
+        this.file = LockFile.of(file);
+    }
+
+    /** First of count consecutive new ids, all above floor (the highest id known here). */
+    synchronized int take(Kind kind, int count, int floor) {
+        int k = kind.ordinal();
+        if (count == 1 && next[k] < end[k]) return next[k]++;
+
+        try (LockFile.Held held = file.lock()) {
+            int first = Math.toIntExact(Math.max(held.get(k), floor + 1L));
+            int reserved = count == 1 ? BLOCK : count;
+            held.set(k, (long) first + reserved);
+            if (count == 1) {
+                next[k] = first + 1;
+                end[k] = first + reserved;
+            }
+            return first;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Hands back the unused rest of each block where the counter still ends it; later takes reserve anew. */
+    synchronized void close() throws IOException {
+        try (LockFile.Held held = file.lock()) {
+            for (Kind kind : Kind.values()) {
+                int k = kind.ordinal();
+                if (next[k] < end[k] && held.get(k) == end[k]) held.set(k, next[k]);
+                end[k] = next[k];
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Consistency checks between users, objectives and bookings (see IntegrityReport), in one pass over the bookings.
+ *
+ * User and objective ids go into BitSets first. The bookings (in id order) are then split over the common pool:
+ * each part counts the bookings of each objective and the (user, objective) pairs it has seen in LongCountMaps;
+ * parts are merged in order, so the lowest id of a repeated pair is the one kept.
+ */
+final class IntegrityChecker {
+
+    private final AppContext ctx;
+    private final Repository repo;
+
+    IntegrityChecker(AppContext ctx, Repository repo) {
+        this.ctx = ctx;
+        this.repo = repo;
+    }
+
+    /**
+     * bookings must be in id order. allBookings: false while older bookings are still loading (lazy shards),
+     * then an objective with more slots taken than bookings here is not reported.
+     */
+    IntegrityReport check(Collection<Booking> bookings, boolean allBookings) {
+        long start = System.nanoTime();
+
+        BitSet users = new BitSet();
+        int userCount = 0;
+        for (User u : repo.users()) {
+            if (u.id() >= 0) users.set(u.id());
+            userCount++;
+        }
+        BitSet objectives = new BitSet();
+        List<Objective> allObjectives = new ArrayList<>(repo.objectives());
+        for (Objective o : allObjectives) {
+            if (o.id() >= 0) objectives.set(o.id());
+        }
+
+        List<Booking> list = bookings instanceof List<Booking> l ? l : new ArrayList<>(bookings);
+        Part pass = list.parallelStream().collect(() -> new Part(users, objectives), Part::add, Part::merge);
+
+        List<IntegrityReport.SlotCount> undercounted = new ArrayList<>();
+        List<IntegrityReport.SlotCount> overcounted = new ArrayList<>();
+        List<IntegrityReport.SlotCount> overCapacity = new ArrayList<>();
+        for (Objective o : allObjectives) {
+            int taken = o.taken();
+            int booked = pass.booked.get(o.id());
+            int slots = Math.min(booked, o.capacity());
+            if (taken < slots) undercounted.add(new IntegrityReport.SlotCount(o, taken, booked));
+            else if (taken > slots && allBookings) overcounted.add(new IntegrityReport.SlotCount(o, taken, booked));
+            if (booked > o.capacity()) overCapacity.add(new IntegrityReport.SlotCount(o, taken, booked));
+        }
+        pass.duplicates.sort(Comparator.comparingInt(Booking::id));
+
+        IntegrityReport report = new IntegrityReport(userCount, allObjectives.size(), list.size(),
+                pass.missingUser, pass.missingObjective, pass.duplicates, undercounted, overcounted, overCapacity, 0);
+        ctx.metrics().recordSince("integrity.check", start);
+        ctx.metrics().add("integrity.issues", report.issues());
+        return report;
+    }
+
+    /**
+     * Slot counts only, in memory and not journaled (startup, before the objectives file is rewritten).
+     * Returns the objectives whose availability changed.
+     */
+    List<Objective> fixSlots(IntegrityReport report) {
+        List<Objective> changed = new ArrayList<>();
+        List<IntegrityReport.SlotCount> wrong = new ArrayList<>(report.undercounted());
+        wrong.addAll(report.overcounted());
+        for (IntegrityReport.SlotCount c : wrong) {
+            Objective o = c.objective();
+            boolean wasAvailable = o.isAvailable();
+            if (repo.compareAndSetTaken(o, c.taken(), c.booked()) && o.isAvailable() != wasAvailable) changed.add(o);
+        }
+        return changed;
+    }
+
+    /**
+     * Removes the invalid bookings, then the bookings beyond an objective's capacity (the highest ids: the
+     * bookings made first keep their slots), and recounts slots, each under the objective's BookingService stripe
+     * (the state is checked again there: the report may be older than concurrent bookings), then journals
+     * every change in one batch.
+     */
+    IntegrityReport repair(IntegrityReport report) throws Exception {
+        long start = System.nanoTime();
+
+        List<Booking> removed = new ArrayList<>();
+        Set<Integer> affected = new LinkedHashSet<>();
+        for (Booking b : report.invalidBookings()) {
+            ctx.bookingService().withObjectiveLock(b.objectiveId(), () -> {
+                if (!repo.removeBooking(b)) return false;
+                removed.add(b);
+                affected.add(b.objectiveId());
+                return true;
+            });
+        }
+        Map<Integer, List<Booking>> overCapacity = new HashMap<>();
+        for (IntegrityReport.SlotCount c : report.overCapacity()) overCapacity.put(c.objective().id(), new ArrayList<>());
+        if (!overCapacity.isEmpty()) {
+            for (Booking b : repo.bookings()) {
+                List<Booking> ofObjective = overCapacity.get(b.objectiveId());
+                if (ofObjective != null) ofObjective.add(b);
+            }
+        }
+        overCapacity.forEach((id, ofObjective) -> ctx.bookingService().withObjectiveLock(id, () -> {
+            Objective o = repo.findObjectiveById(id);
+            if (o == null) return false;
+            int extra = repo.bookingCountForObjective(id) - o.capacity();
+            for (int i = ofObjective.size() - 1; i >= 0 && extra > 0; i--) {
+                Booking b = ofObjective.get(i);
+                if (!repo.removeBooking(b)) continue;
+                removed.add(b);
+                extra--;
+            }
+            affected.add(id);
+            return true;
+        }));
+        for (IntegrityReport.SlotCount c : report.undercounted()) affected.add(c.objective().id());
+        for (IntegrityReport.SlotCount c : report.overcounted()) affected.add(c.objective().id());
+
+        List<Objective> changed = new ArrayList<>();
+        for (int id : affected) {
+            ctx.bookingService().withObjectiveLock(id, () -> {
+                Objective o = repo.findObjectiveById(id);
+                if (o == null) return false;
+                int taken = o.taken();
+                int booked = repo.bookingCountForObjective(id);
+                if (taken == Math.min(booked, o.capacity())) return false;
+                repo.compareAndSetTaken(o, taken, booked);
+                changed.add(o);
+                return true;
+            });
+        }
+
+        if (!removed.isEmpty() || !changed.isEmpty()) ctx.commitRepairs(removed, changed);
+        int repaired = removed.size() + changed.size();
+        ctx.metrics().add("integrity.repairs", repaired);
+        ctx.metrics().recordSince("integrity.repair", start);
+        return report.withRepaired(repaired);
+    }
+
+    private static boolean has(BitSet ids, int id) {
+        return id >= 0 && ids.get(id);
+    }
+
+    // what one slice of the bookings found; merge appends a later slice
+    private static final class Part {
+        final BitSet users;
+        final BitSet objectives;
+        final LongCountMap booked = new LongCountMap(); // objective id -> bookings
+        final LongCountMap pairs = new LongCountMap();
+        final List<Booking> firstOfPair = new ArrayList<>(); // first booking of each pair in this part
+        final List<Booking> missingUser = new ArrayList<>();
+        final List<Booking> missingObjective = new ArrayList<>();
+        final List<Booking> duplicates = new ArrayList<>();
+
+        Part(BitSet users, BitSet objectives) {
+            this.users = users;
+            this.objectives = objectives;
+        }
+
+        void add(Booking b) {
+            if (!has(objectives, b.objectiveId())) {
+                if (!has(users, b.userId())) missingUser.add(b);
+                missingObjective.add(b);
+                return;
+            }
+            // an invalid booking holds a slot too, until a repair removes it
+            booked.increment(b.objectiveId());
+            if (!has(users, b.userId())) {
+                missingUser.add(b);
+            } else if (pairs.contains(pair(b))) {
+                duplicates.add(b);
+            } else {
+                pairs.increment(pair(b));
+                firstOfPair.add(b);
+            }
+        }
+
+        void merge(Part later) {
+            missingUser.addAll(later.missingUser);
+            missingObjective.addAll(later.missingObjective);
+            duplicates.addAll(later.duplicates);
+            for (Booking b : later.firstOfPair) {
+                if (pairs.contains(pair(b))) {
+                    duplicates.add(b);
+                } else {
+                    pairs.increment(pair(b));
+                    firstOfPair.add(b);
+                }
+            }
+            booked.addAll(later.booked);
+        }
+
+        private static long pair(Booking b) {
+            return ((long) b.userId() << 32) | (b.objectiveId() & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of an IntegrityChecker pass. Bookings whose user or objective is missing (a booking missing both is in
+ * both lists) and repeated bookings of the same user and objective (all but the lowest id) are invalid; each
+ * objective is expected to have as many slots taken as it has bookings, up to its capacity (invalid ones included
+ * while they are there: a cancellation gives their slot back), and no more bookings than its capacity.
+ * repaired: the number of changes applied afterwards (0 when only checked).
+ */
+public record IntegrityReport(int users, int objectives, int bookings,
+                              List<Booking> missingUser, List<Booking> missingObjective, List<Booking> duplicates,
+                              List<SlotCount> undercounted, List<SlotCount> overcounted,
+                              List<SlotCount> overCapacity, int repaired) {
+
+    /** An objective whose slots taken (when checked) differ from its bookings, or with more bookings than slots. */
+    public record SlotCount(Objective objective, int taken, int booked) {}
+
+    public int issues() {
+        return missingUser.size() + missingObjective.size() + duplicates.size()
+                + undercounted.size() + overcounted.size() + overCapacity.size();
+    }
+
+    public boolean ok() { return issues() == 0; }
+
+    /** Bookings a repair removes, each once; then bookings beyond capacity too (see IntegrityChecker.repair). */
+    public List<Booking> invalidBookings() {
+        Set<Booking> all = new LinkedHashSet<>(missingUser);
+        all.addAll(missingObjective);
+        all.addAll(duplicates);
+        return new ArrayList<>(all);
+    }
+
+    IntegrityReport withRepaired(int repaired) {
+        return new IntegrityReport(users, objectives, bookings, missingUser, missingObjective, duplicates,
+                undercounted, overcounted, overCapacity, repaired);
+    }
+
+    /** One line per check, then one per issue. */
+    public List<String> lines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Checked " + users + " users, " + objectives + " objectives, " + bookings + " bookings");
+        lines.add("Bookings with missing user: " + missingUser.size());
+        lines.add("Bookings with missing objective: " + missingObjective.size());
+        lines.add("Duplicate bookings (same user and objective): " + duplicates.size());
+        lines.add("Objectives with fewer slots taken than bookings: " + undercounted.size());
+        lines.add("Objectives with more slots taken than bookings: " + overcounted.size());
+        lines.add("Objectives with more bookings than capacity: " + overCapacity.size());
+        for (Booking b : missingUser) lines.add("  booking " + b.id() + ": user " + b.userId() + " not found");
+        for (Booking b : missingObjective) lines.add("  booking " + b.id() + ": objective " + b.objectiveId() + " not found");
+        for (Booking b : duplicates) {
+            lines.add("  booking " + b.id() + ": user " + b.userId() + " already booked objective " + b.objectiveId());
+        }
+        for (SlotCount c : undercounted) lines.add(slotLine(c));
+        for (SlotCount c : overcounted) lines.add(slotLine(c));
+        for (SlotCount c : overCapacity) {
+            lines.add("  objective " + c.objective().id() + ": " + c.booked() + " booking(s) for a capacity of "
+                    + c.objective().capacity());
+        }
+        if (repaired > 0) lines.add("Repaired: " + repaired + " change(s)");
+        return lines;
+    }
+
+    private static String slotLine(SlotCount c) {
+        return "  objective " + c.objective().id() + ": " + c.taken() + " of " + c.objective().capacity()
+                + " slot(s) taken, " + c.booked() + " booking(s)";
+    }
+}
@@ -0,0 +1,115 @@
+package com.andreatreccani.mindtrack.core;
+
+/**
+ * long -> positive count, open addressing with linear probing on two primitive arrays.
+ * A count of 0 marks an empty slot, so there is no reserved key. Not thread-safe.
+ */
+final class LongCountMap {
+
+    private static final int MIN_CAPACITY = 16; // power of two
+
+    private long[] keys = new long[MIN_CAPACITY];
+    private int[] counts = new int[MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    private int size;
+
+    int size() { return size; }
+
+    int get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (counts[i] == 0) return 0;
+            if (keys[i] == key) return counts[i];
+        }
+    }
+
+    boolean contains(long key) {
+        return get(key) > 0;
+    }
+
+    void increment(long key) {
+        add(key, 1);
+    }
+
+    /** Adds other's counts to these. */
+    void addAll(LongCountMap other) {
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) add(other.keys[i], other.counts[i]);
+        }
+    }
+
+    private void add(long key, int n) {
+        if ((size + 1) * 2 > counts.length) resize(counts.length * 2);
+
+        int i = slot(key);
+        while (counts[i] != 0) {
+            if (keys[i] == key) {
+                counts[i] += n;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        counts[i] = n;
+        size++;
+    }
+
+    /** Returns false if the key was not present. */
+    boolean decrement(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (counts[i] == 0) return false;
+            if (keys[i] == key) {
+                if (--counts[i] == 0) removeAt(i);
+                return true;
+            }
+        }
+    }
+
+    void clear() {
+        keys = new long[MIN_CAPACITY];
+        counts = new int[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+        size = 0;
+    }
+
+    // backward-shift deletion: keeps every probe chain contiguous without tombstones
+    private void removeAt(int hole) {
+        size--;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (counts[i] == 0) break;
+
+            int home = slot(keys[i]);
+            boolean stays = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+            if (stays) continue;
+
+            keys[hole] = keys[i];
+            counts[hole] = counts[i];
+            hole = i;
+        }
+        keys[hole] = 0;
+        counts[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+
+        for (int j = 0; j < oldCounts.length; j++) {
+            if (oldCounts[j] == 0) continue;
+            int i = slot(oldKeys[j]);
+            while (counts[i] != 0) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            counts[i] = oldCounts[j];
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
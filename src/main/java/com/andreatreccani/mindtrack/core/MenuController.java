@@ -1,15 +1,23 @@
 package com.andreatreccani.mindtrack.core;
 
+import com.andreatreccani.mindtrack.io.CsvStorage;
 import com.andreatreccani.mindtrack.model.Booking;
 import com.andreatreccani.mindtrack.model.Objective;
 import com.andreatreccani.mindtrack.model.User;
+import com.andreatreccani.mindtrack.ui.EndOfInputException;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
 
 public class MenuController {
 
+    private static final int PAGE_SIZE = 20;
+
     private final AppContext ctx;
 
     public MenuController(AppContext ctx) {
@@ -17,21 +25,32 @@ public class MenuController {
     }
 
     public void run() {
-        while (true) {
-            printMenu();
-            int choice = ctx.io().readInt("Choose an option: ", 0, 5);
-
-            switch (choice) {
-                case 1 -> showObjectives();
-                case 2 -> createBooking();
-                case 3 -> cancelBooking();
-                case 4 -> addUser();
-                case 5 -> exportAvailable();
-                case 0 -> {
-                    ctx.io().println("Goodbye!");
-                    return;
+        try {
+            while (true) {
+                printMenu();
+                int choice = ctx.io().readInt("Choose an option: ", 0, 10);
+
+                switch (choice) {
+                    case 1 -> showObjectives();
+                    case 2 -> createBooking();
+                    case 3 -> cancelBooking();
+                    case 4 -> addUser();
+                    case 5 -> exportAvailable();
+                    case 6 -> showStatistics();
+                    case 7 -> searchObjectives();
+                    case 8 -> showUserDashboard();
+                    case 9 -> bulkImport();
+                    case 10 -> checkIntegrity();
+                    case 0 -> {
+                        ctx.io().println("Goodbye!");
+                        return;
+                    }
                 }
             }
+        } catch (EndOfInputException e) {
+            // input closed, possibly in the middle of an operation (which is then abandoned): same as 0
+            ctx.io().println("");
+            ctx.io().println("Goodbye!");
         }
     }
 
@@ -42,36 +61,160 @@ public class MenuController {
         ctx.io().println("3) Cancel booking");
         ctx.io().println("4) Add user");
         ctx.io().println("5) Export available objectives");
+        ctx.io().println("6) Show statistics");
+        ctx.io().println("7) Search objectives");
+        ctx.io().println("8) User dashboard");
+        ctx.io().println("9) Import users / objectives from CSV");
+        ctx.io().println("10) Check data integrity");
         ctx.io().println("0) Exit");
     }
 
+    // Pages are "the next PAGE_SIZE ids after the last one shown" (keyset pagination over the id-ordered map),
+    // so a page costs the same on a catalog of any size. Each page is read from one snapshot: bookings made
+    // meanwhile never show an objective twice or half-changed.
     private void showObjectives() {
-        List<Objective> list = ctx.objectives();
-        if (list.isEmpty()) {
-            ctx.io().println("No objectives found.");
+        Deque<Integer> previousPages = new ArrayDeque<>(); // "after" key of each page before the current one
+        int after = Integer.MIN_VALUE;
+        StringBuilder row = new StringBuilder();
+
+        while (true) {
+            long start = System.nanoTime();
+            List<Objective> page = objectivesAfter(after, PAGE_SIZE + 1);
+            if (page.isEmpty() && previousPages.isEmpty()) {
+                ctx.io().println("No objectives found.");
+                ctx.metrics().recordSince("op.show_objectives", start);
+                return;
+            }
+            boolean more = page.size() > PAGE_SIZE;
+            if (more) page = page.subList(0, PAGE_SIZE);
+            for (Objective o : page) {
+                ctx.io().append(formatObjective(row, o));
+            }
+            ctx.io().flush();
+            ctx.metrics().recordSince("op.show_objectives", start);
+
+            if (!more && previousPages.isEmpty()) return;
+
+            int last = page.isEmpty() ? after : page.get(page.size() - 1).id();
+            String prompt = (more ? "[n]ext, [a]ll remaining, " : "") + (previousPages.isEmpty() ? "" : "[p]revious, ") + "[q]uit: ";
+            String choice = ctx.io().readLine(prompt).trim().toLowerCase(Locale.ROOT);
+            if (choice.equals("n") && more) {
+                previousPages.push(after);
+                after = last;
+            } else if (choice.equals("p") && !previousPages.isEmpty()) {
+                after = previousPages.pop();
+            } else if (choice.equals("a") && more) {
+                // still a page at a time, printed as it is read: never a copy of the whole catalog
+                for (page = objectivesAfter(last, PAGE_SIZE); !page.isEmpty(); page = objectivesAfter(last, PAGE_SIZE)) {
+                    start = System.nanoTime();
+                    for (Objective o : page) {
+                        ctx.io().append(formatObjective(row, o));
+                    }
+                    ctx.io().flush();
+                    ctx.metrics().recordSince("op.show_objectives", start);
+                    last = page.get(page.size() - 1).id();
+                }
+                return;
+            } else if (choice.equals("q")) {
+                return;
+            }
+            // anything else: show the same page again
+        }
+    }
+
+    private List<Objective> objectivesAfter(int after, int limit) {
+        try (ModelSnapshot snap = ctx.snapshot()) {
+            return snap.objectivesAfter(after, limit);
+        }
+    }
+
+    private void searchObjectives() {
+        ctx.io().println("Leave a field empty for no filter.");
+        String title = ctx.io().readLine("Title words: ");
+        String period = ctx.io().readLine("Period: ");
+        Integer minCoins = ctx.io().readOptionalInt("Min coins: ");
+        Integer maxCoins = ctx.io().readOptionalInt("Max coins: ");
+        boolean availableOnly = ctx.io().readLine("Only available (y/N): ").trim().equalsIgnoreCase("y");
+        String sortChoice = ctx.io().readLine("Sort by [i]d, coins [a]scending, coins [d]escending: ").trim().toLowerCase(Locale.ROOT);
+        ObjectiveQuery.Sort sort = switch (sortChoice) {
+            case "a" -> ObjectiveQuery.Sort.COINS_ASC;
+            case "d" -> ObjectiveQuery.Sort.COINS_DESC;
+            default -> ObjectiveQuery.Sort.ID;
+        };
+
+        long start = System.nanoTime();
+        List<Objective> found = ctx.findObjectives(
+                new ObjectiveQuery(period, minCoins, maxCoins, availableOnly, title, sort, 0));
+        ctx.metrics().recordSince("op.search_objectives", start);
+
+        if (found.isEmpty()) {
+            ctx.io().println("No objectives match.");
+            return;
+        }
+        StringBuilder row = new StringBuilder();
+        for (Objective o : found) {
+            ctx.io().append(formatObjective(row, o));
+        }
+        ctx.io().flush();
+        ctx.io().println(found.size() + " objective(s) found.");
+    }
+
+    private void showUserDashboard() {
+        int userId = ctx.io().readInt("User ID: ", 1, Integer.MAX_VALUE);
+
+        long start = System.nanoTime();
+        UserDashboard d = ctx.dashboard(userId);
+        ctx.metrics().recordSince("op.user_dashboard", start);
+        if (d == null) {
+            ctx.io().println("User not found.");
             return;
         }
 
-        for (Objective o : list) {
-            ctx.io().println(
-                    o.id() + " | " + o.title() + " | " +
-                            o.period() + " | " + o.coins() + " | " +
-                            (o.isAvailable() ? "YES" : "NO")
-            );
+        ctx.io().println(d.user().firstName() + " " + d.user().lastName() + " <" + d.user().email() + ">");
+        ctx.io().println("Bookings: " + d.bookingCount() + " | Coins committed: " + d.totalCoins());
+        d.bookingsPerPeriod().forEach((period, n) -> ctx.io().append(period + ": " + n));
+
+        StringBuilder row = new StringBuilder();
+        for (int bookingId : d.bookingIds()) {
+            Booking b = ctx.findBookingById(bookingId);
+            if (b == null) continue; // cancelled meanwhile
+            Objective o = ctx.findObjectiveById(b.objectiveId());
+            row.setLength(0);
+            row.append("#").append(b.id()).append(" | ").append(b.date()).append(" | ")
+                    .append(o != null ? o.title() : "objective " + b.objectiveId() + " (missing)");
+            ctx.io().append(row);
         }
+        ctx.io().flush();
+    }
+
+    private static StringBuilder formatObjective(StringBuilder row, Objective o) {
+        row.setLength(0);
+        row.append(o.id()).append(" | ").append(o.title()).append(" | ")
+                .append(o.period()).append(" | ").append(o.coins()).append(" | ")
+                .append(o.isAvailable() ? "YES" : "NO");
+        if (o.capacity() > 1) row.append(" (").append(o.remaining()).append('/').append(o.capacity()).append(" free)");
+        return row;
     }
 
     private void createBooking() {
-        List<Objective> available = ctx.objectives().stream().filter(Objective::isAvailable).toList();
+        List<Objective> available;
+        try (ModelSnapshot snap = ctx.snapshot()) {
+            available = snap.availableObjectives();
+        }
         if (available.isEmpty()) {
             ctx.io().println("No objectives available right now.");
             return;
         }
 
         ctx.io().println("Available objectives:");
+        StringBuilder row = new StringBuilder();
         for (Objective o : available) {
-            ctx.io().println(o.id() + " | " + o.title() + " | " + o.period() + " | " + o.coins());
+            row.setLength(0);
+            row.append(o.id()).append(" | ").append(o.title()).append(" | ").append(o.period()).append(" | ").append(o.coins());
+            if (o.capacity() > 1) row.append(" | ").append(o.remaining()).append('/').append(o.capacity()).append(" free");
+            ctx.io().append(row);
         }
+        ctx.io().flush();
 
         int userId = ctx.io().readInt("User ID: ", 1, Integer.MAX_VALUE);
         User user = ctx.findUserById(userId);
@@ -94,23 +237,18 @@ public class MenuController {
         }
 
         LocalDate date = ctx.io().readDate("Booking date (YYYY-MM-DD): ");
-        if (date.isBefore(LocalDate.now())) {
-            ctx.io().println("Booking date cannot be in the past.");
-            return;
-        }
 
-        int bookingId = ctx.nextBookingId();
-        ctx.bookings().add(new Booking(bookingId, userId, objectiveId, date));
-        objective.setAvailable(false);
-
-        try {
-            ctx.saveBookings();
-            ctx.saveObjectives();
-            ctx.io().println("Booking created with ID: " + bookingId);
-        } catch (Exception e) {
-            ctx.io().println("ERROR: could not save booking (" + e.getMessage() + "). Rolling back.");
-            ctx.bookings().removeIf(b -> b.id() == bookingId);
-            objective.setAvailable(true);
+        // the checks above are for quick feedback; the service re-checks atomically
+        long start = System.nanoTime();
+        BookingService.Result result = ctx.bookingService().book(userId, objectiveId, date);
+        ctx.metrics().recordSince("op.book", start);
+        switch (result.outcome()) {
+            case BOOKED -> ctx.io().println("Booking created with ID: " + result.booking().id());
+            case USER_NOT_FOUND -> ctx.io().println("User not found.");
+            case OBJECTIVE_NOT_AVAILABLE -> ctx.io().println("Objective not available.");
+            case DUPLICATE_BOOKING -> ctx.io().println("A booking for this user and objective already exists.");
+            case DATE_IN_PAST -> ctx.io().println("Booking date cannot be in the past.");
+            default -> ctx.io().println("ERROR: could not save booking (" + result.error() + "). Rolled back.");
         }
     }
 
@@ -121,58 +259,99 @@ public class MenuController {
         }
 
         int bookingId = ctx.io().readInt("Booking ID: ", 1, Integer.MAX_VALUE);
-        Booking booking = ctx.findBookingById(bookingId);
 
-        if (booking == null) {
-            ctx.io().println("Booking not found.");
-            return;
+        long start = System.nanoTime();
+        BookingService.Result result = ctx.bookingService().cancel(bookingId);
+        ctx.metrics().recordSince("op.cancel", start);
+        switch (result.outcome()) {
+            case CANCELLED -> ctx.io().println("Booking cancelled.");
+            case BOOKING_NOT_FOUND -> ctx.io().println("Booking not found.");
+            default -> ctx.io().println("ERROR: could not save cancellation (" + result.error() + "). Rolled back.");
         }
+    }
 
-        Objective obj = ctx.findObjectiveById(booking.objectiveId());
-
-        ctx.bookings().remove(booking);
-        if (obj != null) obj.setAvailable(true);
+    private void addUser() {
+        String firstName = ctx.io().readNonEmptyString("First name: ");
+        String lastName = ctx.io().readNonEmptyString("Last name: ");
+        String email = ctx.io().readEmail("Email: ");
 
+        long start = System.nanoTime();
         try {
-            ctx.saveBookings();
-            ctx.saveObjectives();
-            ctx.io().println("Booking cancelled.");
+            User user = ctx.registerUser(firstName, lastName, email);
+            if (user == null) {
+                ctx.io().println("A user with this email already exists.");
+                return;
+            }
+            ctx.io().println("User created with ID: " + user.id());
         } catch (Exception e) {
-            ctx.io().println("ERROR: could not save cancellation (" + e.getMessage() + "). Rolling back.");
-            ctx.bookings().add(booking);
-            if (obj != null) obj.setAvailable(false);
+            ctx.io().println("ERROR: could not save user (" + e.getMessage() + "). Rolled back.");
+        } finally {
+            ctx.metrics().recordSince("op.add_user", start);
         }
     }
 
-    private void addUser() {
-        String firstName = ctx.io().readNonEmptyString("First name: ");
-        String lastName = ctx.io().readNonEmptyString("Last name: ");
-        String email = ctx.io().readEmail("Email: ");
+    private void exportAvailable() {
+        long start = System.nanoTime();
+        try {
+            CsvStorage.Export export = ctx.exportAvailable();
+            if (export.skipped()) {
+                ctx.io().println("No availability changes, export is up to date: " + export.file().toAbsolutePath());
+                return;
+            }
+            ctx.io().println("Export created at: " + export.file().toAbsolutePath());
+            if (export.delta() != null) ctx.io().println("Changes since the previous export: " + export.delta().toAbsolutePath());
+        } catch (Exception e) {
+            ctx.io().println("ERROR: export failed (" + e.getMessage() + ")");
+        } finally {
+            ctx.metrics().recordSince("op.export", start);
+        }
+    }
 
-        if (ctx.emailExists(email)) {
-            ctx.io().println("A user with this email already exists.");
+    private void bulkImport() {
+        int kind = ctx.io().readInt("Import (1) users or (2) objectives: ", 1, 2);
+        Path file = Path.of(ctx.io().readNonEmptyString("CSV file: ").trim());
+        if (!Files.isRegularFile(file)) {
+            ctx.io().println("File not found.");
             return;
         }
 
-        int id = ctx.nextUserId();
-        ctx.users().add(new User(id, firstName, lastName, email));
-
+        long start = System.nanoTime();
         try {
-            ctx.saveUsers();
-            ctx.io().println("User created with ID: " + id);
+            BulkImporter.Result r = ctx.importFile(kind == 1 ? BulkImporter.Kind.USERS : BulkImporter.Kind.OBJECTIVES, file);
+            ctx.io().println("Imported: " + r.imported() + " | Rejected: " + r.rejected());
+            if (r.rejectsFile() != null) ctx.io().println("Rejected rows: " + r.rejectsFile().toAbsolutePath());
         } catch (Exception e) {
-            ctx.io().println("ERROR: could not save user (" + e.getMessage() + "). Rolling back.");
-            ctx.users().removeIf(u -> u.id() == id);
+            ctx.io().println("ERROR: import failed (" + e.getMessage() + "). Rolled back.");
+        } finally {
+            ctx.metrics().recordSince("op.import", start);
         }
     }
 
-    private void exportAvailable() {
+    private void checkIntegrity() {
+        long start = System.nanoTime();
         try {
-            Path out = ctx.storage().exportAvailableObjectives(ctx.objectives());
-            ctx.io().println("Export created at: " + out.toAbsolutePath());
+            IntegrityReport report = ctx.checkIntegrity(false);
+            for (String line : report.lines()) ctx.io().append(line);
+            ctx.io().flush();
+            if (report.ok()) return;
+
+            String answer = ctx.io().readLine("Repair (remove invalid bookings and bookings beyond capacity, fix availability)? (y/n): ");
+            if (!answer.trim().equalsIgnoreCase("y")) return;
+            report = ctx.checkIntegrity(true);
+            ctx.io().println("Repaired: " + report.repaired() + " change(s).");
         } catch (Exception e) {
-            ctx.io().println("ERROR: export failed (" + e.getMessage() + ")");
+            ctx.io().println("ERROR: repair failed (" + e.getMessage() + ")");
+        } finally {
+            ctx.metrics().recordSince("op.check", start);
         }
     }
+
+    private void showStatistics() {
+        ctx.io().println(ctx.metrics().report());
+
+        Exception failure = ctx.persister().lastFailure();
+        ctx.io().println("Save mode: " + ctx.persister().mode()
+                + (failure != null ? " (last background save FAILED: " + failure.getMessage() + ")" : ""));
+    }
 }
 
@@ -0,0 +1,143 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * The model as of one committed version (see Repository.snapshot): later changes are not visible, and what they
+ * replaced is kept until the snapshot is closed. Taking one is a counter update; readers never lock and never
+ * block writers. Close it promptly: a snapshot held open keeps every later change's history in memory.
+ *
+ * Objectives are returned as copies carrying their slots taken at this version: change the live ones
+ * (Repository.findObjectiveById), not these.
+ */
+public final class ModelSnapshot implements AutoCloseable {
+
+    private final Repository repo;
+    private final long version;
+    private boolean closed;
+
+    ModelSnapshot(Repository repo, long version) {
+        this.repo = repo;
+        this.version = version;
+    }
+
+    public long version() { return version; }
+
+    public List<User> users() {
+        TableHistory<User> history = repo.userHistory();
+        List<User> out = new ArrayList<>();
+        for (User u : repo.liveUsers()) {
+            if (!history.addedAfter(u.id(), version)) out.add(u);
+        }
+        // read after the table: a user removed meanwhile is either above or here
+        if (history.hasRemoved()) {
+            int before = out.size();
+            history.forEachRemoved(version, out::add);
+            if (out.size() > before) out = dedupe(out, User::id);
+        }
+        return out;
+    }
+
+    public List<Objective> objectives() {
+        return objectivesAfter(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /** Up to limit objectives with id greater than after, in id order (keyset paging, see MenuController). */
+    public List<Objective> objectivesAfter(int after, int limit) {
+        TableHistory<Objective> history = repo.objectiveHistory();
+        AvailabilityHistory availability = repo.availabilityHistory();
+
+        List<Objective> out = new ArrayList<>(Math.min(limit, 256));
+        int end = Integer.MAX_VALUE; // ids at or past end are not needed once limit live rows were found
+        for (Objective o : repo.liveObjectives().tailMap(after, false).values()) {
+            if (history.addedAfter(o.id(), version)) continue;
+            if (out.size() == limit) {
+                end = o.id();
+                break;
+            }
+            out.add(copyAt(o, availability));
+        }
+
+        if (history.hasRemoved()) {
+            int before = out.size();
+            int last = end;
+            history.forEachRemoved(version, o -> {
+                if (o.id() > after && o.id() < last) out.add(copyAt(o, availability));
+            });
+            if (out.size() > before) {
+                List<Objective> merged = dedupe(out, Objective::id);
+                return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+            }
+        }
+        return out;
+    }
+
+    /** The objectives available at this version, in id order. */
+    public List<Objective> availableObjectives() {
+        Map<Integer, Objective> live = repo.liveObjectives();
+        TableHistory<Objective> history = repo.objectiveHistory();
+        AvailabilityHistory availability = repo.availabilityHistory();
+
+        // available now, or changed since: every objective available at this version is one of them
+        List<Objective> candidates = new ArrayList<>(repo.liveAvailable());
+        candidates.addAll(availability.changedAfter(version));
+
+        Map<Integer, Objective> out = new TreeMap<>();
+        for (Objective o : candidates) {
+            if (live.get(o.id()) != o || history.addedAfter(o.id(), version)) continue;
+            if (availability.availableAt(o, version)) out.putIfAbsent(o.id(), copyAt(o, availability));
+        }
+        history.forEachRemoved(version, o -> {
+            if (availability.availableAt(o, version)) out.putIfAbsent(o.id(), copyAt(o, availability));
+        });
+        return new ArrayList<>(out.values());
+    }
+
+    /** Equal for two snapshots with the same available objectives (used to skip unchanged exports). */
+    public long availabilityMark() {
+        return repo.availabilityHistory().markAt(version);
+    }
+
+    /** Bookings at this version, by id; waits for bookings still loading in the background. */
+    public Collection<Booking> bookings() {
+        return Collections.unmodifiableCollection(repo.bookingsAt(version));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        repo.unpin(version);
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private Objective copyAt(Objective o, AvailabilityHistory availability) {
+        Objective copy = new Objective(o.id(), o.title(), o.period(), o.coins(), o.capacity(), true);
+        copy.setTaken(availability.takenAt(o, version));
+        return copy;
+    }
+
+    // sorted by id, first of each id kept (a row being removed can be seen both live and removed)
+    private static <T> List<T> dedupe(List<T> rows, ToIntFunction<T> id) {
+        rows.sort(Comparator.comparingInt(id));
+        List<T> out = new ArrayList<>(rows.size());
+        for (T r : rows) {
+            if (out.isEmpty() || id.applyAsInt(out.get(out.size() - 1)) != id.applyAsInt(r)) out.add(r);
+        }
+        return out;
+    }
+}
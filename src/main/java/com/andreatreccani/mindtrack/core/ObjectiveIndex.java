@@ -0,0 +1,176 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Objective;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Secondary indexes over the objectives: by period, by title word, by coins and by availability.
+ * Title, period and coins never change once added; availability is updated through availabilityChanged.
+ *
+ * A query walks the smallest index matching one of its constraints and checks the others per candidate,
+ * so its cost follows the size of that index (at worst the result of one constraint), not the catalog.
+ */
+final class ObjectiveIndex {
+
+    // id-ordered objectives for one key, with the size kept apart (a skip list counts by walking)
+    private static final class Posting {
+        final ConcurrentNavigableMap<Integer, Objective> byId = new ConcurrentSkipListMap<>();
+        final AtomicInteger size = new AtomicInteger();
+
+        void add(Objective o) {
+            if (byId.put(o.id(), o) == null) size.incrementAndGet();
+        }
+
+        void remove(Objective o) {
+            if (byId.remove(o.id()) != null) size.decrementAndGet();
+        }
+
+        void clear() {
+            byId.clear();
+            size.set(0);
+        }
+    }
+
+    private static final Posting NONE = new Posting();
+
+    private final Map<String, Posting> byPeriod = new ConcurrentHashMap<>();
+    private final Map<String, Posting> byTitleWord = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Objective> byCoins = new ConcurrentSkipListMap<>(); // (coins, id)
+    private final Posting available = new Posting();
+
+    void clear() {
+        byPeriod.clear();
+        byTitleWord.clear();
+        byCoins.clear();
+        available.clear();
+    }
+
+    void add(Objective o) {
+        byPeriod.computeIfAbsent(key(o.period()), k -> new Posting()).add(o);
+        for (String w : words(o.title())) {
+            byTitleWord.computeIfAbsent(w, k -> new Posting()).add(o);
+        }
+        byCoins.put(coinsKey(o.coins(), o.id()), o);
+        if (o.isAvailable()) available.add(o);
+    }
+
+    void remove(Objective o) {
+        Posting period = byPeriod.get(key(o.period()));
+        if (period != null) period.remove(o);
+        for (String w : words(o.title())) {
+            Posting p = byTitleWord.get(w);
+            if (p != null) p.remove(o);
+        }
+        byCoins.remove(coinsKey(o.coins(), o.id()));
+        available.remove(o);
+    }
+
+    void availabilityChanged(Objective o, boolean isAvailable) {
+        if (isAvailable) available.add(o);
+        else available.remove(o);
+    }
+
+    Collection<Objective> available() { return available.byId.values(); }
+
+    // -------------------------
+    // QUERY
+    // -------------------------
+
+    List<Objective> find(ObjectiveQuery q, Collection<Objective> all) {
+        if (q.coinsFrom() > q.coinsTo()) return new ArrayList<>();
+
+        List<Posting> wordPostings = new ArrayList<>();
+        if (q.title() != null) {
+            for (String w : words(q.title())) wordPostings.add(byTitleWord.getOrDefault(w, NONE));
+        }
+        Posting period = q.period() != null ? byPeriod.getOrDefault(key(q.period()), NONE) : null;
+
+        // driving set: the smallest posting among the constraints, else the coins index, else everything
+        Posting driver = period;
+        for (Posting p : wordPostings) {
+            if (driver == null || p.size.get() < driver.size.get()) driver = p;
+        }
+        if (q.availableOnly() && (driver == null || available.size.get() < driver.size.get())) driver = available;
+
+        Collection<Objective> candidates;
+        ObjectiveQuery.Sort order;
+        if (driver != null) {
+            candidates = driver.byId.values();
+            order = ObjectiveQuery.Sort.ID;
+        } else if (q.coinsBounded() || q.sort() != ObjectiveQuery.Sort.ID) {
+            ConcurrentNavigableMap<Long, Objective> range = byCoins.subMap(
+                    coinsKey(q.coinsFrom(), 0), true, coinsKey(q.coinsTo(), -1), true);
+            boolean descending = q.sort() == ObjectiveQuery.Sort.COINS_DESC;
+            candidates = descending ? range.descendingMap().values() : range.values();
+            order = descending ? ObjectiveQuery.Sort.COINS_DESC : ObjectiveQuery.Sort.COINS_ASC;
+        } else {
+            candidates = all;
+            order = ObjectiveQuery.Sort.ID;
+        }
+
+        // already in the requested order: stop at the limit
+        boolean ordered = order == q.sort();
+        List<Objective> result = new ArrayList<>();
+        for (Objective o : candidates) {
+            if (!matches(o, q, period, wordPostings)) continue;
+            result.add(o);
+            if (ordered && result.size() == q.limit()) return result;
+        }
+        if (ordered) return result;
+
+        result.sort(comparator(q.sort()));
+        return result.size() > q.limit() ? new ArrayList<>(result.subList(0, q.limit())) : result;
+    }
+
+    private static boolean matches(Objective o, ObjectiveQuery q, Posting period, List<Posting> wordPostings) {
+        if (q.availableOnly() && !o.isAvailable()) return false;
+        if (o.coins() < q.coinsFrom() || o.coins() > q.coinsTo()) return false;
+        if (period != null && !period.byId.containsKey(o.id())) return false;
+        for (Posting p : wordPostings) {
+            if (!p.byId.containsKey(o.id())) return false;
+        }
+        return true;
+    }
+
+    private static Comparator<Objective> comparator(ObjectiveQuery.Sort sort) {
+        Comparator<Objective> byCoinsThenId = Comparator.comparingInt(Objective::coins).thenComparingInt(Objective::id);
+        return switch (sort) {
+            case ID -> Comparator.comparingInt(Objective::id);
+            case COINS_ASC -> byCoinsThenId;
+            case COINS_DESC -> byCoinsThenId.reversed();
+        };
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private static String key(String s) {
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String w : key(text).split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) words.add(w);
+        }
+        return words;
+    }
+
+    // sorts by coins, then by id
+    private static long coinsKey(int coins, int id) {
+        return ((long) coins << 32) | (id & 0xFFFFFFFFL);
+    }
+}
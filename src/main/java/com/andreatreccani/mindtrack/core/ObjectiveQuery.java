@@ -0,0 +1,30 @@
+package com.andreatreccani.mindtrack.core;
+
+/**
+ * Filter + order for objectives. Null / false / 0 means "no constraint".
+ *
+ * period      exact match, case-insensitive
+ * minCoins    inclusive
+ * maxCoins    inclusive
+ * title       every word must appear as a whole word in the title, case-insensitive
+ * limit       maximum number of results
+ */
+public record ObjectiveQuery(String period, Integer minCoins, Integer maxCoins, boolean availableOnly,
+                             String title, Sort sort, int limit) {
+
+    public enum Sort { ID, COINS_ASC, COINS_DESC }
+
+    public ObjectiveQuery {
+        if (period != null && period.isBlank()) period = null;
+        if (title != null && title.isBlank()) title = null;
+        if (sort == null) sort = Sort.ID;
+        if (limit <= 0) limit = Integer.MAX_VALUE;
+    }
+
+    public boolean coinsBounded() {
+        return minCoins != null || maxCoins != null;
+    }
+
+    public int coinsFrom() { return minCoins != null ? minCoins : Integer.MIN_VALUE; }
+    public int coinsTo() { return maxCoins != null ? maxCoins : Integer.MAX_VALUE; }
+}
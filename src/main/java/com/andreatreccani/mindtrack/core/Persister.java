@@ -0,0 +1,195 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.metrics.Metrics;
+
+/**
+ * Decides when the CSV files are rewritten after a change.
+ *
+ * SYNC          the caller writes (today's behaviour): a failure is thrown back and the change rolled back.
+ * ASYNC         a background thread writes as soon as it can; changes arriving meanwhile are merged into
+ *               its next round. Lag is bounded: callers wait once more than maxPending changes are unwritten.
+ * GROUP_COMMIT  the background thread writes every intervalMs, whatever accumulated.
+ *
+ * In the background modes a failed write is reported (warning on stderr + save.failures) and retried on the next
+ * round; the in-memory change is kept. With a journal the change is already durable, only compaction is deferred.
+ */
+public class Persister {
+
+    public enum Mode { SYNC, ASYNC, GROUP_COMMIT }
+
+    /** Writes the given files (and compacts the journal) in the caller's thread. */
+    interface Sink {
+        void write(boolean users, boolean objectives, boolean bookings, boolean compact) throws Exception;
+    }
+
+    private final Mode mode;
+    private final long intervalMs;
+    private final int maxPending;
+    private final Sink sink;
+    private final Metrics metrics;
+
+    private boolean dirtyUsers;
+    private boolean dirtyObjectives;
+    private boolean dirtyBookings;
+    private boolean compact;
+    private int pending; // changes not yet on disk
+    private Exception lastFailure;
+    private boolean closed;
+    private Thread writer;
+
+    Persister(Mode mode, long intervalMs, int maxPending, Sink sink, Metrics metrics) {
+        this.mode = mode;
+        this.intervalMs = intervalMs;
+        this.maxPending = maxPending;
+        this.sink = sink;
+        this.metrics = metrics;
+
+        if (mode != Mode.SYNC) {
+            writer = new Thread(this::writeLoop, "csv-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public Mode mode() { return mode; }
+
+    public synchronized Exception lastFailure() { return lastFailure; }
+
+    /** SYNC: writes now and throws on failure. Otherwise queues the write and returns. */
+    void changed(boolean users, boolean objectives, boolean bookings, boolean compact) throws Exception {
+        if (mode == Mode.SYNC) {
+            write(users, objectives, bookings, compact);
+            return;
+        }
+
+        synchronized (this) {
+            mark(users, objectives, bookings, compact);
+            if (mode == Mode.ASYNC) notifyAll();
+
+            // bounded lag: let the writer catch up (unless it is failing, then waiting would not help)
+            while (pending > maxPending && lastFailure == null && !closed) {
+                metrics.increment("persist.backpressure_waits");
+                wait();
+            }
+        }
+    }
+
+    /** Only records the change; the next flush (or background round) writes it. */
+    synchronized void defer(boolean users, boolean objectives, boolean bookings, boolean compact) {
+        mark(users, objectives, bookings, compact);
+    }
+
+    /** Writes everything pending in the caller's thread; on failure it stays pending and the error is thrown. */
+    void flush() throws Exception {
+        boolean users;
+        boolean objectives;
+        boolean bookings;
+        boolean compactNow;
+        int count;
+        synchronized (this) {
+            if (!anyDirty()) return;
+            users = dirtyUsers;
+            objectives = dirtyObjectives;
+            bookings = dirtyBookings;
+            compactNow = compact;
+            count = pending;
+            clearDirty();
+        }
+
+        try {
+            write(users, objectives, bookings, compactNow);
+            written(count);
+        } catch (Exception e) {
+            failed(e, users, objectives, bookings, compactNow);
+            throw e;
+        }
+    }
+
+    /** Stops the background writer and writes what is still pending. */
+    void close() throws Exception {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            t = writer;
+        }
+        if (t != null) t.join();
+        flush();
+    }
+
+    // -------------------------
+    // BACKGROUND WRITER
+    // -------------------------
+
+    private void writeLoop() {
+        while (true) {
+            try {
+                synchronized (this) {
+                    if (mode == Mode.GROUP_COMMIT) {
+                        if (!closed) wait(intervalMs);
+                    } else {
+                        while (!closed && !anyDirty()) wait();
+                    }
+                    if (closed) return; // close() flushes the rest in its own thread
+                }
+
+                flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // already reported by failed(); wait a round before retrying
+                try {
+                    Thread.sleep(Math.max(intervalMs, 100));
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private void write(boolean users, boolean objectives, boolean bookings, boolean compactNow) throws Exception {
+        long start = System.nanoTime();
+        sink.write(users, objectives, bookings, compactNow);
+        metrics.recordSince("persist.write", start);
+    }
+
+    private void mark(boolean users, boolean objectives, boolean bookings, boolean compactNow) {
+        dirtyUsers |= users;
+        dirtyObjectives |= objectives;
+        dirtyBookings |= bookings;
+        compact |= compactNow;
+        pending++;
+    }
+
+    private synchronized void written(int count) {
+        pending -= count;
+        if (count > 1) metrics.add("persist.coalesced", count - 1);
+        lastFailure = null;
+        notifyAll();
+    }
+
+    private synchronized void failed(Exception e, boolean users, boolean objectives, boolean bookings, boolean compactNow) {
+        // put the files back: they are written again on the next round
+        dirtyUsers |= users;
+        dirtyObjectives |= objectives;
+        dirtyBookings |= bookings;
+        compact |= compactNow;
+        lastFailure = e;
+        notifyAll();
+
+        metrics.increment("save.failures");
+        if (mode != Mode.SYNC) System.err.println("[WARN] background save failed, will retry: " + e.getMessage());
+    }
+
+    private boolean anyDirty() {
+        return dirtyUsers || dirtyObjectives || dirtyBookings || compact;
+    }
+
+    private void clearDirty() {
+        dirtyUsers = dirtyObjectives = dirtyBookings = compact = false;
+    }
+}
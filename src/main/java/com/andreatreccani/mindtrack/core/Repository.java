@@ -0,0 +1,501 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * In-memory tables for users, objectives and bookings.
+ * Every lookup used by the menu is a hash lookup (a binary search for bookings); indexes are updated on each add/remove.
+ * Users and objectives live in concurrent maps: readers never lock, writers only coordinate where a check must be
+ * atomic (see createUser and BookingService). Bookings use a read/write lock inside BookingStore.
+ *
+ * Every change is stamped with a commit version (see VersionClock) and keeps what it replaced while a reader may
+ * need it, so snapshot() gives a consistent point in time without stopping writers (see ModelSnapshot).
+ */
+public class Repository {
+
+    private final VersionClock clock = new VersionClock();
+    private final TableHistory<User> userHistory = new TableHistory<>();
+    private final TableHistory<Objective> objectiveHistory = new TableHistory<>();
+    private final AvailabilityHistory availabilityHistory = new AvailabilityHistory();
+
+    // lookups by id
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Objective> objectives = new ConcurrentHashMap<>();
+
+    // iteration (listings, CSV rewrites) in id order
+    private final Map<Integer, User> usersInOrder = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<Integer, Objective> objectivesInOrder = new ConcurrentSkipListMap<>();
+
+    // bookings are the bulk of the data: kept in primitive columns, see BookingStore
+    private final BookingStore bookings = new BookingStore(clock);
+    private final UserAggregates userAggregates = new UserAggregates();
+
+    // period / title word / coins / availability; availability kept in step with Objective.isAvailable by setAvailable
+    private final ObjectiveIndex objectiveIndex = new ObjectiveIndex();
+
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+
+    private final AtomicInteger lastUserId = new AtomicInteger();
+    private final AtomicInteger lastBookingId = new AtomicInteger();
+    // set when the data folder is shared with other processes: new ids come from its counters
+    private volatile IdBlocks sharedIds;
+
+    // bookings still being loaded in the background (lazy shards): what needs all of them waits for it
+    private volatile CompletableFuture<?> pendingBookings = CompletableFuture.completedFuture(null);
+
+    public Repository() {
+        clock.onReclaim(horizon -> {
+            bookings.reclaim(horizon);
+            userHistory.prune(horizon);
+            objectiveHistory.prune(horizon);
+            availabilityHistory.prune(horizon);
+        });
+    }
+
+    public void clear() {
+        long v = clock.begin();
+        try {
+            clearTables();
+            availabilityHistory.changed(v); // marks taken before the clear do not match later ones
+        } finally {
+            clock.end();
+        }
+    }
+
+    private void clearTables() {
+        users.clear();
+        objectives.clear();
+        bookings.clear();
+        userAggregates.clear();
+        usersInOrder.clear();
+        objectivesInOrder.clear();
+        objectiveIndex.clear();
+        userHistory.clear();
+        objectiveHistory.clear();
+        availabilityHistory.clear();
+        usersByEmail.clear();
+        lastUserId.set(0);
+        lastBookingId.set(0);
+        pendingBookings = CompletableFuture.completedFuture(null);
+    }
+
+    void useSharedIds(IdBlocks ids) {
+        this.sharedIds = ids;
+    }
+
+    public Collection<User> users() { return Collections.unmodifiableCollection(usersInOrder.values()); }
+    public Collection<Objective> objectives() { return Collections.unmodifiableCollection(objectivesInOrder.values()); }
+    public Collection<Objective> availableObjectives() { return Collections.unmodifiableCollection(objectiveIndex.available()); }
+
+    public Collection<Booking> bookings() {
+        awaitBookings();
+        return Collections.unmodifiableCollection(bookings.view());
+    }
+
+    /** Pins the latest committed version for reading; close the snapshot to let go of it. */
+    public ModelSnapshot snapshot() {
+        return new ModelSnapshot(this, clock.pin());
+    }
+
+    /** Runs change as one version: a snapshot sees all of its changes or none. */
+    public <T> T atomically(Supplier<T> change) {
+        clock.begin();
+        try {
+            return change.get();
+        } finally {
+            clock.end();
+        }
+    }
+
+    // -------------------------
+    // USERS
+    // -------------------------
+
+    public boolean addUser(User u) {
+        long v = clock.begin();
+        try {
+            if (users.putIfAbsent(u.id(), u) != null) return false;
+            userHistory.added(u.id(), v);
+            usersInOrder.put(u.id(), u);
+            usersByEmail.putIfAbsent(emailKey(u.email()), u);
+            lastUserId.accumulateAndGet(u.id(), Math::max);
+            return true;
+        } finally {
+            clock.end();
+        }
+    }
+
+    /** Checks the email and assigns the id atomically; returns null if the email is taken. */
+    public synchronized User createUser(String firstName, String lastName, String email) {
+        if (emailExists(email)) return null;
+        User u = new User(newIds(IdBlocks.Kind.USER, 1, lastUserId), firstName, lastName, email);
+        addUser(u);
+        return u;
+    }
+
+    /**
+     * Bulk version of createUser: drafts whose email is taken (or repeated in the list) are passed to duplicate
+     * by index, the others get one block of consecutive ids. Returns the created users.
+     */
+    public synchronized List<User> createUsers(List<User> drafts, IntConsumer duplicate) {
+        Set<String> seen = new HashSet<>();
+        List<User> fresh = new ArrayList<>(drafts.size());
+        for (int i = 0; i < drafts.size(); i++) {
+            String key = emailKey(drafts.get(i).email());
+            if (usersByEmail.containsKey(key) || !seen.add(key)) duplicate.accept(i);
+            else fresh.add(drafts.get(i));
+        }
+
+        if (fresh.isEmpty()) return new ArrayList<>();
+        int first = newIds(IdBlocks.Kind.USER, fresh.size(), lastUserId);
+        return atomically(() -> {
+            int id = first - 1;
+            List<User> created = new ArrayList<>(fresh.size());
+            for (User d : fresh) {
+                User u = new User(++id, d.firstName(), d.lastName(), d.email());
+                addUser(u);
+                created.add(u);
+            }
+            return created;
+        });
+    }
+
+    public boolean removeUser(User u) {
+        long v = clock.begin();
+        try {
+            User removed = users.remove(u.id());
+            if (removed == null) return false;
+            userHistory.removed(removed.id(), removed, v);
+            usersInOrder.remove(removed.id());
+            usersByEmail.remove(emailKey(removed.email()), removed);
+            return true;
+        } finally {
+            clock.end();
+        }
+    }
+
+    public User findUserById(int id) {
+        return users.get(id);
+    }
+
+    /** Null if the user does not exist; otherwise read from the per-user totals, no booking scan. */
+    public UserDashboard dashboard(int userId) {
+        awaitBookings();
+        User u = users.get(userId);
+        return u == null ? null : userAggregates.dashboard(u);
+    }
+
+    public boolean emailExists(String email) {
+        if (email == null) return false;
+        return usersByEmail.containsKey(emailKey(email));
+    }
+
+    // -------------------------
+    // OBJECTIVES
+    // -------------------------
+
+    public boolean addObjective(Objective o) {
+        long v = clock.begin();
+        try {
+            if (objectives.putIfAbsent(o.id(), o) != null) return false;
+            objectiveHistory.added(o.id(), v);
+            availabilityHistory.changed(v);
+            objectivesInOrder.put(o.id(), o);
+            objectiveIndex.add(o);
+            return true;
+        } finally {
+            clock.end();
+        }
+    }
+
+    /** Adds the drafts with one block of ids after the highest existing one. Returns the created objectives. */
+    public synchronized List<Objective> createObjectives(List<Objective> drafts) {
+        if (drafts.isEmpty()) return new ArrayList<>();
+        int last = objectivesInOrder.isEmpty() ? 0 : objectivesInOrder.lastKey();
+        int first = sharedIds != null ? sharedIds.take(IdBlocks.Kind.OBJECTIVE, drafts.size(), last) : last + 1;
+        return atomically(() -> {
+            int id = first - 1;
+            List<Objective> created = new ArrayList<>(drafts.size());
+            for (Objective d : drafts) {
+                Objective o = new Objective(++id, d.title(), d.period(), d.coins(), d.capacity(), d.isAvailable());
+                addObjective(o);
+                created.add(o);
+            }
+            return created;
+        });
+    }
+
+    // For objectives nothing refers to yet (a rolled back import), or gone from the objectives file: bookings
+    // still referring to it are left without one (see IntegrityReport). To redefine one, see replaceObjective.
+    public boolean removeObjective(Objective o) {
+        long v = clock.begin();
+        try {
+            if (!objectives.remove(o.id(), o)) return false;
+            objectiveHistory.removed(o.id(), o, v);
+            availabilityHistory.changed(v);
+            objectivesInOrder.remove(o.id());
+            objectiveIndex.remove(o);
+            return true;
+        } finally {
+            clock.end();
+        }
+    }
+
+    /**
+     * Puts replacement (same id, another definition: a reload of the objectives file) in current's place as one
+     * version. Bookings stay on the id: replacement takes the slots they hold (at most its capacity) and their
+     * users' totals are counted with its coins and period. False if current is no longer the objective.
+     * Scans the bookings once; the caller holds the objective's BookingService stripe exclusively.
+     */
+    public boolean replaceObjective(Objective current, Objective replacement) {
+        if (current.id() != replacement.id()) throw new IllegalArgumentException("Not the same objective id");
+        long v = clock.begin();
+        try {
+            int booked = bookings.countForObjective(current.id());
+            replacement.setTaken(Math.min(Math.max(current.taken(), booked), replacement.capacity()));
+            // swapped, not removed and added: a lookup meanwhile finds one or the other, never none
+            if (!objectives.replace(current.id(), current, replacement)) return false;
+            objectiveHistory.removed(current.id(), current, v);
+            objectiveHistory.added(replacement.id(), v);
+            availabilityHistory.changed(v);
+            objectivesInOrder.put(replacement.id(), replacement);
+            objectiveIndex.remove(current);
+            objectiveIndex.add(replacement);
+            if (booked > 0) {
+                for (Booking b : bookings.view()) {
+                    if (b.objectiveId() == replacement.id()) userAggregates.objectiveChanged(b, replacement);
+                }
+            }
+            return true;
+        } finally {
+            clock.end();
+        }
+    }
+
+    // Slot counts change through these, under the objective's monitor: the index follows availability and the
+    // old count is kept for snapshots. The version starts under the monitor too, so one objective's changes get
+    // versions in the order they happen (see AvailabilityHistory); a caller adding other changes to the same
+    // version starts it with atomically(Objective, ...), as BookingService does.
+
+    /** Like atomically(change), with change's version started under o's monitor. */
+    public <T> T atomically(Objective o, Supplier<T> change) {
+        synchronized (o) {
+            return atomically(change);
+        }
+    }
+
+    /** Takes one of o's slots; false if all are taken. */
+    public boolean takeSlot(Objective o) {
+        synchronized (o) {
+            return o.isAvailable() && changeTaken(o, o.taken() + 1);
+        }
+    }
+
+    /**
+     * Gives one of o's slots back, after one of its bookings was removed; false if none was taken, or if the
+     * bookings left still fill every slot (the removed one was beyond capacity and held none).
+     */
+    public boolean releaseSlot(Objective o) {
+        synchronized (o) {
+            return o.taken() > 0 && o.taken() > bookings.countForObjective(o.id()) && changeTaken(o, o.taken() - 1);
+        }
+    }
+
+    /**
+     * Sets the count (from the bookings, see IntegrityChecker), at most capacity, unless it changed since it was
+     * read as expected.
+     */
+    public boolean compareAndSetTaken(Objective o, int expected, int taken) {
+        synchronized (o) {
+            int slots = Math.min(taken, o.capacity());
+            return o.taken() == expected && (expected == slots || changeTaken(o, slots));
+        }
+    }
+
+    /** From a journaled count (see Journal.availabilityChanged): at most capacity. */
+    public void setTaken(Objective o, int taken) {
+        synchronized (o) {
+            int slots = Math.max(0, Math.min(taken, o.capacity()));
+            if (o.taken() != slots) changeTaken(o, slots);
+        }
+    }
+
+    /** From an availability flag alone (older journal lines, objectives file): the nearest count that agrees with it. */
+    public void setAvailable(Objective o, boolean available) {
+        synchronized (o) {
+            if (o.isAvailable() != available) changeTaken(o, available ? o.capacity() - 1 : o.capacity());
+        }
+    }
+
+    // o's monitor held
+    private boolean changeTaken(Objective o, int taken) {
+        long v = clock.begin();
+        try {
+            boolean wasAvailable = o.isAvailable();
+            boolean available = taken < o.capacity();
+            availabilityHistory.changing(o, o.taken(), v, wasAvailable != available);
+            o.setTaken(taken);
+            if (wasAvailable != available) objectiveIndex.availabilityChanged(o, available);
+            return true;
+        } finally {
+            clock.end();
+        }
+    }
+
+    /** Filtered, ordered objectives; see ObjectiveIndex for the cost. */
+    public List<Objective> findObjectives(ObjectiveQuery query) {
+        return objectiveIndex.find(query, objectives());
+    }
+
+    public Objective findObjectiveById(int id) {
+        return objectives.get(id);
+    }
+
+    // -------------------------
+    // BOOKINGS
+    // -------------------------
+
+    public boolean addBooking(Booking b) {
+        long v = clock.begin();
+        try {
+            if (!bookings.add(b, v)) return false;
+        } finally {
+            clock.end();
+        }
+        userAggregates.bookingAdded(b, objectives.get(b.objectiveId()));
+        lastBookingId.accumulateAndGet(b.id(), Math::max);
+        return true;
+    }
+
+    /**
+     * Bulk addBooking for bookings sorted by id; ids already present are skipped. Returns how many were added.
+     * For bookings that existed before any snapshot (older shards loaded in the background): every version sees them.
+     */
+    public int addBookings(List<Booking> sortedById) {
+        List<Booking> added = bookings.addAll(sortedById, 0);
+        for (Booking b : added) {
+            userAggregates.bookingAdded(b, objectives.get(b.objectiveId()));
+            lastBookingId.accumulateAndGet(b.id(), Math::max);
+        }
+        return added.size();
+    }
+
+    /** Bookings loaded in the background: until loading completes, readers of the whole set wait. */
+    public void loadBookingsLater(CompletableFuture<?> loading) {
+        pendingBookings = loading;
+    }
+
+    // what is in memory right now, without waiting for a background load
+    Collection<Booking> loadedBookings() {
+        return Collections.unmodifiableCollection(bookings.view());
+    }
+
+    public boolean removeBooking(Booking b) {
+        Booking removed;
+        long v = clock.begin();
+        try {
+            removed = bookings.remove(b.id(), v);
+        } finally {
+            clock.end();
+        }
+        if (removed == null) return false;
+        userAggregates.bookingRemoved(removed);
+        return true;
+    }
+
+    public Booking findBookingById(int id) {
+        awaitBookings();
+        return bookings.find(id);
+    }
+
+    public boolean bookingExistsForUserAndObjective(int userId, int objectiveId) {
+        awaitBookings();
+        return bookings.existsForUserAndObjective(userId, objectiveId);
+    }
+
+    /** Live bookings of the objective: the slots it should have taken. */
+    public int bookingCountForObjective(int objectiveId) {
+        awaitBookings();
+        return bookings.countForObjective(objectiveId);
+    }
+
+    // the same, without waiting for a background load: for that load itself
+    int loadedBookingCountForObjective(int objectiveId) {
+        return bookings.countForObjective(objectiveId);
+    }
+
+    /** Bookings dated from..to (inclusive), by date then id. */
+    public List<Booking> bookingsBetween(LocalDate from, LocalDate to) {
+        awaitBookings();
+        return bookings.between(Math.toIntExact(from.toEpochDay()), Math.toIntExact(to.toEpochDay()));
+    }
+
+    /** Up to max ids of bookings dated before the given day, oldest first. */
+    public int[] bookingIdsBefore(LocalDate day, int max) {
+        awaitBookings();
+        return bookings.idsBefore(Math.toIntExact(day.toEpochDay()), max);
+    }
+
+    /** Hands out a new booking id; ids are never reused within a run, even if the booking is rolled back. */
+    public int reserveBookingId() {
+        return newIds(IdBlocks.Kind.BOOKING, 1, lastBookingId);
+    }
+
+    // -------------------------
+    // SNAPSHOT ACCESS (see ModelSnapshot)
+    // -------------------------
+
+    void unpin(long version) { clock.unpin(version); }
+    Collection<User> liveUsers() { return usersInOrder.values(); }
+    ConcurrentNavigableMap<Integer, Objective> liveObjectives() { return objectivesInOrder; }
+    Collection<Objective> liveAvailable() { return objectiveIndex.available(); }
+    TableHistory<User> userHistory() { return userHistory; }
+    TableHistory<Objective> objectiveHistory() { return objectiveHistory; }
+    AvailabilityHistory availabilityHistory() { return availabilityHistory; }
+
+    Collection<Booking> bookingsAt(long version) {
+        awaitBookings();
+        return bookings.viewAt(version);
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    // first of count new consecutive ids; last is the highest id known here
+    private int newIds(IdBlocks.Kind kind, int count, AtomicInteger last) {
+        IdBlocks shared = sharedIds;
+        if (shared == null) return last.getAndAdd(count) + 1;
+        int first = shared.take(kind, count, last.get());
+        last.accumulateAndGet(first + count - 1, Math::max);
+        return first;
+    }
+
+    private void awaitBookings() {
+        CompletableFuture<?> pending = pendingBookings;
+        if (!pending.isDone()) pending.join();
+    }
+
+    private static String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,57 @@
+package com.andreatreccani.mindtrack.core;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Versions of the users or objectives added and removed since the horizon (see VersionClock), so a snapshot
+ * can skip rows added after it and still find rows removed after it. Older entries are dropped by prune.
+ *
+ * Writers record before touching the table: a reader that misses a row in the table finds it here.
+ */
+final class TableHistory<V> {
+
+    private record Removed<V>(V value, long added, long removed) {}
+
+    // id -> version the row now in the table was added at; absent = before the horizon
+    private final Map<Integer, Long> addedAt = new ConcurrentHashMap<>();
+    private final Queue<Removed<V>> removed = new ConcurrentLinkedQueue<>();
+
+    void clear() {
+        addedAt.clear();
+        removed.clear();
+    }
+
+    void added(int id, long version) {
+        addedAt.put(id, version);
+    }
+
+    void removed(int id, V value, long version) {
+        removed.add(new Removed<>(value, addedAt.getOrDefault(id, 0L), version));
+    }
+
+    /** The row now in the table under id did not exist yet at version. */
+    boolean addedAfter(int id, long version) {
+        Long added = addedAt.get(id);
+        return added != null && added > version;
+    }
+
+    /** Rows removed from the table since, that existed at version. */
+    void forEachRemoved(long version, Consumer<V> action) {
+        for (Removed<V> r : removed) {
+            if (r.added() <= version && version < r.removed()) action.accept(r.value());
+        }
+    }
+
+    boolean hasRemoved() {
+        return !removed.isEmpty();
+    }
+
+    void prune(long horizon) {
+        addedAt.values().removeIf(v -> v <= horizon);
+        removed.removeIf(r -> r.removed() <= horizon);
+    }
+}
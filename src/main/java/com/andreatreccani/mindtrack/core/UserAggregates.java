@@ -0,0 +1,116 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user totals kept up to date on every booking add/remove, so a dashboard never scans the bookings.
+ * Built during load by the same calls (Repository.addBooking), one booking at a time.
+ */
+final class UserAggregates {
+
+    // What each booking added is kept next to its id and subtracted as is on removal: the objective may have
+    // been redefined (other coins or period, see DataWatcher) or have appeared since the booking was counted.
+    private static final class Totals {
+        int[] bookingIds = new int[4]; // sorted
+        int[] bookingCoins = new int[4]; // parallel to bookingIds
+        String[] bookingPeriods = new String[4]; // parallel to bookingIds; null: counted without an objective
+        int count;
+        long coins;
+        final Map<String, Integer> perPeriod = new TreeMap<>();
+
+        synchronized void add(Booking b, Objective o) {
+            int at = Arrays.binarySearch(bookingIds, 0, count, b.id());
+            if (at >= 0) return;
+            at = -(at + 1);
+            if (count == bookingIds.length) {
+                bookingIds = Arrays.copyOf(bookingIds, count * 2);
+                bookingCoins = Arrays.copyOf(bookingCoins, count * 2);
+                bookingPeriods = Arrays.copyOf(bookingPeriods, count * 2);
+            }
+            // usually at == count
+            System.arraycopy(bookingIds, at, bookingIds, at + 1, count - at);
+            System.arraycopy(bookingCoins, at, bookingCoins, at + 1, count - at);
+            System.arraycopy(bookingPeriods, at, bookingPeriods, at + 1, count - at);
+            bookingIds[at] = b.id();
+            bookingCoins[at] = 0;
+            bookingPeriods[at] = null;
+            count++;
+            if (o != null) credit(at, o);
+        }
+
+        synchronized void remove(Booking b) {
+            int at = Arrays.binarySearch(bookingIds, 0, count, b.id());
+            if (at < 0) return;
+            debit(at);
+            System.arraycopy(bookingIds, at + 1, bookingIds, at, count - at - 1);
+            System.arraycopy(bookingCoins, at + 1, bookingCoins, at, count - at - 1);
+            System.arraycopy(bookingPeriods, at + 1, bookingPeriods, at, count - at - 1);
+            count--;
+            bookingPeriods[count] = null;
+        }
+
+        // the booking's objective was redefined: count it with o from now on
+        synchronized void recount(Booking b, Objective o) {
+            int at = Arrays.binarySearch(bookingIds, 0, count, b.id());
+            if (at < 0) return;
+            debit(at);
+            credit(at, o);
+        }
+
+        private void credit(int at, Objective o) {
+            String period = o.period().trim();
+            bookingCoins[at] = o.coins();
+            bookingPeriods[at] = period;
+            coins += o.coins();
+            perPeriod.merge(period, 1, Integer::sum);
+        }
+
+        private void debit(int at) {
+            if (bookingPeriods[at] == null) return;
+            coins -= bookingCoins[at];
+            perPeriod.computeIfPresent(bookingPeriods[at], (k, n) -> n > 1 ? n - 1 : null);
+            bookingCoins[at] = 0;
+            bookingPeriods[at] = null;
+        }
+
+        synchronized UserDashboard snapshot(User user) {
+            return new UserDashboard(user, Arrays.copyOf(bookingIds, count), coins,
+                    Collections.unmodifiableMap(new TreeMap<>(perPeriod)));
+        }
+    }
+
+    private final Map<Integer, Totals> byUser = new ConcurrentHashMap<>();
+
+    void clear() {
+        byUser.clear();
+    }
+
+    // o may be null (booking for a missing objective): counted, but no coins / period
+    void bookingAdded(Booking b, Objective o) {
+        byUser.computeIfAbsent(b.userId(), k -> new Totals()).add(b, o);
+    }
+
+    void bookingRemoved(Booking b) {
+        Totals t = byUser.get(b.userId());
+        if (t != null) t.remove(b);
+    }
+
+    void objectiveChanged(Booking b, Objective o) {
+        Totals t = byUser.get(b.userId());
+        if (t != null) t.recount(b, o);
+    }
+
+    UserDashboard dashboard(User user) {
+        Totals t = byUser.get(user.id());
+        if (t == null) return new UserDashboard(user, new int[0], 0, Map.of());
+        return t.snapshot(user);
+    }
+}
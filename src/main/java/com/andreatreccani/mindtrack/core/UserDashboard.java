@@ -0,0 +1,11 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.User;
+
+import java.util.Map;
+
+/** What a user has booked: booking ids in id order, coins of the booked objectives, bookings per period. */
+public record UserDashboard(User user, int[] bookingIds, long totalCoins, Map<String, Integer> bookingsPerPeriod) {
+
+    public int bookingCount() { return bookingIds.length; }
+}
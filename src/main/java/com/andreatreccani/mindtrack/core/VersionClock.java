@@ -0,0 +1,89 @@
+package com.andreatreccani.mindtrack.core;
+
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * Commit versions of the in-memory model (see ModelSnapshot). Every change runs between begin() and end() and
+ * stamps what it writes with its version; nested begin() calls on the same thread join the open change, so a
+ * booking (availability flip + booking row) is one version. A version is published once it and every earlier
+ * one have ended: readers pin the published version and never see half a change.
+ *
+ * The horizon is the oldest version a reader holds (the published one if none): history older than it is
+ * never read again and is dropped by the reclaimers, when the horizon moves.
+ */
+final class VersionClock {
+
+    // without readers, history is still dropped every so many versions
+    private static final int RECLAIM_EVERY = 1024;
+
+    private long last;
+    private volatile long published;
+    private long reclaimedAt;
+    private final TreeSet<Long> open = new TreeSet<>();
+    private final TreeMap<Long, Integer> pinned = new TreeMap<>(); // version -> readers
+    private final ThreadLocal<long[]> current = new ThreadLocal<>(); // { version, depth } of this thread's change
+    private final List<LongConsumer> reclaimers = new CopyOnWriteArrayList<>();
+
+    void onReclaim(LongConsumer reclaimer) {
+        reclaimers.add(reclaimer);
+    }
+
+    /** Version of the change this thread is making, a new one if none is open. Always paired with end(). */
+    long begin() {
+        long[] change = current.get();
+        if (change != null) {
+            change[1]++;
+            return change[0];
+        }
+        long v;
+        synchronized (this) {
+            v = ++last;
+            open.add(v);
+        }
+        current.set(new long[] { v, 1 });
+        return v;
+    }
+
+    void end() {
+        long[] change = current.get();
+        if (--change[1] > 0) return;
+        current.remove();
+
+        long horizon = -1;
+        synchronized (this) {
+            open.remove(change[0]);
+            published = open.isEmpty() ? last : open.first() - 1;
+            if (pinned.isEmpty() && published - reclaimedAt >= RECLAIM_EVERY) horizon = reclaimedAt = published;
+        }
+        if (horizon >= 0) reclaim(horizon);
+    }
+
+    /** Registers a reader at the published version and returns it. Always paired with unpin. */
+    synchronized long pin() {
+        long v = published;
+        pinned.merge(v, 1, Integer::sum);
+        return v;
+    }
+
+    void unpin(long version) {
+        long horizon = -1;
+        synchronized (this) {
+            pinned.computeIfPresent(version, (v, readers) -> readers == 1 ? null : readers - 1);
+            long h = horizon();
+            if (h > reclaimedAt) horizon = reclaimedAt = h;
+        }
+        if (horizon >= 0) reclaim(horizon);
+    }
+
+    synchronized long horizon() {
+        return pinned.isEmpty() ? published : pinned.firstKey();
+    }
+
+    private void reclaim(long horizon) {
+        for (LongConsumer r : reclaimers) r.accept(horizon);
+    }
+}
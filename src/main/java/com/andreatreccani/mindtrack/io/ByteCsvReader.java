@@ -0,0 +1,374 @@
+package com.andreatreccani.mindtrack.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * CSV reader working directly on the bytes of a memory-mapped file.
+ * Separators and line ends are found byte by byte and numbers/dates are parsed in place;
+ * Strings are only created for text columns (and for the line itself when a row is rejected).
+ */
+class ByteCsvReader {
+
+    interface RowParser<T> {
+        T parse(Row row) throws Exception;
+    }
+
+    interface Warner {
+        void warn(int row, String line, String reason);
+    }
+
+    private static final int WINDOW = 64 * 1024 * 1024;
+    // files are split into ranges of at least this size, smaller files are parsed on the calling thread
+    private static final long MIN_CHUNK = 8 * 1024 * 1024;
+
+    private static final byte SEP = ';';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private ByteCsvReader() {}
+
+    /**
+     * Reads every row after the header; same skip/warn rules as the line based reader.
+     * Large files are split into newline-aligned ranges parsed in parallel on the common fork-join pool;
+     * rows and warnings are merged back in file order.
+     */
+    static <T> List<T> read(Path file, int expectedCols, RowParser<T> parser, Warner warner) throws IOException {
+        return read(file, expectedCols, 0, parser, warner);
+    }
+
+    /** optionalCols: read after the expected ones when present (see Row.has). */
+    static <T> List<T> read(Path file, int expectedCols, int optionalCols, RowParser<T> parser, Warner warner)
+            throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+
+            Row header = new Row(1);
+            boolean[] blankHeader = { true };
+            long bodyStart = scan(ch, 0, size, (buf, start, end) -> {
+                header.reset(buf, start, end);
+                blankHeader[0] = header.isBlank();
+                return false;
+            });
+            // a blank header means an empty file
+            if (blankHeader[0]) return new ArrayList<>();
+
+            long[] bounds = boundaries(ch, bodyStart, size);
+            List<ChunkTask<T>> tasks = new ArrayList<>();
+            for (int k = 0; k < bounds.length - 1; k++) {
+                tasks.add(new ChunkTask<>(ch, bounds[k], bounds[k + 1], expectedCols, optionalCols, parser));
+            }
+
+            if (tasks.size() == 1) {
+                tasks.get(0).invoke();
+            } else {
+                tasks.forEach(ForkJoinTask::fork);
+            }
+
+            List<Chunk<T>> chunks = new ArrayList<>();
+            long total = 0;
+            for (ChunkTask<T> t : tasks) {
+                Chunk<T> c = t.join();
+                chunks.add(c);
+                total += c.rows.size();
+            }
+
+            List<T> list = new ArrayList<>((int) Math.min(total, Integer.MAX_VALUE - 8));
+            int row = 1; // header
+            for (Chunk<T> c : chunks) {
+                list.addAll(c.rows);
+                for (Warning w : c.warnings) warner.warn(row + w.row(), w.line(), w.reason());
+                row += c.lines;
+            }
+            return list;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // -------------------------
+    // CHUNKS
+    // -------------------------
+
+    private record Warning(int row, String line, String reason) {}
+
+    private static final class Chunk<T> {
+        final List<T> rows = new ArrayList<>();
+        final List<Warning> warnings = new ArrayList<>();
+        int lines; // rows are numbered from 1 inside the chunk
+    }
+
+    private static final class ChunkTask<T> extends RecursiveTask<Chunk<T>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel ch;
+        private final long from;
+        private final long to;
+        private final int expectedCols;
+        private final int optionalCols;
+        private final RowParser<T> parser;
+
+        ChunkTask(FileChannel ch, long from, long to, int expectedCols, int optionalCols, RowParser<T> parser) {
+            this.ch = ch;
+            this.from = from;
+            this.to = to;
+            this.expectedCols = expectedCols;
+            this.optionalCols = optionalCols;
+            this.parser = parser;
+        }
+
+        @Override
+        protected Chunk<T> compute() {
+            Chunk<T> chunk = new Chunk<>();
+            Row r = new Row(expectedCols + optionalCols);
+            try {
+                scan(ch, from, to, (buf, start, end) -> {
+                    int row = ++chunk.lines;
+                    r.reset(buf, start, end);
+                    if (r.isBlank()) return true;
+
+                    if (r.fieldCount < expectedCols) {
+                        chunk.warnings.add(new Warning(row, r.line(), "Expected " + expectedCols + " columns"));
+                        return true;
+                    }
+                    try {
+                        chunk.rows.add(parser.parse(r));
+                    } catch (Exception ex) {
+                        chunk.warnings.add(new Warning(row, r.line(), ex.getMessage()));
+                    }
+                    return true;
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return chunk;
+        }
+    }
+
+    /** Splits [from, to) into ranges that each start right after a line end. */
+    private static long[] boundaries(FileChannel ch, long from, long to) throws IOException {
+        long body = to - from;
+        int chunks = (int) Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, body / MIN_CHUNK);
+        if (chunks <= 1) return new long[] { from, to };
+
+        long[] bounds = new long[chunks + 1];
+        bounds[0] = from;
+        bounds[chunks] = to;
+        for (int k = 1; k < chunks; k++) {
+            long nominal = from + body * k / chunks;
+            // skip the (partial) line we landed in: it belongs to the previous range
+            bounds[k] = Math.max(bounds[k - 1], scan(ch, nominal, to, (buf, start, end) -> false));
+        }
+        return bounds;
+    }
+
+    // -------------------------
+    // SCAN
+    // -------------------------
+
+    private interface LineVisitor {
+        // return false to stop scanning
+        boolean visit(MappedByteBuffer buf, int start, int end);
+    }
+
+    /**
+     * Maps [from, to) window by window and hands each line (without its terminator) to the visitor.
+     * Returns the offset right after the last visited line.
+     */
+    private static long scan(FileChannel ch, long from, long to, LineVisitor visitor) throws IOException {
+        long pos = from;
+        int window = WINDOW;
+
+        while (pos < to) {
+            int len = (int) Math.min(window, to - pos);
+            boolean lastWindow = pos + len == to;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+
+            int i = 0;
+            while (i < len) {
+                int end = i;
+                while (end < len && buf.get(end) != LF && buf.get(end) != CR) end++;
+
+                // the line continues in the next window (a CR at the edge could still be followed by LF)
+                if (!lastWindow && (end == len || (end == len - 1 && buf.get(end) == CR))) break;
+
+                int next;
+                if (end == len) next = len;
+                else if (buf.get(end) == CR && end + 1 < len && buf.get(end + 1) == LF) next = end + 2;
+                else next = end + 1;
+
+                boolean more = visitor.visit(buf, i, end);
+                i = next;
+                if (!more) return pos + i;
+            }
+
+            if (i == 0) {
+                // a single line longer than the window
+                window = (int) Math.min((long) window * 2, Integer.MAX_VALUE);
+                continue;
+            }
+            pos += i;
+        }
+
+        return to;
+    }
+
+    /** The current line: field boundaries are byte offsets into the mapped window, already trimmed. */
+    static final class Row {
+
+        private final int[] starts;
+        private final int[] ends;
+        private int fieldCount;
+
+        private MappedByteBuffer buf;
+        private int lineStart;
+        private int lineEnd;
+
+        private byte[] scratch = new byte[256];
+
+        private Row(int maxCols) {
+            starts = new int[maxCols];
+            ends = new int[maxCols];
+        }
+
+        private void reset(MappedByteBuffer buf, int lineStart, int lineEnd) {
+            this.buf = buf;
+            this.lineStart = lineStart;
+            this.lineEnd = lineEnd;
+
+            // only the first maxCols fields matter, extra columns are ignored (like split)
+            fieldCount = 0;
+            int fieldStart = lineStart;
+            for (int i = lineStart; i <= lineEnd && fieldCount < starts.length; i++) {
+                if (i == lineEnd || buf.get(i) == SEP) {
+                    int s = fieldStart;
+                    int e = i;
+                    while (s < e && isSpace(buf.get(s))) s++;
+                    while (e > s && isSpace(buf.get(e - 1))) e--;
+                    starts[fieldCount] = s;
+                    ends[fieldCount] = e;
+                    fieldCount++;
+                    fieldStart = i + 1;
+                }
+            }
+        }
+
+        boolean isBlank() {
+            for (int i = lineStart; i < lineEnd; i++) {
+                if (!isSpace(buf.get(i))) return false;
+            }
+            return true;
+        }
+
+        /** The row has this (optional) field and it is not blank. */
+        boolean has(int field) {
+            return field < fieldCount && starts[field] < ends[field];
+        }
+
+        String text(int field) {
+            return decode(starts[field], ends[field]);
+        }
+
+        String line() {
+            return decode(lineStart, lineEnd);
+        }
+
+        int integer(int field) {
+            int s = starts[field];
+            int e = ends[field];
+            if (s == e) throw numberError(field);
+
+            boolean negative = false;
+            byte first = buf.get(s);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                s++;
+                if (s == e) throw numberError(field);
+            }
+
+            // accumulate negatively so Integer.MIN_VALUE parses too
+            long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+            long value = 0;
+            for (int i = s; i < e; i++) {
+                int d = buf.get(i) - '0';
+                if (d < 0 || d > 9) throw numberError(field);
+                value = value * 10 - d;
+                if (value < limit) throw numberError(field);
+            }
+            return (int) (negative ? value : -value);
+        }
+
+        LocalDate date(int field) {
+            int s = starts[field];
+            if (ends[field] - s != 10 || buf.get(s + 4) != '-' || buf.get(s + 7) != '-') throw dateError(field);
+
+            int year = digits(s, 4);
+            int month = digits(s + 5, 2);
+            int day = digits(s + 8, 2);
+            if (year < 0 || month < 0 || day < 0) throw dateError(field);
+
+            try {
+                return LocalDate.of(year, month, day);
+            } catch (DateTimeException ex) {
+                throw dateError(field);
+            }
+        }
+
+        /** ASCII case-insensitive comparison, no String created. */
+        boolean is(int field, String value) {
+            int s = starts[field];
+            if (ends[field] - s != value.length()) return false;
+            for (int i = 0; i < value.length(); i++) {
+                int b = buf.get(s + i);
+                if (Character.toUpperCase(b) != Character.toUpperCase(value.charAt(i))) return false;
+            }
+            return true;
+        }
+
+        private int digits(int from, int count) {
+            int value = 0;
+            for (int i = from; i < from + count; i++) {
+                int d = buf.get(i) - '0';
+                if (d < 0 || d > 9) return -1;
+                value = value * 10 + d;
+            }
+            return value;
+        }
+
+        private String decode(int s, int e) {
+            int len = e - s;
+            if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length * 2)];
+            buf.get(s, scratch, 0, len);
+            return new String(scratch, 0, len, StandardCharsets.UTF_8);
+        }
+
+        // the Strings below are only built on the error path
+        private NumberFormatException numberError(int field) {
+            return new NumberFormatException("For input string: \"" + text(field) + "\"");
+        }
+
+        private DateTimeParseException dateError(int field) {
+            String raw = text(field);
+            return new DateTimeParseException("Text '" + raw + "' could not be parsed", raw, 0);
+        }
+
+        private static boolean isSpace(byte b) {
+            // same rule as String.trim(): any char <= ' ' (UTF-8 continuation bytes are negative)
+            return b >= 0 && b <= ' ';
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.andreatreccani.mindtrack.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * CSV writer formatting straight into a reusable byte buffer: ints and dates are written digit by digit and
+ * text is encoded to UTF-8 in place, so no String is built per row or per field. Output is the same as
+ * BufferedWriter (UTF-8, fields as they are, System.lineSeparator(); an unpaired surrogate is an error).
+ *
+ * Large collections are encoded in chunks of rows on the common fork-join pool, a few chunks ahead of the
+ * writer, and written in order; the buffer of a chunk once written is reused for a later one.
+ */
+final class CsvEncoder {
+
+    interface RowWriter<T> {
+        void write(T row, CsvEncoder out) throws IOException;
+    }
+
+    private static final int BUFFER = 64 * 1024;
+    // below this many rows (or with a single core) rows are encoded on the calling thread
+    private static final int PARALLEL_ROWS = 100_000;
+    private static final int CHUNK_ROWS = 16 * 1024;
+
+    private static final byte SEP = ';';
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_INT = Integer.toString(Integer.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int pos;
+
+    CsvEncoder(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    /**
+     * Writes the header and one line per row to ch. parallel: allow chunked encoding (large collections only).
+     * Returns the number of bytes written.
+     */
+    static <T> long write(WritableByteChannel ch, String header, Collection<T> rows, boolean parallel,
+                          RowWriter<T> writer) throws IOException {
+        CsvEncoder out = new CsvEncoder(BUFFER);
+        out.text(header).newline();
+
+        if (!parallel || rows.size() < PARALLEL_ROWS || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            long written = 0;
+            for (T row : rows) {
+                writer.write(row, out);
+                out.newline();
+                if (out.pos >= BUFFER) written += out.drainTo(ch);
+            }
+            return written + out.drainTo(ch);
+        }
+
+        long written = out.drainTo(ch);
+        List<T> list = rows instanceof List<T> l && rows instanceof RandomAccess ? l : new ArrayList<>(rows);
+        int ahead = ForkJoinPool.getCommonPoolParallelism() * 2;
+        Deque<ChunkTask<T>> pending = new ArrayDeque<>();
+        CsvEncoder spare = out; // empty again
+        try {
+            for (int from = 0; from < list.size(); from += CHUNK_ROWS) {
+                if (pending.size() == ahead) {
+                    spare = pending.poll().join();
+                    written += spare.drainTo(ch);
+                }
+                CsvEncoder chunk = spare != null ? spare : new CsvEncoder(BUFFER);
+                spare = null;
+                ChunkTask<T> task = new ChunkTask<>(list, from, Math.min(from + CHUNK_ROWS, list.size()), writer, chunk);
+                task.fork();
+                pending.add(task);
+            }
+            while (!pending.isEmpty()) written += pending.poll().join().drainTo(ch);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pending.forEach(t -> t.cancel(false));
+        }
+        return written;
+    }
+
+    // -------------------------
+    // FIELDS
+    // -------------------------
+
+    CsvEncoder sep() {
+        ensure(1);
+        bytes[pos++] = SEP;
+        return this;
+    }
+
+    CsvEncoder newline() {
+        ensure(NEWLINE.length);
+        System.arraycopy(NEWLINE, 0, bytes, pos, NEWLINE.length);
+        pos += NEWLINE.length;
+        return this;
+    }
+
+    /** Same digits as Integer.toString. */
+    CsvEncoder integer(int v) {
+        if (v == Integer.MIN_VALUE) {
+            ensure(MIN_INT.length);
+            System.arraycopy(MIN_INT, 0, bytes, pos, MIN_INT.length);
+            pos += MIN_INT.length;
+            return this;
+        }
+        ensure(11);
+        if (v < 0) {
+            bytes[pos++] = '-';
+            v = -v;
+        }
+        fixed(v, digits(v));
+        return this;
+    }
+
+    /** Same text as LocalDate.toString (yyyy-MM-dd for years 0-9999). */
+    CsvEncoder date(LocalDate d) throws IOException {
+        int year = d.getYear();
+        if (year < 0 || year > 9999) return text(d.toString());
+        ensure(10);
+        fixed(year, 4);
+        bytes[pos++] = '-';
+        fixed(d.getMonthValue(), 2);
+        bytes[pos++] = '-';
+        fixed(d.getDayOfMonth(), 2);
+        return this;
+    }
+
+    /** UTF-8, as is (the format has no quoting); null is written as "null", like String concatenation. */
+    CsvEncoder text(String s) throws IOException {
+        if (s == null) s = "null";
+        int n = s.length();
+        ensure(n * 3); // at most 3 bytes per char (a surrogate pair takes 4 for 2)
+
+        byte[] out = bytes;
+        int p = pos;
+        int i = 0;
+        // ASCII fast path
+        for (char c; i < n && (c = s.charAt(i)) < 0x80; i++) out[p++] = (byte) c;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out[p++] = (byte) c;
+            } else if (c < 0x800) {
+                out[p++] = (byte) (0xC0 | c >> 6);
+                out[p++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                if (!Character.isHighSurrogate(c) || i + 1 == n || !Character.isLowSurrogate(s.charAt(i + 1))) {
+                    throw new MalformedInputException(1);
+                }
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out[p++] = (byte) (0xF0 | cp >> 18);
+                out[p++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                out[p++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                out[p++] = (byte) (0x80 | cp & 0x3F);
+            } else {
+                out[p++] = (byte) (0xE0 | c >> 12);
+                out[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[p++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        pos = p;
+        return this;
+    }
+
+    // -------------------------
+    // BUFFER
+    // -------------------------
+
+    // v >= 0, right-aligned in width digits (zero padded)
+    private void fixed(int v, int width) {
+        for (int i = pos + width - 1; i >= pos; i--) {
+            bytes[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        pos += width;
+    }
+
+    private static int digits(int v) {
+        int d = 1;
+        while (v >= 10) {
+            v /= 10;
+            d++;
+        }
+        return d;
+    }
+
+    private void ensure(int n) {
+        if (bytes.length - pos >= n) return;
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + n));
+    }
+
+    // writes what was encoded so far and empties the buffer for reuse
+    private long drainTo(WritableByteChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes, 0, pos);
+        while (buf.hasRemaining()) ch.write(buf);
+        int n = pos;
+        pos = 0;
+        return n;
+    }
+
+    // -------------------------
+    // CHUNKS
+    // -------------------------
+
+    private static final class ChunkTask<T> extends RecursiveTask<CsvEncoder> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> rows;
+        private final int from;
+        private final int to;
+        private final RowWriter<T> writer;
+        private final CsvEncoder out; // empty
+
+        ChunkTask(List<T> rows, int from, int to, RowWriter<T> writer, CsvEncoder out) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.writer = writer;
+            this.out = out;
+        }
+
+        @Override
+        protected CsvEncoder compute() {
+            try {
+                for (int i = from; i < to; i++) {
+                    writer.write(rows.get(i), out);
+                    out.newline();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out;
+        }
+    }
+}
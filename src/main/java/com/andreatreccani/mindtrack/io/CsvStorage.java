@@ -1,5 +1,6 @@
 package com.andreatreccani.mindtrack.io;
 
+import com.andreatreccani.mindtrack.metrics.Metrics;
 import com.andreatreccani.mindtrack.model.Booking;
 import com.andreatreccani.mindtrack.model.Objective;
 import com.andreatreccani.mindtrack.model.User;
@@ -7,37 +8,252 @@ import com.andreatreccani.mindtrack.model.User;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class CsvStorage {
 
+    public enum ReadMode {
+        LINES, // BufferedReader + split, one String per line and per field
+        BYTES  // memory-mapped, parsed at byte level (see ByteCsvReader)
+    }
+
+    /** file = full export; delta = changes since the previous export (null when off); skipped = file was up to date. */
+    public record Export(Path file, Path delta, int rows, boolean skipped) {}
+
+    /** Receives the rows of streamRows one at a time. */
+    public interface RowHandler {
+        void row(int line, String raw, String[] cols) throws IOException;
+
+        /** Fewer columns than expected. */
+        void malformed(int line, String raw, String reason) throws IOException;
+    }
+
     private static final String SEP = ";";
+    private static final String INVALID_DATE = "Invalid date format (expected YYYY-MM-DD)";
 
     private static final String USERS_HEADER = "id;first_name;last_name;email";
-    private static final String OBJECTIVES_HEADER = "id;title;period;coins;available";
+    private static final String OBJECTIVES_HEADER = "id;title;period;coins;available;capacity";
     private static final String BOOKINGS_HEADER = "id;user_id;objective_id;date";
+    private static final String EXPORT_HEADER = "id;title;period;coins";
+    private static final String DELTA_HEADER = "change;id;title;period;coins";
+    private static final String MANIFEST_HEADER = "month;file;rows";
+    private static final int VERSION_SLOT = 0; // in <file>.lock
+    private static final Set<StandardOpenOption> WRITE_OPTIONS =
+            Set.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    private static final Pattern SHARD_NAME = Pattern.compile("bookings_(\\d{4}-\\d{2})\\.csv");
+    private static final Pattern EXPORT_NAME = Pattern.compile("available_objectives_\\d{4}-\\d{2}-\\d{2}\\.csv(\\.gz)?");
 
     private final Path usersCsv;
     private final Path objectivesCsv;
     private final Path bookingsCsv;
 
+    private ReadMode readMode = ReadMode.BYTES;
+    private Path exportDir = Path.of("exports");
+    private Metrics metrics = new Metrics();
+    private boolean exportGzip;
+    private boolean exportDelta;
+    private boolean parallelWrite = true;
+
+    // sharded bookings (see useBookingShards): null = the single bookings file
+    private Path shardDir;
+    private final TreeMap<YearMonth, Integer> shards = new TreeMap<>(); // month -> rows, as in the manifest
+
+    // size + modification time of each data file as this process last read or wrote it (see isOwnVersion)
+    private final Map<Path, String> stamps = new ConcurrentHashMap<>();
+    // version of each data file (kept in <file>.lock, bumped by every write of any process) as last read or written here
+    private final Map<Path, Long> versions = new ConcurrentHashMap<>();
+
+    // state of the last export written by this process
+    private Path lastExport;
+    private long lastExportVersion = -1;
+
     public CsvStorage(Path usersCsv, Path objectivesCsv, Path bookingsCsv) {
         this.usersCsv = usersCsv;
         this.objectivesCsv = objectivesCsv;
         this.bookingsCsv = bookingsCsv;
     }
 
+    public void setReadMode(ReadMode readMode) {
+        this.readMode = readMode;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setExportDir(Path exportDir) {
+        this.exportDir = exportDir;
+    }
+
+    public void setExportGzip(boolean exportGzip) {
+        this.exportGzip = exportGzip;
+    }
+
+    public void setExportDelta(boolean exportDelta) {
+        this.exportDelta = exportDelta;
+    }
+
+    /** Large files are encoded in parallel chunks (default); false keeps every write on the calling thread. */
+    public void setParallelWrite(boolean parallelWrite) {
+        this.parallelWrite = parallelWrite;
+    }
+
+    /**
+     * Stores bookings as one file per month (bookings_YYYY-MM.csv, same format) in dir, listed in manifest.csv.
+     * If dir has no manifest yet, the single bookings file is split into shards and renamed to *.migrated.
+     * Returns true if that migration happened.
+     */
+    public synchronized boolean useBookingShards(Path dir) throws IOException {
+        shardDir = dir;
+        shards.clear();
+        Path manifest = manifestFile();
+        // another process may be migrating at the same time (held, not read: a plain try-finally)
+        LockFile.Held lock = lockOf(manifest).lock();
+        try {
+            if (Files.exists(manifest)) {
+                readManifest(manifest);
+                return false;
+            }
+
+            List<Booking> all = Files.exists(bookingsCsv) ? parseBookings(bookingsCsv) : List.of();
+            writeBookings(all);
+            if (Files.exists(bookingsCsv)) {
+                Files.move(bookingsCsv, bookingsCsv.resolveSibling(bookingsCsv.getFileName() + ".migrated"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } finally {
+            lock.close();
+        }
+    }
+
+    public synchronized boolean sharded() {
+        return shardDir != null;
+    }
+
+    public Path usersFile() { return usersCsv; }
+    public Path objectivesFile() { return objectivesCsv; }
+    public Path bookingsFile() { return bookingsCsv; }
+    public synchronized Path shardDir() { return shardDir; }
+
+    /** The month of a shard file name (bookings_YYYY-MM.csv), or null if it is not one. */
+    public static YearMonth shardMonth(Path file) {
+        Matcher m = SHARD_NAME.matcher(file.getFileName().toString());
+        return m.matches() ? YearMonth.parse(m.group(1)) : null;
+    }
+
+    /**
+     * True if the file is as this process last read or wrote it (same size and modification time):
+     * a change notification for it is our own write.
+     */
+    public boolean isOwnVersion(Path file) throws IOException {
+        return Objects.equals(stamps.get(file), stampOf(file));
+    }
+
+    /**
+     * True if no data file read or written here has been rewritten by another process since
+     * (a copy of the data taken now, such as the snapshot, is then complete).
+     */
+    public boolean isUpToDate() throws IOException {
+        for (Map.Entry<Path, Long> e : versions.entrySet()) {
+            if (lockOf(e.getKey()).peek(VERSION_SLOT) != e.getValue()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the current version of the files listed by files() as read: for data loaded from a copy of them
+     * (the snapshot). Call before checking that the copy is newer, so a write in between is not missed.
+     */
+    public void noteVersions() throws IOException {
+        for (Path f : files()) versions.put(f, lockOf(f).peek(VERSION_SLOT));
+    }
+
+    /** Sharded only: the month files listed in the manifest, read again first if another process changed it. */
+    public synchronized List<Path> shardFiles() throws IOException {
+        if (shardDir == null) throw new IllegalStateException("bookings are not sharded");
+        Path manifest = manifestFile();
+        if (Files.exists(manifest) && lockOf(manifest).peek(VERSION_SLOT) != versions.getOrDefault(manifest, 0L)) {
+            shards.clear();
+            readManifest(manifest);
+        }
+        List<Path> files = new ArrayList<>();
+        for (YearMonth m : shards.keySet()) files.add(shardFile(m));
+        return files;
+    }
+
+    /** Sharded only: the bookings of one month (none if its file is gone); the month joins the manifest if new. */
+    public List<Booking> readBookingShard(YearMonth month) throws IOException {
+        if (!sharded()) throw new IllegalStateException("bookings are not sharded");
+        Path file = shardFile(month);
+        if (!Files.exists(file)) return new ArrayList<>();
+        List<Booking> list = parseBookings(file);
+        synchronized (this) {
+            shards.put(month, list.size());
+        }
+        return list;
+    }
+
+    // the manifest is rewritten with every shard, so its time stands for all of them
+    public synchronized List<Path> files() {
+        return List.of(usersCsv, objectivesCsv, shardDir != null ? manifestFile() : bookingsCsv);
+    }
+
     // -------------------------
     // READ
     // -------------------------
 
     public List<User> readUsers() throws IOException {
+        long start = System.nanoTime();
+        List<User> list = parseUsers();
+        recordRead("users", usersCsv, list.size(), start);
+        return list;
+    }
+
+    private List<User> parseUsers() throws IOException {
         ensureFile(usersCsv, USERS_HEADER);
+        noteRead(usersCsv);
+
+        if (readMode == ReadMode.BYTES) {
+            return ByteCsvReader.read(usersCsv, 4,
+                    r -> new User(r.integer(0), r.text(1), r.text(2), r.text(3)),
+                    (row, line, reason) -> warn("users.csv", row, line, reason));
+        }
 
         List<User> list = new ArrayList<>();
         try (BufferedReader br = Files.newBufferedReader(usersCsv)) {
@@ -77,7 +293,23 @@ public class CsvStorage {
     }
 
     public List<Objective> readObjectives() throws IOException {
+        long start = System.nanoTime();
+        List<Objective> list = parseObjectives();
+        recordRead("objectives", objectivesCsv, list.size(), start);
+        return list;
+    }
+
+    private List<Objective> parseObjectives() throws IOException {
         ensureFile(objectivesCsv, OBJECTIVES_HEADER);
+        noteRead(objectivesCsv);
+
+        if (readMode == ReadMode.BYTES) {
+            // capacity is optional: files written before it have 5 columns
+            return ByteCsvReader.read(objectivesCsv, 5, 1,
+                    r -> new Objective(r.integer(0), r.text(1), r.text(2), r.integer(3), r.has(5) ? r.integer(5) : 1,
+                            r.is(4, "YES") || r.is(4, "SI") || r.is(4, "TRUE")),
+                    (row, line, reason) -> warn("objectives.csv", row, line, reason));
+        }
 
         List<Objective> list = new ArrayList<>();
         try (BufferedReader br = Files.newBufferedReader(objectivesCsv)) {
@@ -105,8 +337,9 @@ public class CsvStorage {
                     String period = p[2].trim();
                     int coins = Integer.parseInt(p[3].trim());
                     boolean available = parseAvailable(p[4].trim());
+                    int capacity = parseCapacity(p.length > 5 ? p[5] : null);
 
-                    list.add(new Objective(id, title, period, coins, available));
+                    list.add(new Objective(id, title, period, coins, capacity, available));
                 } catch (Exception ex) {
                     warn("objectives.csv", row, line, ex.getMessage());
                 }
@@ -116,14 +349,108 @@ public class CsvStorage {
         return list;
     }
 
+    /**
+     * Streams an external file in one of the formats above (header line skipped, blank lines ignored)
+     * without keeping the rows: for imports larger than what should be held as a list.
+     */
+    public void streamRows(Path file, int columns, RowHandler handler) throws IOException {
+        long start = System.nanoTime();
+        int rows = 0;
+        try (BufferedReader br = Files.newBufferedReader(file)) {
+            br.readLine(); // header
+
+            String line;
+            int row = 1;
+            while ((line = br.readLine()) != null) {
+                row++;
+                if (line.isBlank()) continue;
+                rows++;
+
+                String[] p = split(line, columns);
+                if (p == null) handler.malformed(row, line, "Expected " + columns + " columns");
+                else handler.row(row, line, p);
+            }
+        }
+        recordRead("import", file, rows, start);
+    }
+
     public List<Booking> readBookings() throws IOException {
-        ensureFile(bookingsCsv, BOOKINGS_HEADER);
+        return readBookings(m -> true);
+    }
+
+    /** Sharded: only the months from the given one on. Single file: every booking. */
+    public List<Booking> readBookingsFrom(YearMonth from) throws IOException {
+        return readBookings(m -> !m.isBefore(from));
+    }
+
+    /** Sharded: only the months before the given one. Single file: nothing (readBookingsFrom read them all). */
+    public List<Booking> readBookingsBefore(YearMonth month) throws IOException {
+        if (!sharded()) return new ArrayList<>();
+        return readBookings(m -> m.isBefore(month));
+    }
+
+    private List<Booking> readBookings(Predicate<YearMonth> months) throws IOException {
+        long start = System.nanoTime();
+        if (!sharded()) {
+            List<Booking> list = parseBookings(bookingsCsv);
+            recordRead("bookings", bookingsCsv, list.size(), start);
+            return list;
+        }
+
+        List<Path> files = new ArrayList<>();
+        synchronized (this) {
+            for (YearMonth m : shards.keySet()) {
+                if (months.test(m)) files.add(shardFile(m));
+            }
+        }
+
+        // one task per shard, results concatenated in month order
+        List<Booking> list = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<List<Booking>>> parts = new ArrayList<>();
+            for (Path f : files) parts.add(pool.submit(() -> parseBookings(f)));
+            for (int i = 0; i < parts.size(); i++) {
+                list.addAll(parts.get(i).get());
+                metrics.add("csv.bytes_read", Files.size(files.get(i)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading booking shards", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        metrics.recordSince("csv.read.bookings", start);
+        metrics.add("csv.rows_read", list.size());
+        return list;
+    }
+
+    private List<Booking> parseBookings(Path file) throws IOException {
+        ensureFile(file, BOOKINGS_HEADER);
+        noteRead(file);
+        String name = file.getFileName().toString();
+
+        if (readMode == ReadMode.BYTES) {
+            return ByteCsvReader.read(file, 4, r -> {
+                int id = r.integer(0);
+                int userId = r.integer(1);
+                int objectiveId = r.integer(2);
+                try {
+                    return new Booking(id, userId, objectiveId, r.date(3));
+                } catch (DateTimeParseException dtpe) {
+                    throw new IllegalArgumentException(INVALID_DATE);
+                }
+            }, (row, line, reason) -> warn(name, row, line, reason));
+        }
 
         List<Booking> list = new ArrayList<>();
-        try (BufferedReader br = Files.newBufferedReader(bookingsCsv)) {
+        try (BufferedReader br = Files.newBufferedReader(file)) {
             String header = br.readLine(); // header
             if (header == null || header.isBlank()) {
-                ensureFile(bookingsCsv, BOOKINGS_HEADER);
+                ensureFile(file, BOOKINGS_HEADER);
                 return list;
             }
 
@@ -135,7 +462,7 @@ public class CsvStorage {
 
                 String[] p = split(line, 4);
                 if (p == null) {
-                    warn("bookings.csv", row, line, "Expected 4 columns");
+                    warn(name, row, line, "Expected 4 columns");
                     continue;
                 }
 
@@ -148,13 +475,13 @@ public class CsvStorage {
                     try {
                         date = LocalDate.parse(p[3].trim());
                     } catch (DateTimeParseException dtpe) {
-                        warn("bookings.csv", row, line, "Invalid date format (expected YYYY-MM-DD)");
+                        warn(name, row, line, INVALID_DATE);
                         continue;
                     }
 
                     list.add(new Booking(id, userId, objectiveId, date));
                 } catch (Exception ex) {
-                    warn("bookings.csv", row, line, ex.getMessage());
+                    warn(name, row, line, ex.getMessage());
                 }
             }
         }
@@ -166,70 +493,306 @@ public class CsvStorage {
     // WRITE
     // -------------------------
 
-    public void writeUsers(List<User> users) throws IOException {
-        ensureParentDir(usersCsv);
-        try (BufferedWriter bw = Files.newBufferedWriter(usersCsv)) {
-            bw.write(USERS_HEADER);
-            bw.newLine();
-            for (User u : users) {
-                bw.write(u.id() + SEP + u.firstName() + SEP + u.lastName() + SEP + u.email());
-                bw.newLine();
+    public void writeUsers(Collection<User> users) throws IOException {
+        long start = System.nanoTime();
+        formatUsers(users);
+        recordWrite("csv.write.users", usersCsv, users.size(), start);
+    }
+
+    private void formatUsers(Collection<User> users) throws IOException {
+        writeAtomically(usersCsv, ch -> CsvEncoder.write(ch, USERS_HEADER, users, parallelWrite, (u, out) ->
+                out.integer(u.id()).sep().text(u.firstName()).sep().text(u.lastName()).sep().text(u.email())
+        ));
+    }
+
+    public void writeObjectives(Collection<Objective> objectives) throws IOException {
+        long start = System.nanoTime();
+        formatObjectives(objectives);
+        recordWrite("csv.write.objectives", objectivesCsv, objectives.size(), start);
+    }
+
+    private void formatObjectives(Collection<Objective> objectives) throws IOException {
+        writeAtomically(objectivesCsv, ch -> CsvEncoder.write(ch, OBJECTIVES_HEADER, objectives, parallelWrite, (o, out) ->
+                out.integer(o.id()).sep().text(o.title()).sep().text(o.period()).sep().integer(o.coins()).sep()
+                        .text(o.isAvailable() ? "YES" : "NO").sep().integer(o.capacity())
+        ));
+    }
+
+    /** Rewrites every booking: the single file, or (sharded) every shard, dropping months left empty. */
+    public void writeBookings(Collection<Booking> bookings) throws IOException {
+        if (sharded()) {
+            Map<YearMonth, List<Booking>> byMonth = new TreeMap<>();
+            for (Booking b : bookings) byMonth.computeIfAbsent(YearMonth.from(b.date()), k -> new ArrayList<>()).add(b);
+            Set<YearMonth> months = new TreeSet<>(byMonth.keySet());
+            synchronized (this) {
+                months.addAll(shards.keySet());
             }
+            writeBookingShards(months, m -> byMonth.getOrDefault(m, List.of()));
+            return;
         }
+
+        long start = System.nanoTime();
+        formatBookings(bookingsCsv, bookings);
+        recordWrite("csv.write.bookings", bookingsCsv, bookings.size(), start);
     }
 
-    public void writeObjectives(List<Objective> objectives) throws IOException {
-        ensureParentDir(objectivesCsv);
-        try (BufferedWriter bw = Files.newBufferedWriter(objectivesCsv)) {
-            bw.write(OBJECTIVES_HEADER);
-            bw.newLine();
-            for (Objective o : objectives) {
-                bw.write(
-                        o.id() + SEP + o.title() + SEP + o.period() + SEP + o.coins() + SEP + (o.isAvailable() ? "YES" : "NO")
-                );
-                bw.newLine();
+    /**
+     * Sharded only: rewrites the shards of the given months with bookingsOf(month), the others are not touched.
+     * An empty month loses its file. The manifest is rewritten last, once.
+     */
+    public synchronized void writeBookingShards(Collection<YearMonth> months,
+                                                Function<YearMonth, Collection<Booking>> bookingsOf) throws IOException {
+        if (shardDir == null) throw new IllegalStateException("bookings are not sharded");
+
+        long start = System.nanoTime();
+        int rows = 0;
+        List<YearMonth> done = new ArrayList<>();
+        try {
+            for (YearMonth m : months) {
+                Collection<Booking> bookings = bookingsOf.apply(m);
+                Path file = shardFile(m);
+                if (bookings.isEmpty()) {
+                    deleteShard(file);
+                    shards.remove(m);
+                } else {
+                    formatBookings(file, bookings);
+                    metrics.add("csv.bytes_written", Files.size(file));
+                    shards.put(m, bookings.size());
+                    rows += bookings.size();
+                }
+                done.add(m);
             }
+        } catch (StaleFileException e) {
+            // the months written so far must still reach the manifest
+            writeManifest(done);
+            throw e;
         }
+        writeManifest(done);
+
+        metrics.recordSince("csv.write.bookings", start);
+        metrics.add("csv.rows_written", rows);
+        metrics.add("csv.shards_written", months.size());
     }
 
-    public void writeBookings(List<Booking> bookings) throws IOException {
-        ensureParentDir(bookingsCsv);
-        try (BufferedWriter bw = Files.newBufferedWriter(bookingsCsv)) {
-            bw.write(BOOKINGS_HEADER);
-            bw.newLine();
-            for (Booking b : bookings) {
-                bw.write(b.id() + SEP + b.userId() + SEP + b.objectiveId() + SEP + b.date());
+    private void formatBookings(Path file, Collection<Booking> bookings) throws IOException {
+        writeAtomically(file, ch -> CsvEncoder.write(ch, BOOKINGS_HEADER, bookings, parallelWrite, (b, out) ->
+                out.integer(b.id()).sep().integer(b.userId()).sep().integer(b.objectiveId()).sep().date(b.date())
+        ));
+    }
+
+    /**
+     * Rows left out when the files were read because an earlier row had the same id: appended to
+     * <file>.duplicates.csv (same format, header when new), so the next rewrite of the file does not lose them.
+     * Returns the files written to.
+     */
+    public List<Path> saveDuplicates(List<User> users, List<Objective> objectives, List<Booking> bookings) throws IOException {
+        List<Path> written = new ArrayList<>();
+        appendDuplicates(usersCsv, USERS_HEADER, users, written, u ->
+                u.id() + SEP + u.firstName() + SEP + u.lastName() + SEP + u.email());
+        appendDuplicates(objectivesCsv, OBJECTIVES_HEADER, objectives, written, o ->
+                o.id() + SEP + o.title() + SEP + o.period() + SEP + o.coins() + SEP + (o.isAvailable() ? "YES" : "NO")
+                        + SEP + o.capacity());
+        appendDuplicates(bookingsCsv, BOOKINGS_HEADER, bookings, written, b ->
+                b.id() + SEP + b.userId() + SEP + b.objectiveId() + SEP + b.date());
+        return written;
+    }
+
+    private static <T> void appendDuplicates(Path file, String header, List<T> rows, List<Path> written,
+                                             Function<T, String> format) throws IOException {
+        if (rows.isEmpty()) return;
+        Path out = file.resolveSibling(file.getFileName() + ".duplicates.csv");
+        boolean fresh = !Files.exists(out);
+        try (BufferedWriter bw = Files.newBufferedWriter(out, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (fresh) {
+                bw.write(header);
+                bw.newLine();
+            }
+            for (T row : rows) {
+                bw.write(format.apply(row));
                 bw.newLine();
             }
         }
+        written.add(out);
     }
 
     // -------------------------
     // EXPORT
     // -------------------------
 
-    public Path exportAvailableObjectives(List<Objective> objectives) throws IOException {
-        Path exportDir = Path.of("exports");
+    public Path exportFile() {
+        String filename = "available_objectives_" + LocalDate.now() + (exportGzip ? ".csv.gz" : ".csv");
+        return exportDir.resolve(filename);
+    }
+
+    /** Writes every objective of the collection that is available (no caching). */
+    public Path exportAvailableObjectives(Collection<Objective> objectives) throws IOException {
+        return exportAvailableObjectives(objectives, -1).file();
+    }
+
+    /**
+     * Exports the given objectives, expected to be the available ones (others are skipped anyway).
+     * {@code version} identifies the available set: if it equals the one of the last export and that file
+     * is still in place, nothing is written. -1 always writes.
+     */
+    // synchronized: concurrent sessions exporting on the same day write the same file
+    public synchronized Export exportAvailableObjectives(Collection<Objective> objectives, long version) throws IOException {
+        long start = System.nanoTime();
+        Path out = exportFile();
+
+        if (version >= 0 && version == lastExportVersion && out.equals(lastExport) && Files.exists(out)) {
+            metrics.increment("csv.export_skipped");
+            return new Export(out, null, -1, true);
+        }
+
         Files.createDirectories(exportDir);
 
-        String filename = "available_objectives_" + LocalDate.now() + ".csv";
-        Path out = exportDir.resolve(filename);
+        // the previous export is read before the new one possibly overwrites it (same day)
+        Map<Integer, String> previous = exportDelta ? readPreviousExport() : null;
+        Map<Integer, String> current = exportDelta ? new TreeMap<>() : null;
 
-        try (BufferedWriter bw = Files.newBufferedWriter(out)) {
+        List<Objective> available = new ArrayList<>(objectives.size());
+        for (Objective o : objectives) {
+            if (!o.isAvailable()) continue;
+            available.add(o);
+            if (current != null) current.put(o.id(), o.id() + SEP + o.title() + SEP + o.period() + SEP + o.coins());
+        }
+        int rows = available.size();
+
+        try (WritableByteChannel ch = exportChannel(out)) {
             // export "pulito": niente colonna available
-            bw.write("id;title;period;coins");
+            CsvEncoder.write(ch, EXPORT_HEADER, available, parallelWrite, (o, enc) ->
+                    enc.integer(o.id()).sep().text(o.title()).sep().text(o.period()).sep().integer(o.coins())
+            );
+        }
+
+        Path delta = current != null ? writeDelta(previous, current) : null;
+
+        lastExport = out;
+        lastExportVersion = version;
+        recordWrite("csv.export", out, rows, start);
+        return new Export(out, delta, rows, false);
+    }
+
+    private WritableByteChannel exportChannel(Path out) throws IOException {
+        if (!exportGzip) return FileChannel.open(out, WRITE_OPTIONS);
+        return Channels.newChannel(new GZIPOutputStream(Files.newOutputStream(out), 64 * 1024));
+    }
+
+    // most recently written export in the export dir (plain or gzip), as id -> row
+    private Map<Integer, String> readPreviousExport() throws IOException {
+        Path latest = null;
+        FileTime latestTime = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(exportDir)) {
+            for (Path f : files) {
+                if (!EXPORT_NAME.matcher(f.getFileName().toString()).matches()) continue;
+                FileTime t = Files.getLastModifiedTime(f);
+                if (latestTime == null || t.compareTo(latestTime) > 0) {
+                    latest = f;
+                    latestTime = t;
+                }
+            }
+        }
+
+        Map<Integer, String> rows = new TreeMap<>();
+        if (latest == null) return rows;
+
+        InputStream in = Files.newInputStream(latest);
+        if (latest.getFileName().toString().endsWith(".gz")) in = new GZIPInputStream(in);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            br.readLine(); // header
+            String line;
+            while ((line = br.readLine()) != null) {
+                int sep = line.indexOf(SEP);
+                if (sep <= 0) continue;
+                try {
+                    rows.put(Integer.parseInt(line.substring(0, sep).trim()), line);
+                } catch (NumberFormatException ignored) {
+                    // not one of our rows
+                }
+            }
+        }
+        return rows;
+    }
+
+    private Path writeDelta(Map<Integer, String> previous, Map<Integer, String> current) throws IOException {
+        Path out = exportDir.resolve("available_objectives_" + LocalDate.now() + ".delta.csv");
+        try (BufferedWriter bw = Files.newBufferedWriter(out)) {
+            bw.write(DELTA_HEADER);
             bw.newLine();
 
-            for (Objective o : objectives) {
-                if (!o.isAvailable()) continue;
-                bw.write(o.id() + SEP + o.title() + SEP + o.period() + SEP + o.coins());
+            Set<Integer> ids = new TreeSet<>(previous.keySet());
+            ids.addAll(current.keySet());
+            for (int id : ids) {
+                String before = previous.get(id);
+                String now = current.get(id);
+                if (before == null) {
+                    bw.write("ADDED" + SEP + now);
+                } else if (now == null) {
+                    bw.write("REMOVED" + SEP + before);
+                } else {
+                    continue;
+                }
                 bw.newLine();
             }
         }
-
         return out;
     }
 
+    // -------------------------
+    // SHARDS
+    // -------------------------
+
+    private Path manifestFile() {
+        return shardDir.resolve("manifest.csv");
+    }
+
+    private Path shardFile(YearMonth month) {
+        return shardDir.resolve("bookings_" + month + ".csv");
+    }
+
+    private void readManifest(Path manifest) throws IOException {
+        noteRead(manifest);
+        List<String> lines = Files.readAllLines(manifest);
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) continue;
+            String[] p = split(line, 3);
+            try {
+                if (p == null) throw new IllegalArgumentException("Expected 3 columns");
+                shards.put(YearMonth.parse(p[0].trim()), Integer.parseInt(p[2].trim()));
+            } catch (RuntimeException ex) {
+                warn("manifest.csv", i + 1, line, ex.getMessage());
+            }
+        }
+    }
+
+    // merged: if another process changed the manifest, its months are kept, except those just written here
+    private void writeManifest(Collection<YearMonth> written) throws IOException {
+        Path manifest = manifestFile();
+        try (LockFile.Held lock = lockOf(manifest).lock()) {
+            if (lock.get(VERSION_SLOT) != versions.getOrDefault(manifest, 0L)) {
+                Map<YearMonth, Integer> ours = new HashMap<>();
+                for (YearMonth m : written) ours.put(m, shards.get(m));
+                shards.clear();
+                if (Files.exists(manifest)) readManifest(manifest);
+                else versions.put(manifest, lock.get(VERSION_SLOT));
+                for (Map.Entry<YearMonth, Integer> e : ours.entrySet()) {
+                    if (e.getValue() == null) shards.remove(e.getKey());
+                    else shards.put(e.getKey(), e.getValue());
+                }
+            }
+            writeManifestFile(manifest);
+        }
+    }
+
+    private void writeManifestFile(Path manifest) throws IOException {
+        writeAtomically(manifest, ch -> CsvEncoder.write(ch, MANIFEST_HEADER, shards.entrySet(), false, (e, out) ->
+                out.text(e.getKey().toString()).sep().text(shardFile(e.getKey()).getFileName().toString()).sep()
+                        .integer(e.getValue())
+        ));
+    }
+
     // -------------------------
     // HELPERS
     // -------------------------
@@ -254,6 +817,73 @@ public class CsvStorage {
         }
     }
 
+    private interface Body {
+        void write(FileChannel ch) throws IOException;
+    }
+
+    // temp file + rename: a crash or a failed write never leaves a half-written CSV behind.
+    // Under the file's lock, and only if no other process rewrote it since we last read it (else StaleFileException).
+    private void writeAtomically(Path file, Body body) throws IOException {
+        ensureParentDir(file);
+        try (LockFile.Held lock = lockOf(file).lock()) {
+            checkVersion(file, lock);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, WRITE_OPTIONS)) {
+                body.write(ch);
+            }
+            // a rename keeps size and time: stamp first, so a watcher never sees the new file unstamped
+            String previous = stamps.put(file, stampOf(tmp));
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (previous != null) stamps.put(file, previous);
+                else stamps.remove(file);
+                throw e;
+            }
+            bumpVersion(file, lock);
+        }
+    }
+
+    private void deleteShard(Path file) throws IOException {
+        try (LockFile.Held lock = lockOf(file).lock()) {
+            checkVersion(file, lock);
+            if (Files.deleteIfExists(file)) bumpVersion(file, lock);
+            stamps.remove(file);
+        }
+    }
+
+    private void checkVersion(Path file, LockFile.Held lock) throws IOException {
+        if (lock.get(VERSION_SLOT) != versions.getOrDefault(file, 0L)) {
+            metrics.increment("csv.stale_writes");
+            throw new StaleFileException(file);
+        }
+    }
+
+    private void bumpVersion(Path file, LockFile.Held lock) throws IOException {
+        long version = lock.get(VERSION_SLOT) + 1;
+        lock.set(VERSION_SLOT, version);
+        versions.put(file, version);
+    }
+
+    // the version first: if a write lands in between, the older version makes our next write merge instead of overwrite
+    private void noteRead(Path file) throws IOException {
+        versions.put(file, lockOf(file).peek(VERSION_SLOT));
+        String stamp = stampOf(file);
+        if (stamp != null) stamps.put(file, stamp);
+    }
+
+    private static LockFile lockOf(Path file) throws IOException {
+        return LockFile.of(file.resolveSibling(file.getFileName() + ".lock"));
+    }
+
+    private static String stampOf(Path file) throws IOException {
+        try {
+            return Files.size(file) + "@" + Files.getLastModifiedTime(file).toMillis();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
     private void ensureParentDir(Path file) throws IOException {
         Path parent = file.getParent();
         if (parent != null) Files.createDirectories(parent);
@@ -265,7 +895,7 @@ public class CsvStorage {
         return parts;
     }
 
-    private boolean parseAvailable(String raw) {
+    public static boolean parseAvailable(String raw) {
         // accepts legacy italian values too
         if (raw == null) return false;
         String v = raw.trim();
@@ -275,7 +905,26 @@ public class CsvStorage {
         return false; // NO / FALSE / qualsiasi altro
     }
 
+    /** Optional column: missing or blank means 1 (one booking in total, as before capacities). */
+    public static int parseCapacity(String raw) {
+        if (raw == null || raw.isBlank()) return 1;
+        return Integer.parseInt(raw.trim());
+    }
+
+    private void recordRead(String entity, Path file, int rows, long start) throws IOException {
+        metrics.recordSince("csv.read." + entity, start);
+        metrics.add("csv.rows_read", rows);
+        metrics.add("csv.bytes_read", Files.size(file));
+    }
+
+    private void recordWrite(String timer, Path file, int rows, long start) throws IOException {
+        metrics.recordSince(timer, start);
+        metrics.add("csv.rows_written", rows);
+        metrics.add("csv.bytes_written", Files.size(file));
+    }
+
     private void warn(String file, int row, String line, String reason) {
-        System.out.println("[WARN] " + file + " line " + row + " skipped (" + reason + "): " + line);
+        metrics.increment("csv.rows_skipped");
+        System.err.println("[WARN] " + file + " line " + row + " skipped (" + reason + "): " + line);
     }
 }
\ No newline at end of file
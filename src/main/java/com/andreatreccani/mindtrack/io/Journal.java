@@ -0,0 +1,436 @@
+package com.andreatreccani.mindtrack.io;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Append-only log of the changes made since the CSV files were last rewritten.
+ * One event per line, same ";" separator as the CSV files.
+ *
+ * Several processes may share the file. Appends happen under <file>.lock, after applying the events other
+ * processes appended since (see start), so every process sees the log in the same order; a change that must be
+ * checked against them (a booking and its free slot) is made in memory in that same critical section. The lock
+ * file also counts compactions (generation) and the bytes they dropped, so a process can tell where it stands in
+ * the new file.
+ */
+public class Journal implements Closeable {
+
+    public enum FsyncPolicy {
+        ALWAYS,   // force to disk after every append
+        PERIODIC, // force at most once per interval
+        NEVER     // leave it to the OS
+    }
+
+    public interface Listener {
+        void bookingCreated(Booking b);
+        void bookingCancelled(int bookingId);
+        void userAdded(User u);
+        void userRemoved(int userId);
+        // taken: the slots taken once the event's change was made, -1 in lines written before it was journaled
+        void availabilityChanged(int objectiveId, boolean available, int taken);
+    }
+
+    /**
+     * A change whose checks must see the events of every process (a booking needs a free slot): made in memory
+     * under the lock, see append(Change, boolean).
+     */
+    public interface Change {
+        /** Makes the change in memory; returns its events, or null to refuse it (nothing is written). */
+        String[] apply();
+
+        /**
+         * Reverses apply: its events could not be written, or were written but not forced to disk. Returns the
+         * events recording the reversal (appended in the second case), or null if nothing was reversed.
+         */
+        String[] undo();
+    }
+
+    /** What append(Change, boolean) did. */
+    public enum Appended {
+        WRITTEN,
+        REFUSED, // apply returned no events
+        LAGGED   // not applied: merge what another process compacted first (see takeLagged), then try again
+    }
+
+    private static final String SEP = ";";
+
+    private static final String BOOKING_CREATED = "BOOKING_CREATED";
+    private static final String BOOKING_CANCELLED = "BOOKING_CANCELLED";
+    private static final String USER_ADDED = "USER_ADDED";
+    private static final String USER_REMOVED = "USER_REMOVED";
+    private static final String AVAILABILITY = "AVAILABILITY";
+
+    private static final int GENERATION_SLOT = 0;
+    private static final int DROPPED_SLOT = 1;
+    private static final int TAIL_CHUNK = 64 * 1024;
+
+    private final Path file;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalMs;
+
+    private FileChannel channel;
+    private long lastSync;
+
+    private final LockFile lock;
+    private final LockFile compaction;
+    private Listener follower;
+    private long generation;
+    private long dropped;
+    private long readUpTo; // bytes of the current file whose events are in memory here
+    private boolean lagged;
+
+    public Journal(Path file, FsyncPolicy policy, long fsyncIntervalMs) throws IOException {
+        this.file = file;
+        this.policy = policy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        Path parent = file.getParent();
+        if (parent != null) Files.createDirectories(parent);
+        this.lock = LockFile.of(file.resolveSibling(file.getFileName() + ".lock"));
+        this.compaction = LockFile.of(file.resolveSibling(file.getFileName() + ".compact.lock"));
+        this.channel = open();
+    }
+
+    public Path file() { return file; }
+
+    // -------------------------
+    // EVENTS
+    // -------------------------
+
+    public static String bookingCreated(Booking b) {
+        return BOOKING_CREATED + SEP + b.id() + SEP + b.userId() + SEP + b.objectiveId() + SEP + b.date();
+    }
+
+    public static String bookingCancelled(Booking b) {
+        return BOOKING_CANCELLED + SEP + b.id();
+    }
+
+    public static String userAdded(User u) {
+        return USER_ADDED + SEP + u.id() + SEP + u.firstName() + SEP + u.lastName() + SEP + u.email();
+    }
+
+    public static String userRemoved(User u) {
+        return USER_REMOVED + SEP + u.id();
+    }
+
+    // the count too: with capacities the flag alone does not say how many slots are left
+    public static String availabilityChanged(Objective o) {
+        return AVAILABILITY + SEP + o.id() + SEP + (o.isAvailable() ? "YES" : "NO") + SEP + o.taken();
+    }
+
+    // -------------------------
+    // WRITE
+    // -------------------------
+
+    /** Appends the events in a single write, so one operation never ends up half-logged. */
+    public synchronized void append(String... events) throws IOException {
+        appendShared(events);
+        syncByPolicy();
+    }
+
+    /** Same as append, but never forces to disk: the caller will sync() once for the whole group. */
+    public synchronized void appendDeferred(String... events) throws IOException {
+        appendShared(events);
+    }
+
+    /**
+     * Applies change under the lock, once the events other processes appended are applied here, and appends
+     * its events in the same critical section: no process can append in between, so what apply checked still
+     * holds in the log. If the write fails, the file is cut back to where it was (nobody can have read the
+     * partial line yet) and the change undone before the error is rethrown. If the fsync fails, the events may
+     * already have been read by another process: the change is undone and the events of undo appended instead
+     * (see revert). deferred: no fsync, as appendDeferred.
+     */
+    public synchronized Appended append(Change change, boolean deferred) throws IOException {
+        try (LockFile.Held held = lock.lock()) {
+            follow(held);
+            // memory lacks events that are only in the CSV files now: apply could not see them
+            if (lagged) return Appended.LAGGED;
+
+            String[] events = change.apply();
+            if (events == null) return Appended.REFUSED;
+            try {
+                writeWhole(events);
+            } catch (IOException | RuntimeException e) {
+                change.undo();
+                throw e;
+            }
+        }
+        if (deferred) return Appended.WRITTEN;
+        try {
+            syncByPolicy();
+        } catch (IOException e) {
+            revert(change, e);
+            throw e;
+        }
+        return Appended.WRITTEN;
+    }
+
+    // the lock is held for the tail read and one write; the fsync happens after it is released
+    private void appendShared(String... events) throws IOException {
+        try (LockFile.Held held = lock.lock()) {
+            follow(held);
+            writeWhole(events);
+        }
+    }
+
+    // under the lock: a failed write is cut back to where it started, nobody can have read the partial line yet
+    private void writeWhole(String... events) throws IOException {
+        long end = channel.size();
+        try {
+            write(events);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.truncate(end);
+            } catch (IOException t) {
+                e.addSuppressed(t);
+            }
+            throw e;
+        }
+        readUpTo = channel.size();
+    }
+
+    // Events written but not forced to disk: too late to cut them off, so the change is undone under the lock
+    // (after the events appended since, which may already have undone it) and the reversal appended.
+    // Best effort: the disk just failed, whatever fails here is added to failure.
+    private void revert(Change change, IOException failure) {
+        try (LockFile.Held held = lock.lock()) {
+            follow(held);
+            String[] events = change.undo();
+            if (events != null && events.length > 0) {
+                writeWhole(events);
+                channel.force(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void syncByPolicy() throws IOException {
+        switch (policy) {
+            case ALWAYS -> sync();
+            case PERIODIC -> {
+                if (System.currentTimeMillis() - lastSync >= fsyncIntervalMs) sync();
+            }
+            case NEVER -> { }
+        }
+    }
+
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+        lastSync = System.currentTimeMillis();
+    }
+
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Drops the first {@code offset} bytes once they have been folded into the CSV files.
+     * Events appended after that point (by concurrent sessions or processes) are kept.
+     */
+    public synchronized void discardUpTo(long offset) throws IOException {
+        try (LockFile.Held held = lock.lock()) {
+            follow(held);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long pos = offset;
+                long size = in.size();
+                while (pos < size) pos += in.transferTo(pos, size - pos, out);
+                out.force(true);
+            }
+
+            channel.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = open();
+
+            generation = held.get(GENERATION_SLOT) + 1;
+            dropped = held.get(DROPPED_SLOT) + offset;
+            held.set(DROPPED_SLOT, dropped);
+            held.set(GENERATION_SLOT, generation);
+            readUpTo -= offset;
+        }
+    }
+
+    /** Held by the process compacting the journal; null if another one is. */
+    public LockFile.Held tryLockCompaction() throws IOException {
+        return compaction.tryLock();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (policy != FsyncPolicy.NEVER) channel.force(false);
+        channel.close();
+    }
+
+    // -------------------------
+    // SHARED
+    // -------------------------
+
+    /**
+     * Replays the journal into listener, which from then on also receives the events other processes append,
+     * before each append of ours (and on catchUp). Returns the number of events applied.
+     */
+    public synchronized int start(Listener listener) throws IOException {
+        try (LockFile.Held held = lock.lock()) {
+            generation = held.get(GENERATION_SLOT);
+            dropped = held.get(DROPPED_SLOT);
+            reopenIfReplaced();
+            readUpTo = 0;
+            lagged = false;
+            follower = listener;
+            return readTail();
+        }
+    }
+
+    /** Applies the events appended by other processes; returns the offset up to which the file is applied. */
+    public synchronized long catchUp() throws IOException {
+        try (LockFile.Held held = lock.lock()) {
+            follow(held);
+            return readUpTo;
+        }
+    }
+
+    /**
+     * True (once) if another process compacted events this one had not read yet: they are in the CSV files now,
+     * so memory must be merged with them.
+     */
+    public synchronized boolean takeLagged() {
+        boolean was = lagged;
+        lagged = false;
+        return was;
+    }
+
+    // under the lock
+    private void follow(LockFile.Held held) throws IOException {
+        long g = held.get(GENERATION_SLOT);
+        if (g != generation) {
+            // compacted by another process: the file was replaced, minus its first (d - dropped) bytes
+            long d = held.get(DROPPED_SLOT);
+            long position = dropped + readUpTo;
+            if (position >= d) {
+                readUpTo = position - d;
+            } else {
+                readUpTo = 0;
+                lagged = true;
+            }
+            generation = g;
+            dropped = d;
+            reopenIfReplaced();
+        }
+        if (follower != null) readTail();
+    }
+
+    private void reopenIfReplaced() throws IOException {
+        channel.close();
+        channel = open();
+    }
+
+    // events of the complete lines from readUpTo to the end of the file
+    private int readTail() throws IOException {
+        int events = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            byte[] bytes = new byte[TAIL_CHUNK];
+            long pos = readUpTo; // file offset of bytes[0]
+            int filled = 0;
+            while (true) {
+                if (filled == bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2); // a very long line
+                int n = in.read(ByteBuffer.wrap(bytes, filled, bytes.length - filled), pos + filled);
+                if (n <= 0) break;
+                filled += n;
+
+                int start = 0;
+                for (int i = 0; i < filled; i++) {
+                    if (bytes[i] != '\n') continue;
+                    String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                    if (!line.isBlank() && dispatch(line, follower, "offset " + (pos + start))) events++;
+                    start = i + 1;
+                }
+                System.arraycopy(bytes, start, bytes, 0, filled - start);
+                pos += start;
+                filled -= start;
+            }
+            // a torn last line (being written, or left by a crash) is read again next time
+            readUpTo = pos;
+        }
+        return events;
+    }
+
+    // -------------------------
+    // REPLAY
+    // -------------------------
+
+    public int replay(Listener listener) throws IOException {
+        int applied = 0;
+        try (BufferedReader br = Files.newBufferedReader(file)) {
+            String line;
+            int row = 0;
+            while ((line = br.readLine()) != null) {
+                row++;
+                if (line.isBlank()) continue;
+                if (dispatch(line, listener, "line " + row)) applied++;
+            }
+        }
+        return applied;
+    }
+
+    private boolean dispatch(String line, Listener listener, String where) {
+        String[] p = line.split(SEP, -1);
+        try {
+            switch (p[0]) {
+                case BOOKING_CREATED -> listener.bookingCreated(new Booking(
+                        Integer.parseInt(p[1]), Integer.parseInt(p[2]),
+                        Integer.parseInt(p[3]), LocalDate.parse(p[4])));
+                case BOOKING_CANCELLED -> listener.bookingCancelled(Integer.parseInt(p[1]));
+                case USER_ADDED -> listener.userAdded(new User(Integer.parseInt(p[1]), p[2], p[3], p[4]));
+                case USER_REMOVED -> listener.userRemoved(Integer.parseInt(p[1]));
+                case AVAILABILITY -> listener.availabilityChanged(Integer.parseInt(p[1]), "YES".equals(p[2]),
+                        p.length > 3 ? Integer.parseInt(p[3]) : -1);
+                default -> {
+                    warn(where, line, "Unknown event");
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception ex) {
+            // typically a torn last line after a crash
+            warn(where, line, ex.getMessage());
+            return false;
+        }
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private void write(String... events) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String e : events) sb.append(e).append('\n');
+
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void warn(String where, String line, String reason) {
+        System.err.println("[WARN] " + file.getFileName() + " " + where + " skipped (" + reason + "): " + line);
+    }
+}
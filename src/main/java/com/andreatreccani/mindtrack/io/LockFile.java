@@ -0,0 +1,119 @@
+package com.andreatreccani.mindtrack.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small sidecar file shared by every process using the same data folder: an exclusive FileChannel lock, held
+ * only around a short critical section, plus a few counters (8 bytes each, e.g. the version of a data file).
+ *
+ * There is one instance per file and JVM (see of): FileChannel locks belong to the whole JVM, so threads queue
+ * on a ReentrantLock first, and the channel stays open (closing one may release every lock of the JVM on the file).
+ */
+public final class LockFile {
+
+    private static final Map<Path, LockFile> OPEN = new ConcurrentHashMap<>();
+
+    private final FileChannel channel;
+    private final ReentrantLock local = new ReentrantLock();
+    private FileLock held;
+
+    private LockFile(Path file) throws IOException {
+        Path parent = file.getParent();
+        if (parent != null) Files.createDirectories(parent);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public static LockFile of(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        LockFile lf = OPEN.get(key);
+        if (lf != null) return lf;
+        synchronized (OPEN) {
+            lf = OPEN.get(key);
+            if (lf == null) {
+                lf = new LockFile(key);
+                OPEN.put(key, lf);
+            }
+            return lf;
+        }
+    }
+
+    /** Blocks until no other thread or process holds the file. Reentrant. */
+    public Held lock() throws IOException {
+        local.lock();
+        try {
+            if (local.getHoldCount() == 1) held = channel.lock();
+        } catch (IOException | RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+        return new Held();
+    }
+
+    /** Like lock, but returns null at once if another thread or process holds the file. */
+    public Held tryLock() throws IOException {
+        if (!local.tryLock()) return null;
+        try {
+            if (local.getHoldCount() == 1) {
+                held = channel.tryLock();
+                if (held == null) {
+                    local.unlock();
+                    return null;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+        return new Held();
+    }
+
+    /** A counter read without locking: may lag behind a concurrent update (writers update it last). */
+    public long peek(int slot) throws IOException {
+        return read(slot);
+    }
+
+    private long read(int slot) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+        long pos = (long) slot * Long.BYTES;
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) return 0; // never written
+        }
+        return buf.flip().getLong();
+    }
+
+    public final class Held implements AutoCloseable {
+
+        private Held() {}
+
+        public long get(int slot) throws IOException {
+            return read(slot);
+        }
+
+        public void set(int slot, long value) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(Long.BYTES).putLong(value).flip();
+            long pos = (long) slot * Long.BYTES;
+            while (buf.hasRemaining()) channel.write(buf, pos + buf.position());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (local.getHoldCount() == 1) {
+                    held.release();
+                    held = null;
+                }
+            } finally {
+                local.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.andreatreccani.mindtrack.io;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary copy of the three CSV files, used to skip CSV parsing on a warm start.
+ * The CSV files stay the reference format: the snapshot is only trusted when it is newer than all of them.
+ *
+ * Layout (big endian):
+ * magic, version, user count, objective count, booking count (int each)
+ * users:      id, first name, last name, email
+ * objectives: id, title, period, coins (int), available (byte), capacity (int, since version 2)
+ * bookings:   id, user id, objective id, date (int epoch day)
+ * CRC32 of everything above (long)
+ * Strings are an int byte length followed by UTF-8 bytes.
+ */
+public class SnapshotStorage {
+
+    public record Snapshot(List<User> users, List<Objective> objectives, List<Booking> bookings) {}
+
+    private static final int MAGIC = 0x4D54534E; // "MTSN"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+    private static final int BUFFER_BYTES = 1024 * 1024;
+
+    private final Path file;
+
+    public SnapshotStorage(Path file) {
+        this.file = file;
+    }
+
+    public Path file() { return file; }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /** True only if the snapshot exists and is strictly newer than every given file. */
+    public boolean isNewerThan(List<Path> files) throws IOException {
+        if (!Files.exists(file)) return false;
+        FileTime snapshotTime = Files.getLastModifiedTime(file);
+        for (Path f : files) {
+            if (Files.exists(f) && Files.getLastModifiedTime(f).compareTo(snapshotTime) >= 0) return false;
+        }
+        return true;
+    }
+
+    // -------------------------
+    // READ
+    // -------------------------
+
+    public Snapshot read() throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES + Long.BYTES) throw new IOException("snapshot truncated");
+            if (size > Integer.MAX_VALUE) throw new IOException("snapshot too large to map");
+
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int bodyEnd = (int) size - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate().limit(bodyEnd));
+            if (crc.getValue() != buf.getLong(bodyEnd)) throw new IOException("snapshot checksum mismatch");
+
+            if (buf.getInt() != MAGIC) throw new IOException("not a MindTrack snapshot");
+            int version = buf.getInt();
+            if (version < 1 || version > VERSION) throw new IOException("unsupported snapshot version " + version);
+
+            int userCount = buf.getInt();
+            int objectiveCount = buf.getInt();
+            int bookingCount = buf.getInt();
+
+            byte[] scratch = new byte[256];
+
+            List<User> users = new ArrayList<>(userCount);
+            for (int i = 0; i < userCount; i++) {
+                int id = buf.getInt();
+                String first = readString(buf, scratch);
+                String last = readString(buf, scratch);
+                String email = readString(buf, scratch);
+                users.add(new User(id, first, last, email));
+            }
+
+            List<Objective> objectives = new ArrayList<>(objectiveCount);
+            for (int i = 0; i < objectiveCount; i++) {
+                int id = buf.getInt();
+                String title = readString(buf, scratch);
+                String period = readString(buf, scratch);
+                int coins = buf.getInt();
+                boolean available = buf.get() != 0;
+                int capacity = version >= 2 ? buf.getInt() : 1;
+                objectives.add(new Objective(id, title, period, coins, capacity, available));
+            }
+
+            List<Booking> bookings = new ArrayList<>(bookingCount);
+            for (int i = 0; i < bookingCount; i++) {
+                bookings.add(new Booking(buf.getInt(), buf.getInt(), buf.getInt(), LocalDate.ofEpochDay(buf.getInt())));
+            }
+
+            if (buf.position() != bodyEnd) throw new IOException("snapshot has trailing data");
+            return new Snapshot(users, objectives, bookings);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException & co: the counts do not match the content
+            throw new IOException("corrupted snapshot (" + e + ")", e);
+        }
+    }
+
+    private String readString(ByteBuffer buf, byte[] scratch) {
+        int len = buf.getInt();
+        byte[] bytes = len <= scratch.length ? scratch : new byte[len];
+        buf.get(bytes, 0, len);
+        return new String(bytes, 0, len, StandardCharsets.UTF_8);
+    }
+
+    // -------------------------
+    // WRITE
+    // -------------------------
+
+    /** Written to a temp file and moved in place, so a crash never leaves a half-written snapshot. */
+    public void write(Collection<User> users, Collection<Objective> objectives, Collection<Booking> bookings) throws IOException {
+        Path parent = file.getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Out out = new Out(ch);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(users.size());
+            out.putInt(objectives.size());
+            out.putInt(bookings.size());
+
+            for (User u : users) {
+                out.putInt(u.id());
+                out.putString(u.firstName());
+                out.putString(u.lastName());
+                out.putString(u.email());
+            }
+            for (Objective o : objectives) {
+                out.putInt(o.id());
+                out.putString(o.title());
+                out.putString(o.period());
+                out.putInt(o.coins());
+                out.putByte(o.isAvailable() ? 1 : 0);
+                out.putInt(o.capacity());
+            }
+            for (Booking b : bookings) {
+                out.putInt(b.id());
+                out.putInt(b.userId());
+                out.putInt(b.objectiveId());
+                out.putInt((int) b.date().toEpochDay());
+            }
+
+            out.finish();
+            ch.force(false);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Buffered channel writer that keeps a running CRC of everything written.
+    private static final class Out {
+
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+        private final CRC32 crc = new CRC32();
+
+        Out(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void putByte(int b) throws IOException {
+            ensure(1);
+            buf.put((byte) b);
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(Integer.BYTES);
+            buf.putInt(v);
+        }
+
+        void putString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            int off = 0;
+            while (off < bytes.length) {
+                ensure(1);
+                int n = Math.min(buf.remaining(), bytes.length - off);
+                buf.put(bytes, off, n);
+                off += n;
+            }
+        }
+
+        void finish() throws IOException {
+            drain();
+            buf.putLong(crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) drain();
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.andreatreccani.mindtrack.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/** A data file was rewritten by another process since this one last read it: nothing was written. */
+public class StaleFileException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Path file; // Path is not serializable
+
+    public StaleFileException(Path file) {
+        super(file + " was changed by another process");
+        this.file = file;
+    }
+
+    public Path file() { return file; }
+}
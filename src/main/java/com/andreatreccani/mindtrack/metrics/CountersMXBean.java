@@ -0,0 +1,7 @@
+package com.andreatreccani.mindtrack.metrics;
+
+import java.util.Map;
+
+public interface CountersMXBean {
+    Map<String, Long> getCounters();
+}
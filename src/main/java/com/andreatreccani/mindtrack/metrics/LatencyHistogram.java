@@ -0,0 +1,71 @@
+package com.andreatreccani.mindtrack.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two nanosecond buckets.
+ * Recording is a couple of LongAdder increments, cheap enough to leave on;
+ * percentiles are reported as the upper bound of their bucket (at most 2x off).
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        // bucket i holds values in [2^(i-1), 2^i)
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    @Override
+    public long getCount() { return count.sum(); }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    @Override
+    public double getMaxMicros() { return maxNanos.get() / 1000.0; }
+
+    @Override
+    public double getP50Micros() { return percentileMicros(0.50); }
+
+    @Override
+    public double getP99Micros() { return percentileMicros(0.99); }
+
+    public double percentileMicros(double p) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets[i].sum();
+            n += snapshot[i];
+        }
+        if (n == 0) return 0;
+
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upper, maxNanos.get()) / 1000.0;
+            }
+        }
+        return getMaxMicros();
+    }
+}
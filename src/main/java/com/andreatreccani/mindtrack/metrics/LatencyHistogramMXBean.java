@@ -0,0 +1,9 @@
+package com.andreatreccani.mindtrack.metrics;
+
+public interface LatencyHistogramMXBean {
+    long getCount();
+    double getMeanMicros();
+    double getP50Micros();
+    double getP99Micros();
+    double getMaxMicros();
+}
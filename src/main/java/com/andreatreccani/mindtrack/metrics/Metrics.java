@@ -0,0 +1,133 @@
+package com.andreatreccani.mindtrack.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Named latency histograms and counters, created on first use.
+ *
+ * Naming: op.* = menu actions, csv.* = CsvStorage (read/write/export), save.* = persistence failures.
+ * Optionally exposed over JMX (domain com.andreatreccani.mindtrack) and dumped to a file periodically.
+ */
+public class Metrics implements CountersMXBean {
+
+    private static final String JMX_DOMAIN = "com.andreatreccani.mindtrack";
+
+    private final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private volatile MBeanServer jmx;
+    private ScheduledExecutorService dumper;
+
+    // -------------------------
+    // RECORDING
+    // -------------------------
+
+    /** Records the time elapsed since {@code startNanos} (a System.nanoTime() value). */
+    public void recordSince(String timer, long startNanos) {
+        timer(timer).record(System.nanoTime() - startNanos);
+    }
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long delta) {
+        counters.computeIfAbsent(counter, k -> new LongAdder()).add(delta);
+    }
+
+    public LatencyHistogram timer(String name) {
+        LatencyHistogram h = timers.get(name);
+        if (h != null) return h;
+        return timers.computeIfAbsent(name, k -> {
+            LatencyHistogram created = new LatencyHistogram();
+            register("type=Latency,name=" + k, created);
+            return created;
+        });
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((k, v) -> snapshot.put(k, v.sum()));
+        return snapshot;
+    }
+
+    // -------------------------
+    // REPORTING
+    // -------------------------
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("operation | count | mean us | p50 us | p99 us | max us\n");
+        new TreeMap<>(timers).forEach((name, h) -> sb.append(String.format(
+                "%s | %d | %.1f | %.1f | %.1f | %.1f\n",
+                name, h.getCount(), h.getMeanMicros(), h.getP50Micros(), h.getP99Micros(), h.getMaxMicros())));
+
+        sb.append("counter | value\n");
+        getCounters().forEach((name, v) -> sb.append(name).append(" | ").append(v).append('\n'));
+        return sb.toString();
+    }
+
+    /** Registers the counters and every histogram (current and future) as platform MBeans. */
+    public void registerMBeans() {
+        jmx = ManagementFactory.getPlatformMBeanServer();
+        register("type=Counters", this);
+        timers.forEach((name, h) -> register("type=Latency,name=" + name, h));
+    }
+
+    /** Rewrites {@code file} with the report every {@code intervalSeconds}, on a daemon thread. */
+    public synchronized void startPeriodicDump(Path file, long intervalSeconds) {
+        if (intervalSeconds < 1) throw new IllegalArgumentException("stats interval must be at least 1 second: " + intervalSeconds);
+        if (dumper != null) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                dump(file);
+            } catch (IOException e) {
+                System.err.println("[WARN] could not write stats to " + file + ": " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (dumper != null) dumper.shutdownNow();
+        dumper = null;
+    }
+
+    public void dump(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, "# " + LocalDateTime.now() + "\n" + report());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void register(String keys, Object bean) {
+        MBeanServer server = jmx;
+        if (server == null) return;
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":" + keys);
+            if (!server.isRegistered(name)) server.registerMBean(bean, name);
+        } catch (Exception e) {
+            System.err.println("[WARN] could not register MBean " + keys + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,28 +1,44 @@
 package com.andreatreccani.mindtrack.model;
 
+/**
+ * An objective with capacity slots: available while some are free. taken counts the bookings holding a slot and
+ * never exceeds capacity: bookings beyond it (only in data written by hand or by older versions) hold none.
+ * Bookings change it through Repository, which makes each change atomic per objective.
+ */
 public class Objective {
 
     private final int id;
     private final String title;
     private final String period;
     private final int coins;
-    private boolean available;
+    private final int capacity;
+    private volatile int taken;
 
     public Objective(int id, String title, String period, int coins, boolean available) {
+        this(id, title, period, coins, 1, available);
+    }
+
+    // until its bookings are counted (see IntegrityChecker), an objective read as unavailable is full
+    public Objective(int id, String title, String period, int coins, int capacity, boolean available) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
         this.id = id;
         this.title = title;
         this.period = period;
         this.coins = coins;
-        this.available = available;
+        this.capacity = capacity;
+        this.taken = available ? 0 : capacity;
     }
 
     public int id() { return id; }
     public String title() { return title; }
     public String period() { return period; }
     public int coins() { return coins; }
-    public boolean isAvailable() { return available; }
+    public int capacity() { return capacity; }
+    public int taken() { return taken; }
+    public int remaining() { return Math.max(0, capacity - taken); }
+    public boolean isAvailable() { return taken < capacity; }
 
-    public void setAvailable(boolean available) {
-        this.available = available;
+    public void setTaken(int taken) {
+        this.taken = taken;
     }
-}
\ No newline at end of file
+}
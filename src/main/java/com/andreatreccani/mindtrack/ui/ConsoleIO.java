@@ -1,20 +1,43 @@
 package com.andreatreccani.mindtrack.ui;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.time.LocalDate;
-import java.util.Scanner;
+import java.time.format.DateTimeParseException;
 
 public class ConsoleIO {
 
-    private final Scanner scanner = new Scanner(System.in);
+    private static final int OUT_BUFFER_CHARS = 64 * 1024;
 
+    // PrintWriter methods are synchronized: background threads can print too
+    private final PrintWriter out = new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out, Charset.defaultCharset()), OUT_BUFFER_CHARS));
+    private final BufferedReader in = new BufferedReader(new InputStreamReader(System.in, Charset.defaultCharset()));
+
+    /** Prints one line and flushes it. */
     public void println(String msg) {
-        System.out.println(msg);
+        out.println(msg);
+        out.flush();
+    }
+
+    /** Buffers one line without flushing: for long listings, followed by flush(). */
+    public void append(CharSequence line) {
+        out.append(line).println();
+    }
+
+    public void flush() {
+        out.flush();
     }
 
     public String readNonEmptyString(String prompt) {
         while (true) {
-            System.out.print(prompt);
-            String input = scanner.nextLine().trim();
+            String input = readLine(prompt).trim();
             if (!input.isEmpty()) return input;
         }
     }
@@ -22,27 +45,48 @@ public class ConsoleIO {
     public int readInt(String prompt, int min, int max) {
         while (true) {
             try {
-                System.out.print(prompt);
-                int value = Integer.parseInt(scanner.nextLine());
+                int value = Integer.parseInt(readLine(prompt));
                 if (value >= min && value <= max) return value;
-            } catch (Exception ignored) {}
+            } catch (NumberFormatException ignored) {}
+        }
+    }
+
+    /** Blank input = null. */
+    public Integer readOptionalInt(String prompt) {
+        while (true) {
+            String input = readLine(prompt).trim();
+            if (input.isEmpty()) return null;
+            try {
+                return Integer.parseInt(input);
+            } catch (NumberFormatException ignored) {}
         }
     }
 
     public LocalDate readDate(String prompt) {
         while (true) {
             try {
-                System.out.print(prompt);
-                return LocalDate.parse(scanner.nextLine());
-            } catch (Exception ignored) {}
+                return LocalDate.parse(readLine(prompt));
+            } catch (DateTimeParseException ignored) {}
         }
     }
 
     public String readEmail(String prompt) {
         while (true) {
-            System.out.print(prompt);
-            String email = scanner.nextLine();
+            String email = readLine(prompt);
             if (email.contains("@") && email.contains(".")) return email;
         }
     }
-}
\ No newline at end of file
+
+    /** Prints the prompt (flushing anything buffered) and reads one line; EndOfInputException once input is closed. */
+    public String readLine(String prompt) {
+        out.print(prompt);
+        out.flush();
+        try {
+            String line = in.readLine();
+            if (line == null) throw new EndOfInputException();
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.andreatreccani.mindtrack.ui;
+
+/** Standard input was closed (Ctrl-D, end of a piped file) while a line was expected: the menu exits. */
+public class EndOfInputException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public EndOfInputException() {
+        super("end of input");
+    }
+}
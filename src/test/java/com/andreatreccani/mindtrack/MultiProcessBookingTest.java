@@ -0,0 +1,173 @@
+package com.andreatreccani.mindtrack;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.io.Journal;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Several MindTrack processes booking and cancelling on one data folder at once (--batch): every booking they
+ * reported is in the files exactly once, and no objective ends up with more bookings than its capacity.
+ */
+class MultiProcessBookingTest {
+
+    private static final int PROCESSES = 4;
+    private static final int USERS = 30;
+    private static final int OBJECTIVES = 40;
+    private static final int COMMANDS = 150;
+
+    private static final Pattern BOOKED = Pattern.compile("\\d+;OK;booking (\\d+)");
+    private static final Pattern CANCELLED = Pattern.compile("\\d+;OK;cancelled (\\d+)");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentProcessesNeitherLoseNorOverbook() throws Exception {
+        Path data = dir.resolve(Path.of("src", "main", "resources", "data"));
+        Files.createDirectories(data);
+        writeData(data);
+
+        List<Process> processes = new ArrayList<>();
+        List<Path> outputs = new ArrayList<>();
+        Random random = new Random(21);
+        for (int p = 0; p < PROCESSES; p++) {
+            Path batch = dir.resolve("batch" + p + ".txt");
+            Files.write(batch, commands(random));
+            Path out = dir.resolve("out" + p + ".txt");
+            outputs.add(out);
+            processes.add(startApp(out, "--batch", batch.toString()));
+        }
+        for (Process p : processes) {
+            assertTrue(p.waitFor(2, TimeUnit.MINUTES), "process did not finish");
+            // 1: some commands were refused, as expected
+            assertTrue(p.exitValue() <= 1, "process failed");
+        }
+
+        Set<Integer> reported = new HashSet<>();
+        Set<Integer> cancelled = new HashSet<>();
+        for (Path out : outputs) {
+            for (String line : Files.readAllLines(out)) {
+                assertFalse(line.contains("could not save"), line);
+                Matcher m = BOOKED.matcher(line);
+                if (m.matches()) assertTrue(reported.add(Integer.parseInt(m.group(1))), "booking id reported twice: " + line);
+                m = CANCELLED.matcher(line);
+                if (m.matches()) assertTrue(cancelled.add(Integer.parseInt(m.group(1))), "cancelled twice: " + line);
+            }
+        }
+        assertTrue(reported.size() > OBJECTIVES, "too few bookings to mean anything: " + reported.size());
+
+        Map<Integer, Booking> stored = storedBookings(data);
+        Set<Integer> expected = new HashSet<>(reported);
+        expected.removeAll(cancelled);
+        assertEquals(expected, stored.keySet());
+
+        Map<Integer, Integer> perObjective = new HashMap<>();
+        Set<Long> pairs = new HashSet<>();
+        for (Booking b : stored.values()) {
+            perObjective.merge(b.objectiveId(), 1, Integer::sum);
+            assertTrue(pairs.add(((long) b.userId() << 32) | b.objectiveId()), "booked twice by one user: " + b);
+        }
+        perObjective.forEach((objective, booked) ->
+                assertTrue(booked <= capacity(objective), "objective " + objective + " has " + booked + " bookings"));
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private static int capacity(int objectiveId) {
+        return 1 + objectiveId % 3;
+    }
+
+    private static void writeData(Path data) throws Exception {
+        List<String> users = new ArrayList<>(List.of("id;first_name;last_name;email"));
+        for (int i = 1; i <= USERS; i++) users.add(i + ";First" + i + ";Last" + i + ";user" + i + "@example.com");
+        Files.write(data.resolve("users.csv"), users);
+
+        List<String> objectives = new ArrayList<>(List.of("id;title;period;coins;available;capacity"));
+        for (int i = 1; i <= OBJECTIVES; i++) objectives.add(i + ";Objective " + i + ";weekly;10;YES;" + capacity(i));
+        Files.write(data.resolve("objectives.csv"), objectives);
+
+        Files.write(data.resolve("bookings.csv"), List.of("id;user_id;objective_id;date"));
+    }
+
+    // mostly bookings, some cancellations of ids any process may have handed out
+    private static List<String> commands(Random random) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < COMMANDS; i++) {
+            if (random.nextInt(5) == 0) {
+                lines.add("cancel;" + (1 + random.nextInt(PROCESSES * COMMANDS)));
+            } else {
+                lines.add("book;" + (1 + random.nextInt(USERS)) + ";" + (1 + random.nextInt(OBJECTIVES)) + ";2099-01-01");
+            }
+        }
+        return lines;
+    }
+
+    private Process startApp(Path out, String... args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(App.class.getName());
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command)
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(out.toFile())
+                .start();
+    }
+
+    // bookings.csv plus the events still in journal.log, each booking id at most once
+    private static Map<Integer, Booking> storedBookings(Path data) throws Exception {
+        CsvStorage storage = new CsvStorage(data.resolve("users.csv"), data.resolve("objectives.csv"), data.resolve("bookings.csv"));
+        Map<Integer, Booking> stored = new HashMap<>();
+        for (Booking b : storage.readBookings()) assertNull(stored.put(b.id(), b), "booking " + b.id() + " stored twice");
+
+        try (Journal journal = new Journal(data.resolve("journal.log"), Journal.FsyncPolicy.NEVER, 0)) {
+            journal.replay(new Journal.Listener() {
+                @Override
+                public void bookingCreated(Booking b) {
+                    Booking before = stored.put(b.id(), b);
+                    assertTrue(before == null || before.equals(b), "booking " + b.id() + " created twice");
+                }
+
+                @Override
+                public void bookingCancelled(int bookingId) {
+                    stored.remove(bookingId);
+                }
+
+                @Override
+                public void userAdded(User u) {}
+
+                @Override
+                public void userRemoved(int userId) {}
+
+                @Override
+                public void availabilityChanged(int objectiveId, boolean available, int taken) {}
+            });
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,137 @@
+package com.andreatreccani.mindtrack.api;
+
+import com.andreatreccani.mindtrack.core.AppContext;
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.io.Journal;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The HTTP API on an ephemeral port: listing, booking and cancelling, and the 4xx answers to bad requests. */
+class ApiServerTest {
+
+    private static final String DATE = LocalDate.now().plusDays(1).toString();
+
+    @TempDir
+    Path dir;
+
+    private AppContext ctx;
+    private ApiServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void start() throws Exception {
+        Files.write(dir.resolve("users.csv"), List.of("id;first_name;last_name;email",
+                "1;Ada;Lovelace;ada@example.com", "2;Alan;Turing;alan@example.com"));
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Read a book;weekly;10;YES;1", "2;Run 5k;daily;5;YES;2"));
+        Files.write(dir.resolve("bookings.csv"), List.of("id;user_id;objective_id;date"));
+
+        ctx = new AppContext(new ConsoleIO(),
+                new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv")));
+        ctx.useJournal(new Journal(dir.resolve("journal.log"), Journal.FsyncPolicy.NEVER, 0), Long.MAX_VALUE);
+        ctx.loadAll();
+        server = new ApiServer(ctx, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        server.stop();
+        ctx.close();
+    }
+
+    @Test
+    void listsObjectives() throws Exception {
+        HttpResponse<String> r = send("GET", "/objectives", null);
+        assertEquals(200, r.statusCode());
+        assertEquals("1;Read a book;weekly;10;YES;1\n2;Run 5k;daily;5;YES;2\n", r.body());
+
+        r = send("GET", "/objectives?sort=-coins&limit=1", null);
+        assertEquals(200, r.statusCode());
+        assertEquals("1;Read a book;weekly;10;YES;1\n", r.body());
+
+        // the last column is the slots still free
+        send("POST", "/bookings", "user_id=1&objective_id=1&date=" + DATE);
+        send("POST", "/bookings", "user_id=1&objective_id=2&date=" + DATE);
+        assertEquals("1;Read a book;weekly;10;NO;0\n2;Run 5k;daily;5;YES;1\n", send("GET", "/objectives", null).body());
+    }
+
+    @Test
+    void booksAndCancels() throws Exception {
+        HttpResponse<String> r = send("POST", "/bookings", "user_id=1&objective_id=1&date=" + DATE);
+        assertEquals(201, r.statusCode());
+        assertTrue(r.body().startsWith("booking "), r.body());
+        int id = Integer.parseInt(r.body().trim().substring("booking ".length()));
+
+        assertEquals("2;Run 5k;daily;5;YES;2\n", send("GET", "/objectives?available=true", null).body());
+        assertEquals(409, send("POST", "/bookings", "user_id=2&objective_id=1&date=" + DATE).statusCode());
+        assertEquals(409, send("POST", "/bookings", "user_id=1&objective_id=1&date=" + DATE).statusCode());
+        assertEquals(404, send("POST", "/bookings", "user_id=9&objective_id=2&date=" + DATE).statusCode());
+
+        r = send("DELETE", "/bookings/" + id, null);
+        assertEquals(200, r.statusCode());
+        assertEquals("cancelled " + id + "\n", r.body());
+        assertEquals(404, send("DELETE", "/bookings/" + id, null).statusCode());
+        assertEquals(201, send("POST", "/bookings", "user_id=2&objective_id=1&date=" + DATE).statusCode());
+    }
+
+    @Test
+    void rejectsBadRequests() throws Exception {
+        // BadRequestException: missing parameter, unknown sort
+        HttpResponse<String> r = send("POST", "/bookings", "user_id=1&date=" + DATE);
+        assertEquals(400, r.statusCode());
+        assertTrue(r.body().contains("missing parameter 'objective_id'"), r.body());
+        assertEquals(400, send("GET", "/objectives?sort=title", null).statusCode());
+
+        assertEquals(400, send("POST", "/bookings", "user_id=x&objective_id=1&date=" + DATE).statusCode());
+        assertEquals(400, send("POST", "/bookings", "user_id=1&objective_id=1&date=tomorrow").statusCode());
+        assertEquals(400, send("POST", "/bookings", "user_id=1&objective_id=1&date=2000-01-01").statusCode());
+        assertEquals(405, send("PUT", "/objectives", null).statusCode());
+    }
+
+    @Test
+    void servesOnlyKnownPaths() throws Exception {
+        send("POST", "/bookings", "user_id=1&objective_id=2&date=" + DATE);
+        HttpResponse<String> r = send("GET", "/users/1/dashboard", null);
+        assertEquals(200, r.statusCode());
+        assertTrue(r.body().startsWith("bookings;1\ncoins;5\nperiod;daily;1\n"), r.body());
+
+        assertEquals(404, send("GET", "/users/9/dashboard", null).statusCode());
+        assertEquals(404, send("GET", "/users/dashboard", null).statusCode());
+        assertEquals(400, send("GET", "/users/x/dashboard", null).statusCode());
+        assertEquals(404, send("GET", "/users/1/2/dashboard", null).statusCode());
+        assertEquals(404, send("POST", "/users/5", "first_name=Grace&last_name=Hopper&email=grace@example.com").statusCode());
+        assertEquals(201, send("POST", "/users", "first_name=Grace&last_name=Hopper&email=grace@example.com").statusCode());
+
+        assertEquals(400, send("DELETE", "/bookings/x", null).statusCode());
+        assertEquals(404, send("DELETE", "/bookings/1/2", null).statusCode());
+        assertEquals(404, send("GET", "/objectives/1", null).statusCode());
+        assertEquals(404, send("POST", "/exports", null).statusCode());
+    }
+
+    private HttpResponse<String> send(String method, String path, String form) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path));
+        if (form == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.header("Content-Type", "application/x-www-form-urlencoded")
+                    .method(method, HttpRequest.BodyPublishers.ofString(form));
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,130 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Bookings in one file per month: the first run splits bookings.csv, saves rewrite only the months changed. */
+class BookingShardsTest {
+
+    private static final YearMonth NOW = YearMonth.now();
+    private static final FileTime LONG_AGO = FileTime.fromMillis(0);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void writeFiles() throws Exception {
+        Files.write(dir.resolve("users.csv"), List.of("id;first_name;last_name;email",
+                "1;Ada;Lovelace;ada@example.com", "2;Alan;Turing;alan@example.com",
+                "3;Grace;Hopper;grace@example.com", "4;Edsger;Dijkstra;edsger@example.com"));
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Read a book;weekly;10;YES;10"));
+        Files.write(dir.resolve("bookings.csv"), List.of("id;user_id;objective_id;date",
+                "1;1;1;" + NOW.minusMonths(14).atDay(3),
+                "2;2;1;" + NOW.minusMonths(3).atDay(20),
+                "3;3;1;" + NOW.atDay(1)));
+    }
+
+    @Test
+    void splitsTheBookingsFileOnce() throws Exception {
+        CsvStorage storage = storage();
+        assertTrue(storage.useBookingShards(dir.resolve("bookings")));
+        assertFalse(Files.exists(dir.resolve("bookings.csv")));
+        assertTrue(Files.exists(dir.resolve("bookings.csv.migrated")));
+        assertEquals(List.of("month;file;rows",
+                        NOW.minusMonths(14) + ";" + shard(NOW.minusMonths(14)).getFileName() + ";1",
+                        NOW.minusMonths(3) + ";" + shard(NOW.minusMonths(3)).getFileName() + ";1",
+                        NOW + ";" + shard(NOW).getFileName() + ";1"),
+                Files.readAllLines(dir.resolve("bookings").resolve("manifest.csv")));
+        assertEquals(List.of("id;user_id;objective_id;date", "2;2;1;" + NOW.minusMonths(3).atDay(20)),
+                Files.readAllLines(shard(NOW.minusMonths(3))));
+
+        // from now on the manifest is used
+        assertFalse(storage().useBookingShards(dir.resolve("bookings")));
+    }
+
+    @Test
+    void savesOnlyTheMonthsChanged() throws Exception {
+        CsvStorage storage = storage();
+        storage.useBookingShards(dir.resolve("bookings"));
+        AppContext ctx = open(storage);
+        for (YearMonth m : List.of(NOW.minusMonths(14), NOW.minusMonths(3), NOW)) {
+            Files.setLastModifiedTime(shard(m), LONG_AGO);
+        }
+
+        LocalDate nextMonth = NOW.plusMonths(1).atDay(15);
+        Booking b = ctx.bookingService().book(4, 1, nextMonth).booking();
+        assertNotNull(b);
+        ctx.close();
+
+        assertEquals(List.of("id;user_id;objective_id;date", b.id() + ";4;1;" + nextMonth),
+                Files.readAllLines(shard(NOW.plusMonths(1))));
+        for (YearMonth m : List.of(NOW.minusMonths(14), NOW.minusMonths(3), NOW)) {
+            assertEquals(LONG_AGO, Files.getLastModifiedTime(shard(m)), m.toString());
+        }
+    }
+
+    @Test
+    void lazyLoadReadsThePastMonthsInTheBackground() throws Exception {
+        CsvStorage storage = storage();
+        storage.useBookingShards(dir.resolve("bookings"));
+        AppContext ctx = new AppContext(new ConsoleIO(), storage);
+        ctx.useLazyOldShards(true);
+        ctx.loadAll();
+
+        // waits for the past months
+        assertEquals(3, ctx.bookings().size());
+        assertNotNull(ctx.findBookingById(1));
+        assertEquals(3, ctx.findObjectiveById(1).taken());
+        // already booked in a past month
+        assertNull(ctx.bookingService().book(1, 1, NOW.plusMonths(1).atDay(1)).booking());
+        ctx.close();
+    }
+
+    @Test
+    void aMissingMonthFileIsNotAnError() throws Exception {
+        CsvStorage storage = storage();
+        storage.useBookingShards(dir.resolve("bookings"));
+        Files.delete(shard(NOW));
+
+        AppContext ctx = open(storage);
+        assertEquals(2, ctx.bookings().size());
+        assertEquals(2, ctx.findObjectiveById(1).taken());
+        ctx.close();
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private CsvStorage storage() {
+        return new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv"));
+    }
+
+    private AppContext open(CsvStorage storage) throws Exception {
+        AppContext ctx = new AppContext(new ConsoleIO(), storage);
+        ctx.loadAll();
+        return ctx;
+    }
+
+    private Path shard(YearMonth month) {
+        return dir.resolve("bookings").resolve("bookings_" + month + ".csv");
+    }
+}
@@ -0,0 +1,104 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Bulk import: new ids, rejected rows reported with their line, and nothing kept when the final save fails. */
+class BulkImporterTest {
+
+    @TempDir
+    Path dir;
+
+    private AppContext ctx;
+
+    @BeforeEach
+    void open() throws Exception {
+        Files.write(dir.resolve("users.csv"), List.of("id;first_name;last_name;email", "1;Ada;Lovelace;ada@example.com"));
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Read a book;weekly;10;YES;3"));
+        Files.write(dir.resolve("bookings.csv"), List.of("id;user_id;objective_id;date"));
+        ctx = new AppContext(new ConsoleIO(),
+                new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv")));
+        ctx.loadAll();
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        ctx.close();
+    }
+
+    @Test
+    void importsValidUsersAndReportsTheRest() throws Exception {
+        Path file = Files.write(dir.resolve("import.csv"), List.of("id;first_name;last_name;email",
+                "1;Alan;Turing;alan@example.com",
+                "2;;Nameless;nameless@example.com",
+                "3;Grace;Hopper;not-an-email",
+                "4;Ada;Again;ada@example.com",
+                "5;Three;columns"));
+
+        BulkImporter.Result r = ctx.importFile(BulkImporter.Kind.USERS, file);
+        assertEquals(1, r.imported());
+        assertEquals(4, r.rejected());
+        List<String> rejects = Files.readAllLines(r.rejectsFile());
+        assertEquals("line;reason;row", rejects.get(0));
+        assertTrue(rejects.contains("3;Missing name;2;;Nameless;nameless@example.com"));
+        assertTrue(rejects.contains("4;Invalid email;3;Grace;Hopper;not-an-email"));
+        assertTrue(rejects.contains("5;Email already exists;4;Ada;Again;ada@example.com"));
+
+        // the file's id is ignored: the next free one is used
+        assertEquals(2, ctx.users().size());
+        assertTrue(Files.readAllLines(dir.resolve("users.csv")).contains("2;Alan;Turing;alan@example.com"));
+    }
+
+    @Test
+    void importsObjectivesAcrossChunks() throws Exception {
+        int rows = BulkImporter.CHUNK + 10;
+        List<String> lines = new ArrayList<>(List.of("id;title;period;coins;available;capacity"));
+        for (int i = 1; i <= rows; i++) lines.add(i + ";Objective " + i + ";daily;" + (i % 50) + ";YES;2");
+        lines.add("0;Negative;daily;-1;YES;1");
+        Path file = Files.write(dir.resolve("import.csv"), lines);
+
+        BulkImporter.Result r = ctx.importFile(BulkImporter.Kind.OBJECTIVES, file);
+        assertEquals(rows, r.imported());
+        assertEquals(1, r.rejected());
+        assertEquals(rows + 1, ctx.objectives().size());
+        assertEquals(rows + 2, Files.readAllLines(dir.resolve("objectives.csv")).size());
+    }
+
+    @Test
+    void removesTheImportedRowsWhenTheSaveFails() throws Exception {
+        Path file = Files.write(dir.resolve("import.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Run 5k;daily;5;YES;1", "2;Swim;monthly;20;YES;2"));
+        // the objectives file cannot be replaced: a non-empty directory is in its place
+        Path objectives = dir.resolve("objectives.csv");
+        Files.delete(objectives);
+        Files.createDirectory(objectives);
+        Files.writeString(objectives.resolve("keep"), "");
+
+        assertThrows(Exception.class, () -> ctx.importFile(BulkImporter.Kind.OBJECTIVES, file));
+        assertEquals(1, ctx.objectives().size());
+        assertNull(ctx.findObjectiveById(2));
+        assertTrue(ctx.findObjectives(new ObjectiveQuery(null, null, null, false, "swim", null, 0)).isEmpty());
+
+        // once the file can be written again, only what was there before is saved
+        Files.delete(objectives.resolve("keep"));
+        Files.delete(objectives);
+        ctx.close();
+        assertEquals(List.of("id;title;period;coins;available;capacity", "1;Read a book;weekly;10;YES;3"),
+                Files.readAllLines(objectives));
+    }
+}
@@ -0,0 +1,80 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.io.Journal;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Many sessions booking the last slots of one objective at once, with and without a journal: exactly capacity
+ * of them get one, the others find the objective full.
+ */
+class ConcurrentBookingTest {
+
+    private static final int THREADS = 16;
+    private static final int USERS = 200;
+    private static final int CAPACITY = 5;
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void capacityIsNeverExceeded(boolean journal) throws Exception {
+        List<String> users = new ArrayList<>(List.of("id;first_name;last_name;email"));
+        for (int i = 1; i <= USERS; i++) users.add(i + ";First" + i + ";Last" + i + ";user" + i + "@example.com");
+        Files.write(dir.resolve("users.csv"), users);
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Objective 1;weekly;10;YES;" + CAPACITY));
+        Files.write(dir.resolve("bookings.csv"), List.of("id;user_id;objective_id;date"));
+
+        AppContext ctx = new AppContext(new ConsoleIO(),
+                new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv")));
+        if (journal) ctx.useJournal(new Journal(dir.resolve("journal.log"), Journal.FsyncPolicy.NEVER, 0), Long.MAX_VALUE);
+        ctx.loadAll();
+
+        Map<BookingService.Outcome, Integer> outcomes = new EnumMap<>(BookingService.Outcome.class);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<BookingService.Result>> results = new ArrayList<>();
+            for (int user = 1; user <= USERS; user++) {
+                int userId = user;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return ctx.bookingService().book(userId, 1, LocalDate.now().plusDays(1));
+                }));
+            }
+            start.countDown();
+            for (Future<BookingService.Result> r : results) outcomes.merge(r.get().outcome(), 1, Integer::sum);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(Map.of(BookingService.Outcome.BOOKED, CAPACITY,
+                BookingService.Outcome.OBJECTIVE_NOT_AVAILABLE, USERS - CAPACITY), outcomes);
+        Objective o = ctx.objectives().iterator().next();
+        assertEquals(CAPACITY, o.taken());
+        assertFalse(o.isAvailable());
+        assertEquals(CAPACITY, ctx.bookings().size());
+        ctx.close();
+    }
+}
@@ -0,0 +1,120 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.io.Journal;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Edits made to the data files by another tool while the application runs: applied by id, except rows the
+ * journal has newer changes for, and never for the application's own writes.
+ */
+class DataWatcherTest {
+
+    private static final LocalDate DATE = LocalDate.now().plusDays(1);
+    private static final long WAIT_MS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    private AppContext ctx;
+
+    @BeforeEach
+    void start() throws Exception {
+        Files.write(dir.resolve("users.csv"), List.of("id;first_name;last_name;email",
+                "1;Ada;Lovelace;ada@example.com", "2;Alan;Turing;alan@example.com"));
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Read a book;weekly;10;YES;2", "2;Run 5k;daily;5;YES;2"));
+        Files.write(dir.resolve("bookings.csv"), List.of("id;user_id;objective_id;date"));
+
+        ctx = new AppContext(new ConsoleIO(),
+                new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv")));
+        ctx.useJournal(new Journal(dir.resolve("journal.log"), Journal.FsyncPolicy.NEVER, 0), Long.MAX_VALUE);
+        ctx.loadAll();
+        ctx.startWatcher();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        ctx.close();
+    }
+
+    @Test
+    void appliesRowsChangedByAnotherTool() throws Exception {
+        Files.write(dir.resolve("users.csv"), List.of("id;first_name;last_name;email",
+                "1;Ada;Lovelace;ada@example.com", "2;Alan;Turing;turing@example.com", "3;Grace;Hopper;grace@example.com"));
+
+        await(() -> ctx.findUserById(3) != null);
+        assertEquals("turing@example.com", ctx.findUserById(2).email());
+        assertEquals(3, ctx.users().size());
+    }
+
+    @Test
+    void keepsRowsTheJournalHasNewerChangesFor() throws Exception {
+        Booking journaled = ctx.bookingService().book(1, 1, DATE).booking();
+        assertNotNull(journaled);
+
+        // written from an older copy: knows nothing of the journaled booking
+        Files.write(dir.resolve("bookings.csv"), List.of("id;user_id;objective_id;date", "50;2;2;" + DATE));
+
+        // slots are recounted after the rows are applied
+        await(() -> ctx.findBookingById(50) != null && ctx.findObjectiveById(2).taken() == 1);
+        assertNotNull(ctx.findBookingById(journaled.id()));
+        assertEquals(1, ctx.findObjectiveById(1).taken());
+    }
+
+    @Test
+    void ignoresItsOwnWrites() throws Exception {
+        ctx.saveUsers();
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Read a book;weekly;10;YES;2", "2;Run 10k;daily;5;YES;2"));
+
+        // the users.csv notification came first: handled (skipped) by the time objectives.csv is reloaded
+        await(() -> ctx.findObjectiveById(2).title().equals("Run 10k"));
+        assertEquals(0, ctx.metrics().timer("reload.users.csv").getCount());
+        assertTrue(ctx.metrics().timer("reload.objectives.csv").getCount() > 0);
+    }
+
+    @Test
+    void redefinedObjectiveKeepsItsSlotsAndTotals() throws Exception {
+        Booking b = ctx.bookingService().book(1, 1, DATE).booking();
+        assertNotNull(b);
+
+        // the file says nothing is taken: the booking still holds its slot
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Read a book;monthly;40;YES;2", "2;Run 5k;daily;5;YES;2"));
+
+        // the totals are recounted right after the objective is swapped
+        await(() -> ctx.findObjectiveById(1).coins() == 40 && ctx.dashboard(1).totalCoins() == 40);
+        Objective o = ctx.findObjectiveById(1);
+        assertEquals(1, o.taken());
+        assertEquals(1, ctx.dashboard(1).bookingsPerPeriod().get("monthly"));
+
+        assertTrue(ctx.bookingService().cancel(b.id()).ok());
+        assertEquals(0, ctx.findObjectiveById(1).taken());
+        assertEquals(0, ctx.dashboard(1).totalCoins());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "not reloaded within " + WAIT_MS + " ms");
+            Thread.sleep(20);
+        }
+    }
+}
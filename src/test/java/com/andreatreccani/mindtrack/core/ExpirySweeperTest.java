@@ -0,0 +1,91 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The expiry sweep: bookings dated before today are cancelled and their slots freed; today and later are kept. */
+class ExpirySweeperTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void cancelsOnlyPastBookings() throws Exception {
+        write(2, List.of("1;Read a book;weekly;10;YES;2", "2;Run 5k;daily;5;YES;1"),
+                List.of("1;1;1;" + TODAY.minusDays(1), "2;2;1;" + TODAY, "3;1;2;" + TODAY.minusYears(1)));
+
+        AppContext ctx = open();
+        assertFalse(ctx.findObjectiveById(1).isAvailable());
+        assertFalse(ctx.findObjectiveById(2).isAvailable());
+
+        assertEquals(2, ctx.expirePastBookings());
+        assertNull(ctx.findBookingById(1));
+        assertNotNull(ctx.findBookingById(2));
+        assertNull(ctx.findBookingById(3));
+        assertEquals(1, ctx.findObjectiveById(1).taken());
+        assertTrue(ctx.findObjectiveById(2).isAvailable());
+        assertEquals(2L, ctx.metrics().getCounters().get("sweeper.expired"));
+
+        // nothing left to expire
+        assertEquals(0, ctx.expirePastBookings());
+        ctx.close();
+
+        assertEquals(List.of("id;user_id;objective_id;date", "2;2;1;" + TODAY), Files.readAllLines(dir.resolve("bookings.csv")));
+    }
+
+    @Test
+    void cancelsMoreThanOneBatch() throws Exception {
+        int past = ExpirySweeper.BATCH_SIZE * 2 + 7;
+        List<String> bookings = new ArrayList<>();
+        for (int i = 1; i <= past; i++) bookings.add(i + ";" + i + ";1;" + TODAY.minusDays(1 + i % 30));
+        bookings.add((past + 1) + ";" + (past + 1) + ";1;" + TODAY.plusDays(1));
+        write(past + 1, List.of("1;Read a book;weekly;10;YES;" + (past + 1)), bookings);
+
+        AppContext ctx = open();
+        assertEquals(past, ctx.expirePastBookings());
+        assertEquals(1, ctx.bookings().size());
+        assertEquals(1, ctx.findObjectiveById(1).taken());
+        ctx.close();
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private void write(int users, List<String> objectives, List<String> bookings) throws Exception {
+        List<String> userRows = new ArrayList<>(List.of("id;first_name;last_name;email"));
+        for (int id = 1; id <= users; id++) userRows.add(id + ";User;" + id + ";user" + id + "@example.com");
+        Files.write(dir.resolve("users.csv"), userRows);
+
+        List<String> objectiveRows = new ArrayList<>(List.of("id;title;period;coins;available;capacity"));
+        objectiveRows.addAll(objectives);
+        Files.write(dir.resolve("objectives.csv"), objectiveRows);
+
+        List<String> bookingRows = new ArrayList<>(List.of("id;user_id;objective_id;date"));
+        bookingRows.addAll(bookings);
+        Files.write(dir.resolve("bookings.csv"), bookingRows);
+    }
+
+    private AppContext open() throws Exception {
+        AppContext ctx = new AppContext(new ConsoleIO(),
+                new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv")));
+        ctx.loadAll();
+        return ctx;
+    }
+}
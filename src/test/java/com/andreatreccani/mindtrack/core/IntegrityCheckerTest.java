@@ -0,0 +1,113 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The integrity check finds each kind of issue once; a repair removes the bad bookings, recounts and saves. */
+class IntegrityCheckerTest {
+
+    private static final LocalDate DATE = LocalDate.now().plusDays(1);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void writeFiles() throws Exception {
+        Files.write(dir.resolve("users.csv"), List.of("id;first_name;last_name;email",
+                "1;Ada;Lovelace;ada@example.com", "2;Alan;Turing;alan@example.com"));
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Read a book;weekly;10;YES;2", "2;Run 5k;daily;5;YES;1", "3;Swim;monthly;20;YES;1",
+                "4;Cook;daily;3;YES;5"));
+        Files.write(dir.resolve("bookings.csv"), List.of("id;user_id;objective_id;date",
+                "1;1;1;" + DATE,
+                "2;1;1;" + DATE, // same user and objective as 1
+                "3;9;2;" + DATE, // no user 9
+                "4;2;7;" + DATE, // no objective 7
+                "7;2;2;" + DATE,
+                "8;1;3;" + DATE,
+                "9;2;3;" + DATE)); // objective 3 has one slot
+    }
+
+    @Test
+    void reportsEachIssue() throws Exception {
+        AppContext ctx = open();
+        ctx.findObjectiveById(4).setTaken(3); // no bookings
+
+        IntegrityReport report = ctx.checkIntegrity(false);
+        assertEquals(List.of(3), ids(report.missingUser()));
+        assertEquals(List.of(4), ids(report.missingObjective()));
+        assertEquals(List.of(2), ids(report.duplicates()));
+        assertEquals(List.of(), objectiveIds(report.undercounted()));
+        assertEquals(List.of(4), objectiveIds(report.overcounted()));
+        // objective 2 counts the booking of the missing user too, until it is removed
+        assertEquals(List.of(2, 3), objectiveIds(report.overCapacity()));
+        assertEquals(7, report.bookings());
+        assertEquals(0, report.repaired());
+        assertTrue(report.lines().contains("  booking 2: user 1 already booked objective 1"));
+
+        // only checked: nothing changed
+        assertEquals(7, ctx.bookings().size());
+        ctx.close();
+    }
+
+    @Test
+    void repairRemovesTheBadBookingsAndSaves() throws Exception {
+        AppContext ctx = open();
+        ctx.findObjectiveById(4).setTaken(3);
+
+        IntegrityReport report = ctx.checkIntegrity(true);
+        // bookings 2, 3, 4 and 9 (the later one beyond capacity), slots of objectives 1 and 4
+        assertEquals(6, report.repaired());
+        assertEquals(List.of(1, 7, 8), ids(new ArrayList<>(ctx.bookings())));
+        assertEquals(1, ctx.findObjectiveById(1).taken());
+        assertEquals(1, ctx.findObjectiveById(2).taken());
+        assertEquals(0, ctx.findObjectiveById(4).taken());
+        assertTrue(ctx.checkIntegrity(false).ok());
+        ctx.close();
+
+        assertEquals(List.of("id;user_id;objective_id;date", "1;1;1;" + DATE, "7;2;2;" + DATE, "8;1;3;" + DATE),
+                Files.readAllLines(dir.resolve("bookings.csv")));
+        ctx = open();
+        IntegrityReport again = ctx.checkIntegrity(true);
+        assertTrue(again.ok());
+        assertFalse(again.lines().stream().anyMatch(l -> l.startsWith("Repaired")));
+        ctx.close();
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private AppContext open() throws Exception {
+        AppContext ctx = new AppContext(new ConsoleIO(),
+                new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv")));
+        ctx.loadAll();
+        return ctx;
+    }
+
+    private static List<Integer> ids(List<Booking> bookings) {
+        List<Integer> ids = new ArrayList<>();
+        for (Booking b : bookings) ids.add(b.id());
+        return ids;
+    }
+
+    private static List<Integer> objectiveIds(List<IntegrityReport.SlotCount> counts) {
+        List<Integer> ids = new ArrayList<>();
+        for (IntegrityReport.SlotCount c : counts) ids.add(c.objective().id());
+        return ids;
+    }
+}
@@ -0,0 +1,110 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.io.CsvStorage;
+import com.andreatreccani.mindtrack.io.Journal;
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.User;
+import com.andreatreccani.mindtrack.ui.ConsoleIO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Changes kept in journal.log until compaction: replayed on top of the CSV files at startup, then folded into them. */
+class JournalReplayTest {
+
+    private static final LocalDate DATE = LocalDate.now().plusDays(1);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void writeFiles() throws Exception {
+        Files.write(dir.resolve("users.csv"), List.of("id;first_name;last_name;email",
+                "1;Ada;Lovelace;ada@example.com", "2;Alan;Turing;alan@example.com"));
+        Files.write(dir.resolve("objectives.csv"), List.of("id;title;period;coins;available;capacity",
+                "1;Read a book;weekly;10;YES;3", "2;Run 5k;daily;5;YES;1"));
+        Files.write(dir.resolve("bookings.csv"), List.of("id;user_id;objective_id;date"));
+    }
+
+    @Test
+    void replaysTheJournalOnTopOfTheFiles() throws Exception {
+        AppContext ctx = open(Long.MAX_VALUE);
+        User grace = ctx.registerUser("Grace", "Hopper", "grace@example.com");
+        Booking kept = ctx.bookingService().book(1, 1, DATE).booking();
+        Booking cancelled = ctx.bookingService().book(2, 1, DATE).booking();
+        ctx.bookingService().book(grace.id(), 2, DATE);
+        assertTrue(ctx.bookingService().cancel(cancelled.id()).ok());
+        ctx.close();
+
+        // below the threshold: nothing was folded into the files yet
+        assertEquals(List.of("id;user_id;objective_id;date"), Files.readAllLines(dir.resolve("bookings.csv")));
+
+        ctx = open(Long.MAX_VALUE);
+        assertEquals("grace@example.com", ctx.findUserById(grace.id()).email());
+        assertEquals(kept, ctx.findBookingById(kept.id()));
+        assertNull(ctx.findBookingById(cancelled.id()));
+        assertEquals(1, ctx.findObjectiveById(1).taken());
+        assertEquals(1, ctx.findObjectiveById(2).taken());
+        assertEquals(2, ctx.bookings().size());
+        ctx.close();
+    }
+
+    @Test
+    void replayIsIdempotent() throws Exception {
+        AppContext ctx = open(Long.MAX_VALUE);
+        Booking b = ctx.bookingService().book(1, 1, DATE).booking();
+        ctx.close();
+
+        // the same events again, as after a crash between rewriting the files and emptying the journal
+        Path journal = dir.resolve("journal.log");
+        Files.write(journal, Files.readAllLines(journal), StandardOpenOption.APPEND);
+
+        ctx = open(Long.MAX_VALUE);
+        assertEquals(1, ctx.bookings().size());
+        assertEquals(b, ctx.findBookingById(b.id()));
+        assertEquals(1, ctx.findObjectiveById(1).taken());
+        ctx.close();
+    }
+
+    @Test
+    void compactionRewritesTheFilesAndEmptiesTheJournal() throws Exception {
+        // any append reaches the threshold
+        AppContext ctx = open(1);
+        User grace = ctx.registerUser("Grace", "Hopper", "grace@example.com");
+        Booking b = ctx.bookingService().book(grace.id(), 2, DATE).booking();
+        assertNotNull(b);
+        ctx.close();
+
+        assertEquals(0, Files.size(dir.resolve("journal.log")));
+        assertTrue(Files.readAllLines(dir.resolve("users.csv")).contains(grace.id() + ";Grace;Hopper;grace@example.com"));
+        assertEquals(List.of("id;user_id;objective_id;date", b.id() + ";" + grace.id() + ";2;" + DATE),
+                Files.readAllLines(dir.resolve("bookings.csv")));
+
+        // the files alone hold everything
+        AppContext csvOnly = new AppContext(new ConsoleIO(),
+                new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv")));
+        csvOnly.loadAll();
+        assertEquals(b, csvOnly.findBookingById(b.id()));
+        assertEquals(1, csvOnly.findObjectiveById(2).taken());
+        csvOnly.close();
+    }
+
+    private AppContext open(long compactThresholdBytes) throws Exception {
+        AppContext ctx = new AppContext(new ConsoleIO(),
+                new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv")));
+        ctx.useJournal(new Journal(dir.resolve("journal.log"), Journal.FsyncPolicy.NEVER, 0), compactThresholdBytes);
+        ctx.loadAll();
+        return ctx;
+    }
+}
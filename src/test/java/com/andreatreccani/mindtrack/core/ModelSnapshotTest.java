@@ -0,0 +1,171 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Reads through ModelSnapshot: the model as of one version whatever changes after, and keyset pages of objectives. */
+class ModelSnapshotTest {
+
+    private final Repository repo = new Repository();
+
+    @BeforeEach
+    void addObjectives() {
+        // ids 2, 4, ..., 50: pages are keyed by id, not by position
+        for (int id = 2; id <= 50; id += 2) repo.addObjective(new Objective(id, "Objective " + id, "daily", id, 1, true));
+    }
+
+    @Test
+    void pagesThroughEveryObjectiveOnce() {
+        List<Integer> seen = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        int after = Integer.MIN_VALUE;
+        while (true) {
+            List<Objective> page;
+            try (ModelSnapshot snap = repo.snapshot()) {
+                page = snap.objectivesAfter(after, 7);
+            }
+            if (page.isEmpty()) break;
+            sizes.add(page.size());
+            for (Objective o : page) seen.add(o.id());
+            after = page.get(page.size() - 1).id();
+        }
+
+        List<Integer> all = new ArrayList<>();
+        for (int id = 2; id <= 50; id += 2) all.add(id);
+        assertEquals(all, seen);
+        assertEquals(List.of(7, 7, 7, 4), sizes);
+    }
+
+    @Test
+    void pagesOfOneSnapshotIgnoreLaterChanges() {
+        try (ModelSnapshot snap = repo.snapshot()) {
+            assertEquals(List.of(2, 4, 6), ids(snap.objectivesAfter(Integer.MIN_VALUE, 3)));
+
+            repo.removeObjective(repo.findObjectiveById(8));
+            repo.addObjective(new Objective(7, "Objective 7", "daily", 7, 1, true));
+            assertEquals(List.of(8, 10, 12), ids(snap.objectivesAfter(6, 3)));
+        }
+
+        // the next page of a new snapshot: after the last id shown, whatever changed before it
+        try (ModelSnapshot snap = repo.snapshot()) {
+            assertEquals(List.of(7, 10, 12), ids(snap.objectivesAfter(6, 3)));
+            assertEquals(List.of(), ids(snap.objectivesAfter(50, 3)));
+        }
+    }
+
+    @Test
+    void seesTheModelAsOfItsVersion() {
+        LocalDate date = LocalDate.of(2026, 1, 10);
+        User ada = new User(1, "Ada", "Lovelace", "ada@example.com");
+        repo.addUser(ada);
+        repo.addUser(new User(2, "Alan", "Turing", "alan@example.com"));
+        Booking booking = new Booking(1, 1, 2, date);
+        repo.atomically(() -> repo.addBooking(booking) && repo.takeSlot(repo.findObjectiveById(2)));
+
+        try (ModelSnapshot snap = repo.snapshot()) {
+            List<User> users = snap.users();
+            List<String> objectives = format(snap.objectives());
+            List<String> available = format(snap.availableObjectives());
+            long mark = snap.availabilityMark();
+
+            // every kind of change after the snapshot was taken
+            repo.addUser(new User(3, "Grace", "Hopper", "grace@example.com"));
+            repo.removeUser(ada);
+            repo.atomically(() -> repo.removeBooking(booking) && repo.releaseSlot(repo.findObjectiveById(2)));
+            repo.atomically(() -> repo.addBooking(new Booking(2, 2, 4, date)) && repo.takeSlot(repo.findObjectiveById(4)));
+            Objective six = repo.findObjectiveById(6);
+            repo.replaceObjective(six, new Objective(6, "Renamed", "weekly", 99, 3, true));
+            repo.removeObjective(repo.findObjectiveById(8));
+
+            assertEquals(users, snap.users());
+            assertEquals(objectives, format(snap.objectives()));
+            assertEquals(available, format(snap.availableObjectives()));
+            assertEquals(List.of(booking), new ArrayList<>(snap.bookings()));
+            assertEquals(mark, snap.availabilityMark());
+
+            try (ModelSnapshot now = repo.snapshot()) {
+                assertEquals(List.of(2, 3), now.users().stream().map(User::id).toList());
+                assertEquals(List.of(new Booking(2, 2, 4, date)), new ArrayList<>(now.bookings()));
+                assertEquals("6|Renamed|weekly|99|3|0", format(now.objectivesAfter(4, 1)).get(0));
+                assertTrue(ids(now.availableObjectives()).contains(2));
+                assertFalse(ids(now.availableObjectives()).contains(4));
+                assertFalse(ids(now.objectives()).contains(8));
+                assertNotEquals(mark, now.availabilityMark());
+            }
+        }
+        assertNull(repo.findUserById(1));
+    }
+
+    @Test
+    void neverSeesHalfOfAChange() throws Exception {
+        for (int id = 1; id <= 20; id++) repo.addUser(new User(id, "User", "" + id, "user" + id + "@example.com"));
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+
+        // each booking and its slot change together: at any version, slots taken = bookings of the objective
+        Thread writer = new Thread(() -> {
+            try {
+                int id = 0;
+                for (int round = 0; round < 2000; round++) {
+                    Objective o = repo.findObjectiveById(2 + 2 * (round % 25));
+                    Booking b = new Booking(++id, 1 + round % 20, o.id(), LocalDate.of(2026, 1, 10));
+                    repo.atomically(() -> repo.addBooking(b) && repo.takeSlot(o));
+                    if (round % 3 != 0) repo.atomically(() -> repo.removeBooking(b) && repo.releaseSlot(o));
+                }
+            } catch (Throwable t) {
+                failed.set(t);
+            } finally {
+                done.set(true);
+            }
+        });
+        writer.start();
+
+        int reads = 0;
+        while (!done.get() || reads == 0) {
+            try (ModelSnapshot snap = repo.snapshot()) {
+                Map<Integer, Integer> booked = new HashMap<>();
+                for (Booking b : snap.bookings()) booked.merge(b.objectiveId(), 1, Integer::sum);
+                for (Objective o : snap.objectives()) {
+                    assertEquals(Math.min(booked.getOrDefault(o.id(), 0), o.capacity()), o.taken(), "objective " + o.id());
+                }
+                List<Integer> available = ids(snap.availableObjectives());
+                for (Objective o : snap.objectives()) assertEquals(o.isAvailable(), available.contains(o.id()));
+            }
+            reads++;
+        }
+        writer.join();
+        assertNull(failed.get());
+    }
+
+    // Objective has identity equality: compare what a reader sees
+    private static List<String> format(List<Objective> objectives) {
+        List<String> out = new ArrayList<>();
+        for (Objective o : objectives) {
+            out.add(o.id() + "|" + o.title() + "|" + o.period() + "|" + o.coins() + "|" + o.capacity() + "|" + o.taken());
+        }
+        return out;
+    }
+
+    private static List<Integer> ids(List<Objective> objectives) {
+        List<Integer> ids = new ArrayList<>();
+        for (Objective o : objectives) ids.add(o.id());
+        return ids;
+    }
+}
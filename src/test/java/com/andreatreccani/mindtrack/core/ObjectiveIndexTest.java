@@ -0,0 +1,109 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Objective;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Objective queries through the indexes against a plain scan of every objective. */
+class ObjectiveIndexTest {
+
+    private static final String[] PERIODS = {"daily", "Weekly", "monthly"};
+    private static final String[] TITLES = {"Read a book", "Run 5k", "Read the news", "Swim", "Run and read"};
+
+    private final Repository repo = new Repository();
+
+    @BeforeEach
+    void addObjectives() {
+        for (int id = 1; id <= 60; id++) {
+            repo.addObjective(new Objective(id, TITLES[id % TITLES.length] + " " + id, PERIODS[id % PERIODS.length],
+                    (id * 7) % 25, 1, true));
+        }
+        // every fourth one is full
+        for (int id = 4; id <= 60; id += 4) assertTrue(repo.takeSlot(repo.findObjectiveById(id)));
+    }
+
+    @Test
+    void findsWhatAScanFinds() {
+        for (String period : new String[] {null, "WEEKLY", " daily ", "yearly"}) {
+            for (Integer min : new Integer[] {null, 5}) {
+                for (Integer max : new Integer[] {null, 12, 3}) {
+                    for (boolean availableOnly : new boolean[] {false, true}) {
+                        for (String title : new String[] {null, "read", "run READ", "book 1", "nothing"}) {
+                            for (ObjectiveQuery.Sort sort : ObjectiveQuery.Sort.values()) {
+                                for (int limit : new int[] {0, 3}) {
+                                    ObjectiveQuery q = new ObjectiveQuery(period, min, max, availableOnly, title, sort, limit);
+                                    assertEquals(ids(scan(q)), ids(repo.findObjectives(q)), q.toString());
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void followsAvailabilityAndRemovals() {
+        ObjectiveQuery available = new ObjectiveQuery("monthly", null, null, true, null, ObjectiveQuery.Sort.ID, 0);
+        int before = repo.findObjectives(available).size();
+
+        Objective freed = repo.findObjectiveById(8); // monthly and full
+        assertTrue(repo.releaseSlot(freed));
+        assertTrue(ids(repo.findObjectives(available)).contains(8));
+
+        Objective taken = repo.findObjectiveById(2); // monthly and free
+        assertTrue(repo.takeSlot(taken));
+        assertTrue(repo.removeObjective(repo.findObjectiveById(5))); // monthly and free
+        assertEquals(before - 1, repo.findObjectives(available).size());
+        assertEquals(ids(scan(available)), ids(repo.findObjectives(available)));
+
+        ObjectiveQuery swim = new ObjectiveQuery(null, null, null, false, "swim", ObjectiveQuery.Sort.COINS_DESC, 0);
+        assertEquals(ids(scan(swim)), ids(repo.findObjectives(swim)));
+        assertTrue(repo.findObjectives(new ObjectiveQuery(null, 20, 10, false, null, null, 0)).isEmpty());
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private List<Objective> scan(ObjectiveQuery q) {
+        List<Objective> out = new ArrayList<>();
+        for (Objective o : repo.objectives()) {
+            if (q.period() != null && !o.period().equalsIgnoreCase(q.period().trim())) continue;
+            if (o.coins() < q.coinsFrom() || o.coins() > q.coinsTo()) continue;
+            if (q.availableOnly() && !o.isAvailable()) continue;
+            if (q.title() != null && !hasEveryWord(o.title(), q.title())) continue;
+            out.add(o);
+        }
+        Comparator<Objective> byCoins = Comparator.comparingInt(Objective::coins).thenComparingInt(Objective::id);
+        out.sort(switch (q.sort()) {
+            case ID -> Comparator.comparingInt(Objective::id);
+            case COINS_ASC -> byCoins;
+            case COINS_DESC -> byCoins.reversed();
+        });
+        return out.subList(0, Math.min(out.size(), q.limit()));
+    }
+
+    private static boolean hasEveryWord(String title, String words) {
+        List<String> titleWords = Arrays.asList(title.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"));
+        for (String w : words.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty() && !titleWords.contains(w)) return false;
+        }
+        return true;
+    }
+
+    private static List<Integer> ids(List<Objective> objectives) {
+        List<Integer> ids = new ArrayList<>();
+        for (Objective o : objectives) ids.add(o.id());
+        return ids;
+    }
+}
@@ -0,0 +1,72 @@
+package com.andreatreccani.mindtrack.core;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Dashboard totals kept by Repository on every booking change, also when objectives change under them. */
+class UserAggregatesTest {
+
+    private static final LocalDate DATE = LocalDate.of(2099, 1, 1);
+
+    private final Repository repo = new Repository();
+
+    @Test
+    void countsCoinsAndPeriods() {
+        repo.addUser(new User(1, "Ada", "Lovelace", "ada@example.com"));
+        repo.addObjective(new Objective(1, "Read", "weekly", 10, 1, true));
+        repo.addObjective(new Objective(2, "Run", " daily ", 5, 1, true));
+        repo.addBooking(new Booking(7, 1, 2, DATE));
+        repo.addBooking(new Booking(3, 1, 1, DATE));
+
+        UserDashboard d = repo.dashboard(1);
+        assertArrayEquals(new int[] { 3, 7 }, d.bookingIds());
+        assertEquals(15, d.totalCoins());
+        assertEquals(Map.of("daily", 1, "weekly", 1), d.bookingsPerPeriod());
+
+        repo.removeBooking(new Booking(3, 1, 1, DATE));
+        d = repo.dashboard(1);
+        assertArrayEquals(new int[] { 7 }, d.bookingIds());
+        assertEquals(5, d.totalCoins());
+        assertEquals(Map.of("daily", 1), d.bookingsPerPeriod());
+    }
+
+    @Test
+    void cancellingAfterTheObjectiveChangedSubtractsWhatWasAdded() {
+        repo.addUser(new User(1, "Ada", "Lovelace", "ada@example.com"));
+        Objective before = new Objective(1, "Read", "weekly", 10, 1, true);
+        repo.addObjective(before);
+        Booking b = new Booking(1, 1, 1, DATE);
+        repo.addBooking(b);
+
+        // redefined with other coins and period while the booking exists, as a reload of the file does
+        repo.removeObjective(before);
+        repo.addObjective(new Objective(1, "Read", "monthly", 40, 1, true));
+        repo.removeBooking(b);
+
+        UserDashboard d = repo.dashboard(1);
+        assertEquals(0, d.bookingCount());
+        assertEquals(0, d.totalCoins());
+        assertEquals(Map.of(), d.bookingsPerPeriod());
+    }
+
+    @Test
+    void cancellingABookingCountedWithoutItsObjective() {
+        repo.addUser(new User(1, "Ada", "Lovelace", "ada@example.com"));
+        Booking b = new Booking(1, 1, 9, DATE);
+        repo.addBooking(b);
+        repo.addObjective(new Objective(9, "Late", "daily", 25, 1, true));
+        repo.removeBooking(b);
+
+        UserDashboard d = repo.dashboard(1);
+        assertEquals(0, d.totalCoins());
+        assertEquals(Map.of(), d.bookingsPerPeriod());
+    }
+}
@@ -0,0 +1,153 @@
+package com.andreatreccani.mindtrack.io;
+
+import com.andreatreccani.mindtrack.model.Objective;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The byte-level reader against the line-by-line one: same rows, same skipped lines with the same reasons. */
+class ByteCsvReaderTest {
+
+    private static final String BOM = "\uFEFF"; // header only: skipped with it
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsUsersLikeTheLineReader() throws Exception {
+        write("users.csv", BOM + "id;first_name;last_name;email\r\n"
+                + "1;Ada;Lovelace;ada@example.com\r\n"
+                + "  2 ; Alan ;Turing;  alan@example.com  \n"
+                + "\n"
+                + "   \r\n"
+                + "3;\"Hopper; Grace\";Hopper;grace@example.com\n"
+                + "4;Zoë;Brontë;zoe@example.com;extra;columns\n"
+                + "5;Only;three\n"
+                + "x;Bad;Id;bad@example.com\n"
+                + "99999999999;Too;Big;big@example.com\n"
+                + "+6;Plus;Sign;plus@example.com\r"
+                + "7;Last;Line;no-newline@example.com");
+
+        Read bytes = read(CsvStorage.ReadMode.BYTES, CsvStorage::readUsers);
+        Read lines = read(CsvStorage.ReadMode.LINES, CsvStorage::readUsers);
+        assertEquals(lines, bytes);
+        // no quoting in either: the quoted name is split at its ';' like any other field
+        assertEquals(6, bytes.rows().size());
+        assertEquals(3, bytes.warnings().size());
+    }
+
+    @Test
+    void readsObjectivesLikeTheLineReader() throws Exception {
+        write("objectives.csv", BOM + "id;title;period;coins;available;capacity\n"
+                + "1;Read a book;weekly;10;YES;3\n"
+                + "2;Run 5k;daily;5;si\n"
+                + "3;Swim;daily;5;True; \n"
+                + "4;\"Quoted\";monthly;20;NO;2\n"
+                + "5;Walk;daily;x;YES;1\n"
+                + "6;Cook;daily;5;YES;many\n"
+                + "7;Paint;weekly;15;maybe;2\n"
+                + "8;Four;columns;only\n");
+
+        Read bytes = read(CsvStorage.ReadMode.BYTES, s -> format(s.readObjectives()));
+        Read lines = read(CsvStorage.ReadMode.LINES, s -> format(s.readObjectives()));
+        assertEquals(lines, bytes);
+        assertEquals(5, bytes.rows().size());
+        assertEquals(3, bytes.warnings().size());
+    }
+
+    @Test
+    void readsBookingsLikeTheLineReader() throws Exception {
+        write("bookings.csv", BOM + "id;user_id;objective_id;date\n"
+                + "1;1;1;2026-01-10\n"
+                + "2;1;2; 2026-02-28 \r\n"
+                + "3;2;1;2026-02-30\n"
+                + "4;2;2;2026-1-10\n"
+                + "5;2;3;10/01/2026\n"
+                + "6;x;3;2026-01-10\n"
+                + "7;3;3;2026-12-31;extra\n");
+
+        Read bytes = read(CsvStorage.ReadMode.BYTES, CsvStorage::readBookings);
+        Read lines = read(CsvStorage.ReadMode.LINES, CsvStorage::readBookings);
+        assertEquals(lines, bytes);
+        assertEquals(3, bytes.rows().size());
+        assertEquals(4, bytes.warnings().size());
+    }
+
+    @Test
+    void readsALargeFileInParallelRangesLikeTheLineReader() throws Exception {
+        // over twice the 8 MB minimum range: parsed as several ranges on the fork-join pool
+        StringBuilder sb = new StringBuilder(BOM + "id;user_id;objective_id;date\n");
+        int rows = 700_000;
+        for (int i = 1; i <= rows; i++) {
+            if (i % 99_991 == 0) sb.append(i).append(";bad;1;2026-01-10\n");
+            else if (i % 77_777 == 0) sb.append("\n");
+            else sb.append(i).append(';').append(i % 5000).append(';').append(i % 300).append(";2026-0")
+                    .append(1 + i % 9).append('-').append(10 + i % 18).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        write("bookings.csv", sb.toString());
+        assertTrue(Files.size(dir.resolve("bookings.csv")) > 16L * 1024 * 1024);
+
+        Read bytes = read(CsvStorage.ReadMode.BYTES, CsvStorage::readBookings);
+        Read lines = read(CsvStorage.ReadMode.LINES, CsvStorage::readBookings);
+        // rows in file order, warnings numbered by line across range boundaries
+        assertEquals(lines, bytes);
+        assertEquals(7, bytes.warnings().size());
+        assertEquals(rows - 7 - 9, bytes.rows().size());
+    }
+
+    @Test
+    void readsAnEmptyFileAsNoRows() throws Exception {
+        write("users.csv", "");
+        assertEquals(new Read(List.of(), List.of()), read(CsvStorage.ReadMode.BYTES, CsvStorage::readUsers));
+        assertFalse(Files.readString(dir.resolve("users.csv")).isEmpty());
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private interface Reader {
+        List<?> read(CsvStorage storage) throws Exception;
+    }
+
+    private record Read(List<?> rows, List<String> warnings) {}
+
+    private Read read(CsvStorage.ReadMode mode, Reader reader) throws Exception {
+        CsvStorage storage = new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv"));
+        storage.setReadMode(mode);
+
+        PrintStream err = System.err;
+        ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(warnings, true, StandardCharsets.UTF_8));
+        try {
+            List<?> rows = reader.read(storage);
+            return new Read(rows, warnings.toString(StandardCharsets.UTF_8).lines().toList());
+        } finally {
+            System.setErr(err);
+        }
+    }
+
+    // Objective has identity equality: compare what was read
+    private static List<String> format(List<Objective> objectives) {
+        List<String> out = new ArrayList<>();
+        for (Objective o : objectives) {
+            out.add(o.id() + "|" + o.title() + "|" + o.period() + "|" + o.coins() + "|" + o.capacity() + "|" + o.taken());
+        }
+        return out;
+    }
+
+    private void write(String name, String content) throws Exception {
+        Files.writeString(dir.resolve(name), content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+package com.andreatreccani.mindtrack.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** The encoder writes the same bytes as the BufferedWriter and string concatenation it replaced. */
+class CsvEncoderTest {
+
+    private static final String HEADER = "id;date;text";
+
+    private record Row(int id, LocalDate date, String text) {}
+
+    @Test
+    void writesTheSameBytesAsABufferedWriter() throws Exception {
+        List<Row> rows = List.of(
+                new Row(0, LocalDate.of(2026, 1, 10), "Read a book"),
+                new Row(-42, LocalDate.of(1, 2, 3), "Zoë Brontë"),
+                new Row(Integer.MIN_VALUE, LocalDate.of(-5, 12, 31), "€ 5 — 日本"),
+                new Row(Integer.MAX_VALUE, LocalDate.of(10_000, 1, 1), "🏃 run 😀"),
+                new Row(7, LocalDate.of(9999, 12, 31), null),
+                new Row(1_000_000, LocalDate.of(1969, 12, 31), ""));
+
+        assertArrayEquals(writer(rows), encoder(rows, false));
+    }
+
+    @Test
+    void writesTheSameBytesInParallelChunks() throws Exception {
+        // over the parallel threshold, with chunks ending in the middle of multi-byte text
+        List<Row> rows = new ArrayList<>();
+        String[] texts = {"Swim", "Zoë", "日本語のテキスト", "🏃‍♀️", "a;b"};
+        for (int i = 0; i < 250_000; i++) {
+            rows.add(new Row(i * 31 - 1_000_000, LocalDate.ofEpochDay(i % 40_000), texts[i % texts.length] + i));
+        }
+
+        byte[] expected = writer(rows);
+        assertArrayEquals(expected, encoder(rows, false));
+        assertArrayEquals(expected, encoder(rows, true));
+    }
+
+    @Test
+    void refusesAnUnpairedSurrogateLikeTheWriter() {
+        for (String text : new String[] {"\uD83C", "x\uDF43y", "\uD83Cz"}) {
+            List<Row> rows = List.of(new Row(1, LocalDate.of(2026, 1, 10), text));
+            assertThrows(CharacterCodingException.class, () -> writer(rows), text);
+            assertThrows(CharacterCodingException.class, () -> encoder(rows, false), text);
+        }
+    }
+
+    @Test
+    void returnsTheBytesWritten() throws Exception {
+        List<Row> rows = List.of(new Row(1, LocalDate.of(2026, 1, 10), "Zoë"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long written = CsvEncoder.write(Channels.newChannel(bytes), HEADER, rows, false, CsvEncoderTest::row);
+        assertEquals(bytes.size(), written);
+    }
+
+    // -------------------------
+    // HELPERS
+    // -------------------------
+
+    private static void row(Row r, CsvEncoder out) throws IOException {
+        out.integer(r.id()).sep().date(r.date()).sep().text(r.text());
+    }
+
+    private static byte[] encoder(List<Row> rows, boolean parallel) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CsvEncoder.write(Channels.newChannel(bytes), HEADER, rows, parallel, CsvEncoderTest::row);
+        return bytes.toByteArray();
+    }
+
+    // the previous path: Files.newBufferedWriter (UTF-8, reporting malformed input), one concatenated line per row
+    private static byte[] writer(List<Row> rows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT)))) {
+            bw.write(HEADER);
+            bw.newLine();
+            for (Row r : rows) {
+                bw.write(r.id() + ";" + r.date() + ";" + r.text());
+                bw.newLine();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
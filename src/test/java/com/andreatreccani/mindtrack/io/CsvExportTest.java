@@ -0,0 +1,96 @@
+package com.andreatreccani.mindtrack.io;
+
+import com.andreatreccani.mindtrack.model.Objective;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Export of the available objectives: plain or gzip, the delta against the previous export, and skipped repeats. */
+class CsvExportTest {
+
+    @TempDir
+    Path dir;
+
+    private CsvStorage storage;
+
+    @BeforeEach
+    void createStorage() {
+        storage = new CsvStorage(dir.resolve("users.csv"), dir.resolve("objectives.csv"), dir.resolve("bookings.csv"));
+        storage.setExportDir(dir.resolve("exports"));
+    }
+
+    @Test
+    void writesOnlyAvailableObjectives() throws Exception {
+        CsvStorage.Export export = storage.exportAvailableObjectives(List.of(
+                new Objective(1, "Read a book", "weekly", 10, 2, true),
+                new Objective(2, "Run 5k", "daily", 5, 1, false),
+                new Objective(3, "Zoë's walk", "daily", 3, 1, true)), -1);
+
+        assertTrue(export.file().getFileName().toString().endsWith(".csv"));
+        assertEquals(List.of("id;title;period;coins", "1;Read a book;weekly;10", "3;Zoë's walk;daily;3"),
+                Files.readAllLines(export.file()));
+        assertEquals(2, export.rows());
+        assertNull(export.delta());
+    }
+
+    @Test
+    void writesTheSameRowsGzipped() throws Exception {
+        storage.setExportGzip(true);
+        CsvStorage.Export export = storage.exportAvailableObjectives(List.of(
+                new Objective(1, "Read a book", "weekly", 10, 2, true),
+                new Objective(2, "Run 5k", "daily", 5, 1, false)), -1);
+
+        assertTrue(export.file().getFileName().toString().endsWith(".csv.gz"));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(export.file()))) {
+            assertEquals("id;title;period;coins\n1;Read a book;weekly;10\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void deltaListsWhatChangedSinceThePreviousExport() throws Exception {
+        storage.setExportGzip(true);
+        storage.setExportDelta(true);
+        CsvStorage.Export first = storage.exportAvailableObjectives(List.of(
+                new Objective(1, "Read a book", "weekly", 10, 1, true),
+                new Objective(2, "Run 5k", "daily", 5, 1, true)), -1);
+        // no previous export: everything was added
+        assertEquals(List.of("change;id;title;period;coins", "ADDED;1;Read a book;weekly;10", "ADDED;2;Run 5k;daily;5"),
+                Files.readAllLines(first.delta()));
+
+        // the gzip file of the first export is the previous one
+        CsvStorage.Export second = storage.exportAvailableObjectives(List.of(
+                new Objective(1, "Read a book", "weekly", 10, 1, false),
+                new Objective(2, "Run 5k", "daily", 5, 1, true),
+                new Objective(3, "Swim", "monthly", 20, 1, true)), -1);
+        assertEquals(List.of("change;id;title;period;coins", "REMOVED;1;Read a book;weekly;10", "ADDED;3;Swim;monthly;20"),
+                Files.readAllLines(second.delta()));
+    }
+
+    @Test
+    void skipsAnExportOfTheSameVersion() throws Exception {
+        List<Objective> objectives = List.of(new Objective(1, "Read a book", "weekly", 10, 1, true));
+        CsvStorage.Export first = storage.exportAvailableObjectives(objectives, 5);
+        assertFalse(first.skipped());
+
+        CsvStorage.Export again = storage.exportAvailableObjectives(objectives, 5);
+        assertTrue(again.skipped());
+        assertEquals(first.file(), again.file());
+
+        // removed meanwhile: written again
+        Files.delete(first.file());
+        assertFalse(storage.exportAvailableObjectives(objectives, 5).skipped());
+        assertTrue(Files.exists(first.file()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.andreatreccani.mindtrack.io;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Journal events as written and as replayed, including lines written by older versions. */
+class JournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void availabilityCarriesTheSlotsTaken() throws Exception {
+        Objective o = new Objective(1, "Run 5k", "daily", 5, 3, true);
+        o.setTaken(2);
+        try (Journal journal = new Journal(dir.resolve("journal.log"), Journal.FsyncPolicy.NEVER, 0)) {
+            journal.append(Journal.availabilityChanged(o));
+        }
+        // as written before the count was journaled
+        Files.writeString(dir.resolve("journal.log"), "AVAILABILITY;1;NO\n", StandardOpenOption.APPEND);
+
+        assertEquals(List.of("AVAILABILITY;1;YES;2"), Files.readAllLines(dir.resolve("journal.log")).subList(0, 1));
+        assertEquals(List.of("1;true;2", "1;false;-1"), replay());
+    }
+
+    private List<String> replay() throws Exception {
+        List<String> seen = new ArrayList<>();
+        try (Journal journal = new Journal(dir.resolve("journal.log"), Journal.FsyncPolicy.NEVER, 0)) {
+            journal.replay(new Journal.Listener() {
+                @Override
+                public void bookingCreated(Booking b) {
+                    seen.add("created " + b.id());
+                }
+
+                @Override
+                public void bookingCancelled(int bookingId) {
+                    seen.add("cancelled " + bookingId);
+                }
+
+                @Override
+                public void userAdded(User u) {
+                    seen.add("user " + u.id());
+                }
+
+                @Override
+                public void userRemoved(int userId) {
+                    seen.add("removed " + userId);
+                }
+
+                @Override
+                public void availabilityChanged(int objectiveId, boolean available, int taken) {
+                    seen.add(objectiveId + ";" + available + ";" + taken);
+                }
+            });
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,91 @@
+package com.andreatreccani.mindtrack.io;
+
+import com.andreatreccani.mindtrack.model.Booking;
+import com.andreatreccani.mindtrack.model.Objective;
+import com.andreatreccani.mindtrack.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The binary snapshot: what is written is read back, and a damaged or stale file is refused. */
+class SnapshotStorageTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<User> users = List.of(
+            new User(1, "Ada", "Lovelace", "ada@example.com"),
+            new User(7, "Zoë", "", "zoe@example.com"));
+    private final List<Objective> objectives = List.of(
+            new Objective(1, "Read a book", "weekly", 10, 3, true),
+            new Objective(2, "Run 5k", "daily", 5, 1, false));
+    private final List<Booking> bookings = List.of(
+            new Booking(1, 1, 1, LocalDate.of(2026, 1, 10)),
+            new Booking(2, 7, 2, LocalDate.of(1969, 12, 31)));
+
+    @Test
+    void readsBackWhatWasWritten() throws Exception {
+        SnapshotStorage snapshot = new SnapshotStorage(dir.resolve("snapshot.bin"));
+        snapshot.write(users, objectives, bookings);
+
+        SnapshotStorage.Snapshot read = snapshot.read();
+        assertEquals(users, read.users());
+        assertEquals(format(objectives), format(read.objectives()));
+        assertEquals(bookings, read.bookings());
+    }
+
+    @Test
+    void refusesADamagedFile() throws Exception {
+        SnapshotStorage snapshot = new SnapshotStorage(dir.resolve("snapshot.bin"));
+        snapshot.write(users, objectives, bookings);
+        byte[] bytes = Files.readAllBytes(snapshot.file());
+
+        // one flipped bit in the body: the checksum no longer matches
+        byte[] flipped = bytes.clone();
+        flipped[bytes.length / 2] ^= 1;
+        Files.write(snapshot.file(), flipped);
+        IOException e = assertThrows(IOException.class, snapshot::read);
+        assertEquals("snapshot checksum mismatch", e.getMessage());
+
+        Files.write(snapshot.file(), Arrays.copyOf(bytes, 10));
+        assertThrows(IOException.class, snapshot::read);
+    }
+
+    @Test
+    void isOnlyUsedWhenNewerThanEveryFile() throws Exception {
+        Path csv = Files.writeString(dir.resolve("users.csv"), "id;first_name;last_name;email\n");
+        SnapshotStorage snapshot = new SnapshotStorage(dir.resolve("snapshot.bin"));
+        assertFalse(snapshot.isNewerThan(List.of(csv)));
+
+        snapshot.write(users, objectives, bookings);
+        FileTime written = Files.getLastModifiedTime(snapshot.file());
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(written.toMillis() - 60_000));
+        assertTrue(snapshot.isNewerThan(List.of(csv, dir.resolve("missing.csv"))));
+
+        // the CSV file was edited after the snapshot was taken
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(written.toMillis() + 60_000));
+        assertFalse(snapshot.isNewerThan(List.of(csv)));
+    }
+
+    // Objective has identity equality: compare what was stored
+    private static List<String> format(List<Objective> objectives) {
+        List<String> out = new ArrayList<>();
+        for (Objective o : objectives) {
+            out.add(o.id() + "|" + o.title() + "|" + o.period() + "|" + o.coins() + "|" + o.capacity() + "|" + o.isAvailable());
+        }
+        return out;
+    }
+}